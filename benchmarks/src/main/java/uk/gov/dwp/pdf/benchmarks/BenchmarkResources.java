@@ -0,0 +1,77 @@
+package uk.gov.dwp.pdf.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The test documents, fonts and colour profile the benchmarks render with,
+ * copied onto the benchmark classpath from the functional tests.
+ */
+final class BenchmarkResources {
+
+  private static final Pattern EMBEDDED_IMAGE = Pattern.compile("src=\"(data:image/png[^\"]+)\"");
+
+  private BenchmarkResources() {
+  }
+
+  /**
+   * Returns the sRGB colour profile.
+   */
+  static byte[] colourProfile() {
+    return read("colours/sRGB.icm");
+  }
+
+  /**
+   * Returns a font map holding the comma separated font families, such as "arial,courier".
+   */
+  static Map<String, byte[]> fontMap(final String families) {
+    final Map<String, byte[]> fontMap = new HashMap<>();
+    for (final String family : families.split(",")) {
+      fontMap.put(family.trim(), read("fonts/" + family.trim() + ".ttf"));
+    }
+    return fontMap;
+  }
+
+  /**
+   * Returns the text of a test document.
+   */
+  static String html(final String name) {
+    return new String(read(name), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the base64 png data URI embedded in the successful test document.
+   */
+  static String embeddedImage() {
+    final Matcher matcher = EMBEDDED_IMAGE.matcher(html("successfulHtml.html"));
+    if (!matcher.find()) {
+      throw new IllegalStateException("successfulHtml.html has no embedded png");
+    }
+    return matcher.group(1).replaceAll("\\s", "");
+  }
+
+  private static byte[] read(final String name) {
+    try (InputStream inputStream = BenchmarkResources.class.getClassLoader()
+        .getResourceAsStream(name)) {
+      if (inputStream == null) {
+        throw new IllegalStateException("benchmark resource '" + name + "' not found");
+      }
+      final ByteArrayOutputStream content = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+        content.write(buffer, 0, count);
+      }
+      return content.toByteArray();
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package uk.gov.dwp.pdf.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+import uk.gov.dwp.pdf.generator.HtmlToPdfFactory;
+import uk.gov.dwp.pdf.generator.HtmlToPdfGenerator;
+import uk.gov.dwp.pdf.generator.PdfConformanceLevel;
+import uk.gov.dwp.pdf.generator.PreparedHtmlToPdfGenerator;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the functional test documents at every conformance level, with just the fonts
+ * they use and with an extra unused font, through both the prepared generator and
+ * the generator that checks its assets on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class DocumentBenchmark {
+
+  @Param({"NONE", "PDFA_1_A", "PDFA_1_B", "PDFA_2_A", "PDFA_2_B", "PDFA_2_U",
+      "PDFA_3_A", "PDFA_3_B", "PDFA_3_U", "PDF_UA"})
+  public PdfConformanceLevel conformanceLevel;
+
+  @Param({"accessible-test.html", "successfulHtml.html", "pageBreaksHtml.html",
+      "htmlWithSvg.html"})
+  public String document;
+
+  @Param({"arial,courier", "arial,arialbd,courier"})
+  public String fonts;
+
+  private String html;
+  private byte[] colourProfile;
+  private Map<String, byte[]> fontMap;
+  private HtmlToPdfGenerator generator;
+  private PreparedHtmlToPdfGenerator preparedGenerator;
+
+  @Setup
+  public void setUp() throws PdfaGeneratorException {
+    html = BenchmarkResources.html(document);
+    colourProfile = BenchmarkResources.colourProfile();
+    fontMap = BenchmarkResources.fontMap(fonts);
+    generator = HtmlToPdfFactory.create();
+    preparedGenerator = HtmlToPdfFactory.create(colourProfile, fontMap, conformanceLevel);
+  }
+
+  @Benchmark
+  public byte[] prepared() throws PdfaGeneratorException {
+    return preparedGenerator.createPdfDocument(html);
+  }
+
+  @Benchmark
+  public byte[] unprepared() throws PdfaGeneratorException {
+    return generator.createPdfDocument(html, colourProfile, fontMap, conformanceLevel);
+  }
+}
@@ -0,0 +1,90 @@
+package uk.gov.dwp.pdf.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+import uk.gov.dwp.pdf.generator.HtmlToPdfFactory;
+import uk.gov.dwp.pdf.generator.PdfConformanceLevel;
+import uk.gov.dwp.pdf.generator.PreparedHtmlToPdfGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders generated documents of a given number of pages, each page holding text
+ * and a given number of embedded png images and inline svgs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class DocumentSizeBenchmark {
+
+  private static final String PARAGRAPH = "<p>Lorem ipsum dolor sit amet, consectetur adipiscing "
+      + "elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. Ut enim ad "
+      + "minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip ex ea commodo "
+      + "consequat.</p>";
+
+  @Param({"NONE", "PDFA_2_A", "PDF_UA"})
+  public PdfConformanceLevel conformanceLevel;
+
+  @Param({"1", "10", "50"})
+  public int pages;
+
+  @Param({"0", "4"})
+  public int imagesPerPage;
+
+  @Param({"0", "4"})
+  public int svgsPerPage;
+
+  private String html;
+  private PreparedHtmlToPdfGenerator generator;
+
+  @Setup
+  public void setUp() throws PdfaGeneratorException {
+    html = document(pages, imagesPerPage, svgsPerPage, BenchmarkResources.embeddedImage());
+    generator = HtmlToPdfFactory.create(BenchmarkResources.colourProfile(),
+        BenchmarkResources.fontMap("arial,courier"), conformanceLevel);
+  }
+
+  @Benchmark
+  public byte[] render() throws PdfaGeneratorException {
+    return generator.createPdfDocument(html);
+  }
+
+  private static String document(final int pages, final int images, final int svgs,
+                                 final String image) {
+    final StringBuilder html = new StringBuilder(
+        "<!DOCTYPE html><html lang=\"en\"><head><title>Benchmark</title><style>"
+            + "body { font-family: 'arial', serif; } "
+            + ".page { page-break-after: always; } "
+            + "img, svg { width: 80px; height: 80px; }"
+            + "</style></head><body>");
+
+    for (int page = 1; page <= pages; page++) {
+      html.append("<div class=\"page\"><h1>Page ").append(page).append("</h1>");
+      for (int i = 0; i < 5; i++) {
+        html.append(PARAGRAPH);
+      }
+      for (int i = 0; i < images; i++) {
+        html.append("<img alt=\"image ").append(i).append("\" src=\"").append(image).append("\"/>");
+      }
+      for (int i = 0; i < svgs; i++) {
+        html.append("<svg viewBox=\"0 0 100 100\" xmlns=\"http://www.w3.org/2000/svg\">")
+            .append("<circle cx=\"50\" cy=\"50\" r=\"").append(10 + i * 10).append("\"/></svg>");
+      }
+      html.append("</div>");
+    }
+    return html.append("</body></html>").toString();
+  }
+}
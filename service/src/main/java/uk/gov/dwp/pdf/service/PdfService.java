@@ -0,0 +1,190 @@
+package uk.gov.dwp.pdf.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.dwp.pdf.exception.PdfRenderLimitException;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+import uk.gov.dwp.pdf.generator.HtmlToPdfFactory;
+import uk.gov.dwp.pdf.generator.PdfWarmUpReport;
+import uk.gov.dwp.pdf.generator.PreparedHtmlToPdfGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Http service rendering html to pdf with a single generator, bound at startup to
+ * the configured fonts, colour profile and conformance level.
+ *
+ * <ul>
+ * <li>{@code POST /pdf} renders the html request body, streaming the pdf back</li>
+ * <li>{@code GET /health} answers 200 while the service is running</li>
+ * <li>{@code GET /ready} answers 200 once warmed up and while there is room to queue
+ * another document, otherwise 503</li>
+ * </ul>
+ *
+ * <p>Documents are rendered on a fixed pool of render threads with a bounded queue.
+ * A request arriving when the queue is full, or one that waited in the queue longer than
+ * the configured limit, is answered 503 with a Retry-After header rather than left to wait.</p>
+ */
+public final class PdfService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PdfService.class.getName());
+  private static final int HTTP_THREADS = 4;
+  private static final int STOP_SECONDS = 5;
+
+  private final PreparedHtmlToPdfGenerator generator;
+  private final ThreadPoolExecutor renderPool;
+  private final RenderHandler renderHandler;
+  private final ExecutorService httpPool;
+  private final HttpServer server;
+  private volatile boolean ready;
+  private volatile boolean stopping;
+
+  private PdfService(final ServiceConfiguration configuration) throws IOException,
+      PdfaGeneratorException {
+    this.generator = HtmlToPdfFactory.builder()
+        .colourProfile(configuration.getColourProfile())
+        .fontMap(configuration.getFontMap())
+        .conformanceLevel(configuration.getConformanceLevel())
+        .preflight(configuration.isPreflight())
+        .limits(configuration.getRenderLimits())
+        .build();
+    // the queue is bounded by the permits of the render handler
+    this.renderPool = new ThreadPoolExecutor(configuration.getRenderThreads(),
+        configuration.getRenderThreads(), 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), daemonThreads("pdf-render"));
+    renderPool.prestartAllCoreThreads();
+    this.renderHandler = new RenderHandler(generator, renderPool, configuration);
+    this.httpPool = Executors.newFixedThreadPool(HTTP_THREADS, daemonThreads("pdf-http"));
+
+    this.server = HttpServer.create(new InetSocketAddress(configuration.getPort()), 0);
+    server.createContext("/pdf", renderHandler);
+    server.createContext("/health", exchange -> respond(exchange, 200, "UP"));
+    server.createContext("/ready", exchange -> {
+      if (isReady()) {
+        respond(exchange, 200, "READY");
+      } else {
+        respond(exchange, 503, "NOT READY");
+      }
+    });
+    server.setExecutor(httpPool);
+  }
+
+  /**
+   * Starts the service with the configuration, listening before the generator is warmed up
+   * so health is reported during warm-up, and returns once it is ready. The generator that
+   * serves requests is the one warmed up.
+   *
+   * @param configuration the service configuration
+   * @return the running service
+   * @throws IOException            if the port cannot be bound
+   * @throws PdfaGeneratorException if the generator cannot be built or warmed up
+   */
+  public static PdfService start(final ServiceConfiguration configuration) throws IOException,
+      PdfaGeneratorException {
+    final PdfService service = new PdfService(configuration);
+    service.server.start();
+    LOGGER.info("listening on port {}", service.getPort());
+
+    try {
+      // through the generator requests are served by, with its preflight and limits
+      final PdfWarmUpReport report = HtmlToPdfFactory.warmUp(service.generator,
+          configuration.getFontMap(), 1);
+      LOGGER.info("warmed up {}", report);
+
+    } catch (PdfRenderLimitException e) {
+      LOGGER.warn("warm-up document exceeded the render limits, warmed up in part: {}",
+          e.getMessage());
+
+    } catch (PdfaGeneratorException e) {
+      service.stop();
+      throw e;
+    }
+    service.ready = true;
+    return service;
+  }
+
+  /**
+   * Starts the service configured by the {@code pdf.service.} system properties,
+   * stopping it on shutdown.
+   *
+   * @param args unused
+   * @throws Exception if the service cannot be started
+   */
+  public static void main(final String[] args) throws Exception {
+    final PdfService service = start(ServiceConfiguration.from(System.getProperties()));
+    Runtime.getRuntime().addShutdownHook(new Thread(service::stop, "pdf-service-stop"));
+  }
+
+  /**
+   * Returns the port the service is listening on.
+   *
+   * @return the bound port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Returns whether the service is warmed up and has room to queue another document.
+   *
+   * @return true when ready
+   */
+  public boolean isReady() {
+    return ready && !stopping && renderHandler.hasCapacity();
+  }
+
+  /**
+   * Stops accepting requests, finishing those already being rendered
+   * for up to a few seconds.
+   */
+  public void stop() {
+    stopping = true;
+    renderPool.shutdown();
+    try {
+      if (!renderPool.awaitTermination(STOP_SECONDS, TimeUnit.SECONDS)) {
+        renderPool.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      renderPool.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    server.stop(0);
+    httpPool.shutdownNow();
+    LOGGER.info("stopped");
+  }
+
+  /**
+   * Sends a complete plain text response and closes the exchange.
+   */
+  static void respond(final HttpExchange exchange, final int status, final String message)
+      throws IOException {
+    final byte[] body = message.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(body);
+    }
+    exchange.close();
+  }
+
+  private static ThreadFactory daemonThreads(final String prefix) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      final Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,202 @@
+package uk.gov.dwp.pdf.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.dwp.pdf.exception.PdfRenderLimitException;
+import uk.gov.dwp.pdf.exception.PdfValidationException;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+import uk.gov.dwp.pdf.generator.HtmlSource;
+import uk.gov.dwp.pdf.generator.PreparedHtmlToPdfGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles {@code POST /pdf}, handing each exchange to the render pool so the http threads
+ * are never held by a render. A permit is taken for every document rendering or waiting
+ * to be rendered, so admission does not race the render threads taking work from their queue.
+ * The html is read from the request body as it is parsed,
+ * and the pdf is streamed back chunked, with the 200 status sent only once the first
+ * bytes of the pdf are ready, so a document that fails to render still gets an error status.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class RenderHandler implements HttpHandler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RenderHandler.class.getName());
+  private static final String CHARSET = "charset=";
+
+  private final PreparedHtmlToPdfGenerator generator;
+  private final ExecutorService renderPool;
+  private final Semaphore capacity;
+  private final long maximumQueueNanos;
+  private final String retryAfter;
+
+  /**
+   * Constructor.
+   */
+  RenderHandler(final PreparedHtmlToPdfGenerator generator, final ExecutorService renderPool,
+                final ServiceConfiguration configuration) {
+    this.generator = generator;
+    this.renderPool = renderPool;
+    this.capacity = new Semaphore(
+        configuration.getRenderThreads() + configuration.getQueueSize());
+    this.maximumQueueNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getMaximumQueueMillis());
+    this.retryAfter = String.valueOf(configuration.getRetryAfterSeconds());
+  }
+
+  @Override
+  public void handle(final HttpExchange exchange) throws IOException {
+    if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+      exchange.getResponseHeaders().set("Allow", "POST");
+      PdfService.respond(exchange, 405, "Method not allowed");
+      return;
+    }
+
+    if (!capacity.tryAcquire()) {
+      LOGGER.debug("render queue full, refusing request");
+      unavailable(exchange, "Render queue full");
+      return;
+    }
+
+    final long queued = System.nanoTime();
+    try {
+      renderPool.execute(() -> render(exchange, queued));
+
+    } catch (RejectedExecutionException e) {
+      capacity.release();
+      LOGGER.debug("render pool stopped, refusing request");
+      unavailable(exchange, "Stopping");
+    }
+  }
+
+  /**
+   * Returns whether another document can be rendered or queued.
+   */
+  boolean hasCapacity() {
+    return capacity.availablePermits() > 0;
+  }
+
+  private void render(final HttpExchange exchange, final long queued) {
+    try {
+      if (System.nanoTime() - queued > maximumQueueNanos) {
+        LOGGER.debug("request queued too long, refusing it");
+        unavailable(exchange, "Queued too long");
+        return;
+      }
+
+      final ResponseStream responseStream = new ResponseStream(exchange);
+      try {
+        generator.createPdfDocument(
+            HtmlSource.of(exchange.getRequestBody(), charsetOf(exchange)), responseStream);
+        responseStream.close();
+
+      } catch (PdfValidationException e) {
+        failed(exchange, responseStream, 400, e);
+      } catch (PdfRenderLimitException e) {
+        // the document itself is too large to render, sending it again would not help
+        failed(exchange, responseStream, 413, e);
+      } catch (PdfaGeneratorException e) {
+        failed(exchange, responseStream, 422, e);
+      } catch (RuntimeException | Error e) {
+        // an error such as a stack overflow on deeply nested html fails only its own request
+        LOGGER.error("render failed", e);
+        failed(exchange, responseStream, 500, e);
+      }
+
+    } catch (IOException e) {
+      LOGGER.debug("cannot answer request: {}", e.getMessage());
+    } finally {
+      exchange.close();
+      capacity.release();
+    }
+  }
+
+  private void unavailable(final HttpExchange exchange, final String message)
+      throws IOException {
+    exchange.getResponseHeaders().set("Retry-After", retryAfter);
+    PdfService.respond(exchange, 503, message);
+  }
+
+  private static void failed(final HttpExchange exchange, final ResponseStream responseStream,
+                             final int status, final Throwable e) throws IOException {
+    if (responseStream.isCommitted()) {
+      // the status has gone, the client sees the chunked pdf cut short
+      LOGGER.warn("render failed after the pdf was started: {}", e.getMessage());
+      return;
+    }
+    PdfService.respond(exchange, status, String.valueOf(e.getMessage()));
+  }
+
+  private static Charset charsetOf(final HttpExchange exchange) {
+    final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+    if (contentType != null) {
+      final int index = contentType.toLowerCase(Locale.ROOT).indexOf(CHARSET);
+      if (index >= 0) {
+        final String name = contentType.substring(index + CHARSET.length())
+            .split(";")[0].trim().replace("\"", "");
+        try {
+          return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+          LOGGER.debug("unknown charset '{}', reading the html as utf-8", name);
+        }
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  /**
+   * Response body sending the 200 status and chunked headers on its first write.
+   */
+  private static final class ResponseStream extends OutputStream {
+    private final HttpExchange exchange;
+    private OutputStream body;
+
+    ResponseStream(final HttpExchange exchange) {
+      this.exchange = exchange;
+    }
+
+    boolean isCommitted() {
+      return body != null;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      commit().write(b);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+      commit().write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (body != null) {
+        body.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      commit().close();
+    }
+
+    private OutputStream commit() throws IOException {
+      if (body == null) {
+        exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+        exchange.sendResponseHeaders(200, 0);
+        body = exchange.getResponseBody();
+      }
+      return body;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package uk.gov.dwp.pdf.service;
+
+import uk.gov.dwp.pdf.generator.PdfConformanceLevel;
+import uk.gov.dwp.pdf.generator.PdfRenderLimits;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings the service is started with, read from properties prefixed {@code pdf.service.},
+ * normally the system properties. The fonts and colour profile are read once, at startup.
+ *
+ * <ul>
+ * <li>{@code port} the port to listen on, default 8080, 0 for any free port</li>
+ * <li>{@code fontDirectory} directory of *.ttf fonts, each the font family of its file name</li>
+ * <li>{@code colourProfile} the icc colour profile file</li>
+ * <li>{@code conformanceLevel} the pdf conformance level, default PDF_UA</li>
+ * <li>{@code renderThreads} documents rendered at once, default the number of processors</li>
+ * <li>{@code queueSize} documents waiting to be rendered before requests are refused,
+ * default twice the render threads</li>
+ * <li>{@code maximumQueueMillis} longest a document may wait to be rendered, default 5000</li>
+ * <li>{@code retryAfterSeconds} the Retry-After sent when refused, default 1</li>
+ * <li>{@code preflight} whether html is checked before it is rendered, default false</li>
+ * <li>{@code renderDeadlineMillis} longest a document may take to render, unlimited by default</li>
+ * <li>{@code maximumPages} most pages a document may have, unlimited by default</li>
+ * <li>{@code maximumInputLength} most characters of html a document may have,
+ * unlimited by default</li>
+ * <li>{@code maximumImagePixels} most pixels any one image may have, unlimited by default</li>
+ * </ul>
+ */
+public final class ServiceConfiguration {
+
+  private static final String PREFIX = "pdf.service.";
+
+  private final int port;
+  private final Map<String, byte[]> fontMap;
+  private final byte[] colourProfile;
+  private final PdfConformanceLevel conformanceLevel;
+  private final int renderThreads;
+  private final int queueSize;
+  private final long maximumQueueMillis;
+  private final int retryAfterSeconds;
+  private final boolean preflight;
+  private final PdfRenderLimits renderLimits;
+
+  private ServiceConfiguration(final Properties properties) throws IOException {
+    this.port = Integer.parseInt(properties.getProperty(PREFIX + "port", "8080"));
+    this.fontMap = readFonts(Paths.get(required(properties, "fontDirectory")));
+    this.colourProfile = Files.readAllBytes(Paths.get(required(properties, "colourProfile")));
+    this.conformanceLevel = PdfConformanceLevel.valueOf(
+        properties.getProperty(PREFIX + "conformanceLevel", PdfConformanceLevel.PDF_UA.name()));
+    this.renderThreads = Integer.parseInt(properties.getProperty(PREFIX + "renderThreads",
+        String.valueOf(Runtime.getRuntime().availableProcessors())));
+    this.queueSize = Integer.parseInt(
+        properties.getProperty(PREFIX + "queueSize", String.valueOf(renderThreads * 2)));
+    this.maximumQueueMillis =
+        Long.parseLong(properties.getProperty(PREFIX + "maximumQueueMillis", "5000"));
+    this.retryAfterSeconds =
+        Integer.parseInt(properties.getProperty(PREFIX + "retryAfterSeconds", "1"));
+    this.preflight = Boolean.parseBoolean(properties.getProperty(PREFIX + "preflight", "false"));
+    this.renderLimits = readLimits(properties);
+
+    if (port < 0 || renderThreads < 1 || queueSize < 1 || maximumQueueMillis < 1
+        || retryAfterSeconds < 0) {
+      throw new IllegalArgumentException(String.format("Invalid service configuration: port %d, "
+              + "render threads %d, queue size %d, maximum queue millis %d, retry after %d",
+          port, renderThreads, queueSize, maximumQueueMillis, retryAfterSeconds));
+    }
+  }
+
+  /**
+   * Reads the configuration from the properties, such as {@link System#getProperties()}.
+   *
+   * @param properties the properties holding the {@code pdf.service.} settings
+   * @return the configuration
+   * @throws IOException if the fonts or colour profile cannot be read
+   */
+  public static ServiceConfiguration from(final Properties properties) throws IOException {
+    return new ServiceConfiguration(properties);
+  }
+
+  private static String required(final Properties properties, final String name) {
+    final String value = properties.getProperty(PREFIX + name);
+    if (value == null || value.trim().isEmpty()) {
+      throw new IllegalArgumentException(
+          String.format("Service property '%s%s' must be set", PREFIX, name));
+    }
+    return value.trim();
+  }
+
+  private static PdfRenderLimits readLimits(final Properties properties) {
+    PdfRenderLimits limits = PdfRenderLimits.none();
+    final long deadline =
+        Long.parseLong(properties.getProperty(PREFIX + "renderDeadlineMillis", "0"));
+    if (deadline > 0) {
+      limits = limits.withDeadline(Duration.ofMillis(deadline));
+    }
+    final int pages = Integer.parseInt(properties.getProperty(PREFIX + "maximumPages", "0"));
+    if (pages > 0) {
+      limits = limits.withMaximumPages(pages);
+    }
+    final long length =
+        Long.parseLong(properties.getProperty(PREFIX + "maximumInputLength", "0"));
+    if (length > 0) {
+      limits = limits.withMaximumInputLength(length);
+    }
+    final long pixels =
+        Long.parseLong(properties.getProperty(PREFIX + "maximumImagePixels", "0"));
+    if (pixels > 0) {
+      limits = limits.withMaximumImagePixels(pixels);
+    }
+    return limits;
+  }
+
+  private static Map<String, byte[]> readFonts(final Path directory) throws IOException {
+    final Map<String, byte[]> fonts = new HashMap<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.ttf")) {
+      for (final Path font : stream) {
+        final String name = font.getFileName().toString();
+        fonts.put(name.substring(0, name.length() - ".ttf".length()).toLowerCase(Locale.ROOT),
+            Files.readAllBytes(font));
+      }
+    }
+    if (fonts.isEmpty()) {
+      throw new IllegalArgumentException(
+          String.format("Font directory '%s' holds no *.ttf fonts", directory));
+    }
+    return fonts;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public Map<String, byte[]> getFontMap() {
+    return fontMap;
+  }
+
+  public byte[] getColourProfile() {
+    return colourProfile;
+  }
+
+  public PdfConformanceLevel getConformanceLevel() {
+    return conformanceLevel;
+  }
+
+  public int getRenderThreads() {
+    return renderThreads;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  public long getMaximumQueueMillis() {
+    return maximumQueueMillis;
+  }
+
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  public boolean isPreflight() {
+    return preflight;
+  }
+
+  public PdfRenderLimits getRenderLimits() {
+    return renderLimits;
+  }
+}
@@ -0,0 +1,264 @@
+package uk.gov.dwp.pdf.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Test;
+import uk.gov.dwp.pdf.generator.HtmlSource;
+import uk.gov.dwp.pdf.generator.PdfConformanceLevel;
+import uk.gov.dwp.pdf.generator.PdfTemplate;
+import uk.gov.dwp.pdf.generator.PreparedHtmlToPdfGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class PdfServiceTest {
+  private static final String HTML = "<html><head><title>service</title>"
+      + "<style>body { font-family: 'arial'; }</style></head><body><p>hello</p></body></html>";
+
+  private PdfService service;
+
+  @After
+  public void stop() {
+    if (service != null) {
+      service.stop();
+    }
+  }
+
+  @Test
+  public void htmlIsRenderedToPdf() throws Exception {
+    service = PdfService.start(configuration(2, 4, 5000));
+
+    HttpURLConnection connection = post("/pdf");
+    send(connection, resource("accessible-test.html"));
+
+    assertThat(connection.getResponseCode(), is(equalTo(200)));
+    assertThat(connection.getContentType(), is(equalTo("application/pdf")));
+    assertThat(new String(read(connection.getInputStream()), StandardCharsets.ISO_8859_1), startsWith("%PDF-"));
+  }
+
+  @Test
+  public void healthAndReadinessAreReported() throws Exception {
+    service = PdfService.start(configuration(1, 1, 5000));
+
+    assertThat(get("/health").getResponseCode(), is(equalTo(200)));
+    assertThat(get("/ready").getResponseCode(), is(equalTo(200)));
+    assertThat(service.isReady(), is(true));
+  }
+
+  @Test
+  public void badHtmlIsRejected() throws Exception {
+    service = PdfService.start(configuration(1, 1, 5000));
+
+    HttpURLConnection connection = post("/pdf");
+    send(connection, resource("badHtmlFile.html"));
+
+    assertThat(connection.getResponseCode(), is(equalTo(400)));
+    assertThat(new String(read(connection.getErrorStream()), StandardCharsets.UTF_8), containsString("line "));
+  }
+
+  @Test
+  public void documentsBeyondTheRenderLimitsAreRefused() throws Exception {
+    ServiceConfiguration configuration = configuration(1, 1, 5000, "pdf.service.maximumInputLength", "1000");
+    service = PdfService.start(configuration);
+
+    HttpURLConnection connection = post("/pdf");
+    send(connection, resource("accessible-test.html"));
+
+    assertThat(configuration.getRenderLimits().getMaximumInputLength(), is(equalTo(1000L)));
+    assertThat(connection.getResponseCode(), is(equalTo(413)));
+    assertThat(new String(read(connection.getErrorStream()), StandardCharsets.UTF_8), containsString("1000 characters"));
+  }
+
+  @Test
+  public void renderDyingWithAnErrorIsAnswered500() throws Exception {
+    PreparedHtmlToPdfGenerator overflowing = new PreparedHtmlToPdfGenerator() {
+      @Override
+      public void createPdfDocument(HtmlSource html, OutputStream outputStream) {
+        throw new StackOverflowError("nested too deeply");
+      }
+
+      @Override
+      public void createCombinedPdfDocument(Iterable<HtmlSource> htmls, OutputStream outputStream) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public PdfTemplate compile(HtmlSource template) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public PdfConformanceLevel getConformanceLevel() {
+        return PdfConformanceLevel.NONE;
+      }
+    };
+    ExecutorService renderPool = Executors.newSingleThreadExecutor();
+    HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+    server.createContext("/pdf", new RenderHandler(overflowing, renderPool, configuration(1, 1, 5000)));
+    server.start();
+    try {
+      HttpURLConnection connection = (HttpURLConnection)
+          new URL("http://localhost:" + server.getAddress().getPort() + "/pdf").openConnection();
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      send(connection, HTML.getBytes(StandardCharsets.UTF_8));
+
+      assertThat(connection.getResponseCode(), is(equalTo(500)));
+      assertThat(new String(read(connection.getErrorStream()), StandardCharsets.UTF_8), is(equalTo("nested too deeply")));
+
+    } finally {
+      server.stop(0);
+      renderPool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void onlyPostIsAllowed() throws Exception {
+    service = PdfService.start(configuration(1, 1, 5000));
+
+    HttpURLConnection connection = get("/pdf");
+
+    assertThat(connection.getResponseCode(), is(equalTo(405)));
+    assertThat(connection.getHeaderField("Allow"), is(equalTo("POST")));
+  }
+
+  @Test
+  public void requestsAreRefusedWhenTheQueueIsFull() throws Exception {
+    service = PdfService.start(configuration(1, 1, 60000));
+
+    // the first holds the only render thread reading its body, the second fills the queue
+    HttpURLConnection rendering = post("/pdf");
+    OutputStream renderingBody = start(rendering);
+    HttpURLConnection queued = post("/pdf");
+    OutputStream queuedBody = start(queued);
+    awaitNotReady();
+
+    HttpURLConnection refused = post("/pdf");
+    send(refused, HTML.getBytes(StandardCharsets.UTF_8));
+    assertThat(refused.getResponseCode(), is(equalTo(503)));
+    assertThat(refused.getHeaderField("Retry-After"), is(equalTo("1")));
+    assertThat(get("/ready").getResponseCode(), is(equalTo(503)));
+
+    finish(renderingBody);
+    finish(queuedBody);
+    assertThat(rendering.getResponseCode(), is(equalTo(200)));
+    assertThat(queued.getResponseCode(), is(equalTo(200)));
+  }
+
+  @Test
+  public void requestsQueuedTooLongAreRefused() throws Exception {
+    service = PdfService.start(configuration(1, 1, 200));
+
+    // either may reach the render thread first, the other waits in the queue past the limit
+    HttpURLConnection first = post("/pdf");
+    OutputStream firstBody = start(first);
+    HttpURLConnection second = post("/pdf");
+    OutputStream secondBody = start(second);
+    awaitNotReady();
+    Thread.sleep(400);
+
+    finish(firstBody);
+    finish(secondBody);
+    HttpURLConnection refused = first.getResponseCode() == 503 ? first : second;
+    HttpURLConnection rendered = refused == first ? second : first;
+    assertThat(rendered.getResponseCode(), is(equalTo(200)));
+    assertThat(refused.getResponseCode(), is(equalTo(503)));
+    assertThat(refused.getHeaderField("Retry-After"), is(equalTo("1")));
+  }
+
+  private static ServiceConfiguration configuration(int renderThreads, int queueSize, long maximumQueueMillis,
+                                                    String... settings) throws IOException, URISyntaxException {
+    Properties properties = new Properties();
+    for (int i = 0; i < settings.length; i += 2) {
+      properties.setProperty(settings[i], settings[i + 1]);
+    }
+    properties.setProperty("pdf.service.port", "0");
+    properties.setProperty("pdf.service.fontDirectory", resourcePath("fonts/arial.ttf").getParent().toString());
+    properties.setProperty("pdf.service.colourProfile", resourcePath("colours/sRGB.icm").toString());
+    properties.setProperty("pdf.service.conformanceLevel", "PDFA_2_B");
+    properties.setProperty("pdf.service.renderThreads", String.valueOf(renderThreads));
+    properties.setProperty("pdf.service.queueSize", String.valueOf(queueSize));
+    properties.setProperty("pdf.service.maximumQueueMillis", String.valueOf(maximumQueueMillis));
+    properties.setProperty("pdf.service.preflight", "true");
+    return ServiceConfiguration.from(properties);
+  }
+
+  private void awaitNotReady() throws Exception {
+    for (int attempt = 0; service.isReady() && attempt < 500; attempt++) {
+      Thread.sleep(10);
+    }
+    assertThat(service.isReady(), is(false));
+  }
+
+  private HttpURLConnection post(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Content-Type", "text/html; charset=utf-8");
+    return connection;
+  }
+
+  private HttpURLConnection get(String path) throws IOException {
+    return (HttpURLConnection) url(path).openConnection();
+  }
+
+  private URL url(String path) throws IOException {
+    return new URL("http://localhost:" + service.getPort() + path);
+  }
+
+  private static void send(HttpURLConnection connection, byte[] body) throws IOException {
+    try (OutputStream outputStream = connection.getOutputStream()) {
+      outputStream.write(body);
+    }
+  }
+
+  private static OutputStream start(HttpURLConnection connection) throws IOException {
+    connection.setChunkedStreamingMode(64);
+    OutputStream outputStream = connection.getOutputStream();
+    outputStream.write(HTML.substring(0, 20).getBytes(StandardCharsets.UTF_8));
+    outputStream.flush();
+    return outputStream;
+  }
+
+  private static void finish(OutputStream outputStream) throws IOException {
+    outputStream.write(HTML.substring(20).getBytes(StandardCharsets.UTF_8));
+    outputStream.close();
+  }
+
+  private static byte[] resource(String name) throws IOException, URISyntaxException {
+    return Files.readAllBytes(resourcePath(name));
+  }
+
+  private static Path resourcePath(String name) throws URISyntaxException {
+    return Paths.get(PdfServiceTest.class.getClassLoader().getResource(name).toURI());
+  }
+
+  private static byte[] read(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+      content.write(buffer, 0, count);
+    }
+    inputStream.close();
+    return content.toByteArray();
+  }
+}
@@ -0,0 +1,24 @@
+package uk.gov.dwp.pdf.exception;
+
+/**
+ * Thrown when a render is refused because the generator is already at capacity.
+ * The render was never started, it can be retried once load has dropped.
+ */
+public class PdfGeneratorRejectedException extends PdfaGeneratorException {
+
+  private static final long serialVersionUID = 3815267502446713984L;
+
+  /**
+   * Constructor.
+   */
+  public PdfGeneratorRejectedException(final String message) {
+    super(message);
+  }
+
+  /**
+   * Constructor.
+   */
+  public PdfGeneratorRejectedException(final String message, final Throwable cause) {
+    super(message, cause);
+  }
+}
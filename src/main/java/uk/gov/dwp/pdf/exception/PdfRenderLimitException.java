@@ -0,0 +1,63 @@
+package uk.gov.dwp.pdf.exception;
+
+/**
+ * Thrown when a render is stopped because the document breached one of the generator's
+ * per-render limits. Nothing is written for the document, rendering it again with the
+ * same limits breaches them again.
+ */
+public class PdfRenderLimitException extends PdfaGeneratorException {
+
+  private static final long serialVersionUID = 5468102457207931146L;
+
+  /**
+   * The limits a render can breach.
+   */
+  public enum Limit {
+    /**
+     * The wall-clock time, in milliseconds, a render may take.
+     */
+    DEADLINE,
+    /**
+     * The number of pages a document may have.
+     */
+    PAGES,
+    /**
+     * The number of characters of html a document may have.
+     */
+    INPUT_LENGTH,
+    /**
+     * The number of pixels any one image may decode to.
+     */
+    IMAGE_PIXELS
+  }
+
+  private final Limit limit;
+  private final long maximum;
+
+  /**
+   * Constructor.
+   */
+  public PdfRenderLimitException(final Limit limit, final long maximum, final String message) {
+    super(message);
+    this.limit = limit;
+    this.maximum = maximum;
+  }
+
+  /**
+   * Returns the limit the render breached.
+   *
+   * @return the limit
+   */
+  public Limit getLimit() {
+    return limit;
+  }
+
+  /**
+   * Returns the value of the limit the render breached.
+   *
+   * @return the maximum
+   */
+  public long getMaximum() {
+    return maximum;
+  }
+}
@@ -0,0 +1,50 @@
+package uk.gov.dwp.pdf.exception;
+
+/**
+ * Thrown when the html is rejected before rendering, because it is not well formed
+ * or breaks a rule of the conformance level.
+ * The line and column of the offending markup are given where they are known.
+ */
+public class PdfValidationException extends PdfaGeneratorException {
+
+  private static final long serialVersionUID = -2071839514652170528L;
+
+  private final int lineNumber;
+  private final int columnNumber;
+
+  /**
+   * Constructor.
+   */
+  public PdfValidationException(final String message, final int lineNumber,
+                                final int columnNumber) {
+    this(message, lineNumber, columnNumber, null);
+  }
+
+  /**
+   * Constructor.
+   */
+  public PdfValidationException(final String message, final int lineNumber,
+                                final int columnNumber, final Throwable cause) {
+    super(String.format("line %d, column %d: %s", lineNumber, columnNumber, message), cause);
+    this.lineNumber = lineNumber;
+    this.columnNumber = columnNumber;
+  }
+
+  /**
+   * Returns the line of the html the problem was found on, or -1 if it is not known.
+   *
+   * @return the line number
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Returns the column of the html the problem was found at, or -1 if it is not known.
+   *
+   * @return the column number
+   */
+  public int getColumnNumber() {
+    return columnNumber;
+  }
+}
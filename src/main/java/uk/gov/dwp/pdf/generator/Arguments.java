@@ -0,0 +1,29 @@
+package uk.gov.dwp.pdf.generator;
+
+/**
+ * Checks of the sizes and limits passed to the generators, failing with an
+ * {@link IllegalArgumentException} naming the argument.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class Arguments {
+
+  private Arguments() {
+  }
+
+  /**
+   * Returns the value, if it is at least 1.
+   */
+  static int positive(final int value, final String name) {
+    return (int) positive((long) value, name);
+  }
+
+  /**
+   * Returns the value, if it is at least 1.
+   */
+  static long positive(final long value, final String name) {
+    if (value < 1) {
+      throw new IllegalArgumentException(name + " must be at least 1");
+    }
+    return value;
+  }
+}
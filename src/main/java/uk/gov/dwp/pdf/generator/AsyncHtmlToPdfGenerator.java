@@ -0,0 +1,244 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.dwp.pdf.exception.PdfGeneratorRejectedException;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous front to a prepared generator, so callers are not tied up while a document renders.
+ * At most a fixed number of renders are accepted at once, queued or running; further
+ * requests fail immediately with a {@link PdfGeneratorRejectedException} rather than queueing
+ * without bound. However many threads the executor has, the number of renders doing
+ * layout at the same time is capped, by default at the number of processors.
+ */
+@SuppressWarnings("PMD.AvoidCatchingGenericException")
+public final class AsyncHtmlToPdfGenerator implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(
+      AsyncHtmlToPdfGenerator.class.getName());
+  private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+  private final PreparedHtmlToPdfGenerator generator;
+  private final Executor executor;
+  private final ExecutorService ownedExecutor;
+  private final int maximumPending;
+  private final Semaphore pending;
+  private final Semaphore renderPermits;
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * Constructor for a generator with its own pool of one thread per processor.
+   *
+   * @param generator      the generator each document is rendered with
+   * @param maximumPending the maximum number of renders queued or running
+   */
+  public AsyncHtmlToPdfGenerator(final PreparedHtmlToPdfGenerator generator,
+                                 final int maximumPending) {
+    this(generator, Arguments.positive(maximumPending, "Maximum pending"),
+        new ThreadPoolExecutor(PROCESSORS, PROCESSORS, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(maximumPending), new PdfWorkerThreadFactory("pdf-async")),
+        PROCESSORS, true);
+  }
+
+  /**
+   * Constructor for a generator rendering on a caller supplied executor, such as a virtual
+   * thread executor, with at most one render per processor doing layout at a time.
+   * The executor is left running when this generator is closed.
+   *
+   * @param generator      the generator each document is rendered with
+   * @param executor       the executor renders run on
+   * @param maximumPending the maximum number of renders queued or running
+   */
+  public AsyncHtmlToPdfGenerator(final PreparedHtmlToPdfGenerator generator,
+                                 final Executor executor,
+                                 final int maximumPending) {
+    this(generator, executor, maximumPending, PROCESSORS);
+  }
+
+  /**
+   * Constructor for a generator rendering on a caller supplied executor.
+   * The executor is left running when this generator is closed.
+   *
+   * @param generator         the generator each document is rendered with
+   * @param executor          the executor renders run on
+   * @param maximumPending    the maximum number of renders queued or running
+   * @param maximumConcurrent the maximum number of renders doing layout at the same time
+   */
+  public AsyncHtmlToPdfGenerator(final PreparedHtmlToPdfGenerator generator,
+                                 final Executor executor,
+                                 final int maximumPending,
+                                 final int maximumConcurrent) {
+    this(generator, Arguments.positive(maximumPending, "Maximum pending"), executor,
+        Arguments.positive(maximumConcurrent, "Maximum concurrent"), false);
+  }
+
+  private AsyncHtmlToPdfGenerator(final PreparedHtmlToPdfGenerator generator,
+                                  final int maximumPending,
+                                  final Executor executor,
+                                  final int maximumConcurrent,
+                                  final boolean ownsExecutor) {
+    this.generator = Objects.requireNonNull(generator, "Generator must not be null");
+    this.executor = Objects.requireNonNull(executor, "Executor must not be null");
+    this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    this.maximumPending = maximumPending;
+    this.pending = new Semaphore(maximumPending);
+    this.renderPermits = new Semaphore(maximumConcurrent);
+  }
+
+  /**
+   * Returns a future completed with the pdf rendered from the html.
+   * If the generator is at capacity the future is already completed
+   * with a {@link PdfGeneratorRejectedException}.
+   *
+   * @param html - The input html
+   * @return
+   */
+  public CompletableFuture<byte[]> createPdfDocument(final String html) {
+    return createPdfDocument(HtmlSource.of(html));
+  }
+
+  /**
+   * Returns a future completed with the pdf rendered from the html source.
+   * If the generator is at capacity the future is already completed
+   * with a {@link PdfGeneratorRejectedException}.
+   *
+   * @param html - The input html
+   * @return
+   */
+  public CompletableFuture<byte[]> createPdfDocument(final HtmlSource html) {
+    final PooledBuffer outputStream = PdfBufferPool.shared().acquire();
+    // returned to the pool once the render has finished with it, whether or not it failed
+    return createPdfDocument(html, outputStream).handle((ignored, failure) -> {
+      try {
+        if (failure != null) {
+          throw failure instanceof CompletionException
+              ? (CompletionException) failure : new CompletionException(failure);
+        }
+        return outputStream.toByteArray();
+      } finally {
+        outputStream.close();
+      }
+    });
+  }
+
+  /**
+   * Returns a future completed once the pdf rendered from the html source has been written
+   * to the output stream. The stream is flushed but not closed.
+   * If the generator is at capacity the future is already completed
+   * with a {@link PdfGeneratorRejectedException} and nothing is written.
+   *
+   * @param html         - The input html
+   * @param outputStream The stream the pdf is written to
+   * @return
+   */
+  public CompletableFuture<Void> createPdfDocument(final HtmlSource html,
+                                                   final OutputStream outputStream) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    if (!pending.tryAcquire()) {
+      return reject(result, null);
+    }
+
+    try {
+      executor.execute(() -> render(html, outputStream, result));
+    } catch (RejectedExecutionException e) {
+      pending.release();
+      reject(result, e);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of renders currently queued or running.
+   *
+   * @return the pending count
+   */
+  public int pendingCount() {
+    return maximumPending - pending.availablePermits();
+  }
+
+  /**
+   * Returns the number of renders refused because the generator was at capacity.
+   *
+   * @return the rejected count
+   */
+  public long rejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * Shuts down the thread pool, if it was created by this generator.
+   * Renders already accepted are completed.
+   */
+  @Override
+  public void close() {
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+  }
+
+  private void render(final HtmlSource html, final OutputStream outputStream,
+                      final CompletableFuture<Void> result) {
+    Throwable failure = null;
+    try {
+      if (result.isDone()) {
+        // cancelled while queued
+        return;
+      }
+      renderPermits.acquire();
+      try {
+        generator.createPdfDocument(html, outputStream);
+      } finally {
+        renderPermits.release();
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = new PdfaGeneratorException("interrupted waiting to render", e);
+
+    } catch (Exception e) {
+      failure = e instanceof PdfaGeneratorException
+          ? e : new PdfaGeneratorException(e.getMessage(), e);
+
+    } catch (Error e) {
+      // such as a stack overflow on deeply nested html, rethrown once the future is completed
+      failure = e;
+
+    } finally {
+      // released before completing, so callers see the capacity freed once the future is done
+      pending.release();
+    }
+
+    if (failure == null) {
+      result.complete(null);
+    } else {
+      result.completeExceptionally(failure);
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+  }
+
+  private <T> CompletableFuture<T> reject(final CompletableFuture<T> result,
+                                          final RejectedExecutionException cause) {
+    rejected.increment();
+    LOGGER.warn("rejecting render, {} renders already pending", pendingCount());
+    result.completeExceptionally(new PdfGeneratorRejectedException(
+        String.format("pdf generator at capacity, %d renders already pending", maximumPending),
+        cause));
+    return result;
+  }
+}
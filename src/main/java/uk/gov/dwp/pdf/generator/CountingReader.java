@@ -0,0 +1,77 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that counts the characters read through it, stopping the render once it has
+ * read more than its budget allows or run past its deadline.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+class CountingReader extends FilterReader {
+
+  private final RenderBudget budget;
+  private long count;
+
+  /**
+   * Constructor.
+   *
+   * @param reader the reader to count
+   */
+  CountingReader(final Reader reader) {
+    this(reader, RenderBudget.start(null));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param reader the reader to count
+   * @param budget the budget of the render reading the html
+   */
+  CountingReader(final Reader reader, final RenderBudget budget) {
+    super(reader);
+    this.budget = budget;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int character = super.read();
+    if (character >= 0) {
+      count++;
+      budget.checkInputLength(count);
+    }
+    return character;
+  }
+
+  @Override
+  public int read(final char[] buffer, final int offset, final int length) throws IOException {
+    final int read = super.read(buffer, offset, length);
+    if (read > 0) {
+      count += read;
+      budget.checkInputLength(count);
+      budget.checkDeadline();
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(final long characters) throws IOException {
+    final long skipped = super.skip(characters);
+    count += skipped;
+    budget.checkInputLength(count);
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * Returns the number of characters read.
+   */
+  long getCount() {
+    return count;
+  }
+}
@@ -0,0 +1,218 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.xmpbox.DateConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pins the parts of a pdf that would otherwise differ on every render, the creation and
+ * modification dates and the document ID, so identical inputs give byte-identical pdfs.
+ * The ID is derived from a fingerprint of the assets, the document information
+ * and the content of every page.
+ * Instances are immutable and can be shared between threads.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class DeterministicOutput {
+
+  private static final Pattern XMP_CREATE_DATE =
+      Pattern.compile("(\\s*)<xmp:CreateDate>[^<]*</xmp:CreateDate>");
+  private static final Pattern XMP_MODIFY_DATE =
+      Pattern.compile("<xmp:ModifyDate>[^<]*</xmp:ModifyDate>");
+  private static final int ID_LENGTH = 16;
+
+  private final Instant documentDate;
+  private final byte[] fingerprint;
+
+  private DeterministicOutput(final Instant documentDate, final byte[] fingerprint) {
+    this.documentDate = documentDate;
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Returns the pinning for documents rendered with the assets, fingerprinting the colour
+   * profile and font bytes they were prepared from along with everything else that changes
+   * the output.
+   */
+  static DeterministicOutput of(final Instant documentDate,
+                                final byte[] colourProfile,
+                                final Map<String, byte[]> fontMap,
+                                final PdfRenderAssets assets) {
+    final MessageDigest digest = sha256();
+    update(digest, Objects.requireNonNull(documentDate, "Document date must not be null")
+        .toString().getBytes(StandardCharsets.UTF_8));
+    update(digest, assets.getConformanceLevel().name().getBytes(StandardCharsets.UTF_8));
+    update(digest, new byte[] {(byte) (assets.isSubsetFonts() ? 1 : 0)});
+    update(digest, String.valueOf(assets.getOptimisation()).getBytes(StandardCharsets.UTF_8));
+    update(digest, colourProfile == null ? new byte[0] : colourProfile);
+    for (final Map.Entry<String, byte[]> font : new TreeMap<>(fontMap).entrySet()) {
+      update(digest, font.getKey().getBytes(StandardCharsets.UTF_8));
+      update(digest, font.getValue());
+    }
+    if (assets.getResourceBundle() != null) {
+      update(digest, assets.getResourceBundle().getBaseUri().getBytes(StandardCharsets.UTF_8));
+      for (final Map.Entry<String, byte[]> resource
+          : new TreeMap<>(assets.getResourceBundle().getResources()).entrySet()) {
+        update(digest, resource.getKey().getBytes(StandardCharsets.UTF_8));
+        update(digest, resource.getValue());
+      }
+    }
+    return new DeterministicOutput(documentDate, digest.digest());
+  }
+
+  /**
+   * Sets the dates and ID of the document, which must be fully painted but not yet saved.
+   */
+  void pin(final PDDocument document) throws IOException {
+    final Calendar date = new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+    date.setTimeInMillis(documentDate.toEpochMilli());
+
+    final PDDocumentInformation information = document.getDocumentInformation();
+    information.setCreationDate(date);
+    information.setModificationDate(date);
+
+    final PDMetadata metadata = document.getDocumentCatalog().getMetadata();
+    if (metadata != null) {
+      // the pdf/a levels copy the creation date to the xmp, which must match the information
+      final String xmp;
+      try (InputStream inputStream = metadata.exportXMPMetadata()) {
+        xmp = new String(readAll(inputStream), StandardCharsets.UTF_8);
+      }
+      final String iso = DateConverter.toISO8601(date);
+      final String modifyDate = "<xmp:ModifyDate>" + iso + "</xmp:ModifyDate>";
+      final Matcher modified = XMP_MODIFY_DATE.matcher(xmp);
+      final boolean hasModifyDate = modified.find();
+      final String dated = hasModifyDate
+          ? modified.replaceFirst(Matcher.quoteReplacement(modifyDate)) : xmp;
+      final Matcher created = XMP_CREATE_DATE.matcher(dated);
+      if (created.find()) {
+        // a modification date is added beside the creation date only if there is none
+        metadata.importXMPMetadata(created.replaceFirst(Matcher.quoteReplacement(
+            created.group(1) + "<xmp:CreateDate>" + iso + "</xmp:CreateDate>"
+                + (hasModifyDate ? "" : created.group(1) + modifyDate)))
+            .getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    final MessageDigest digest = sha256();
+    digest.update(fingerprint);
+    for (final String key : new TreeSet<>(information.getMetadataKeys())) {
+      final String value = information.getCOSObject().getString(key);
+      update(digest, (key + '=' + value).getBytes(StandardCharsets.UTF_8));
+    }
+    final byte[] buffer = new byte[8192];
+    for (final PDPage page : document.getPages()) {
+      final Iterator<PDStream> contents = page.getContentStreams();
+      while (contents.hasNext()) {
+        try (InputStream inputStream = contents.next().getCOSObject().createRawInputStream()) {
+          for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+            digest.update(buffer, 0, count);
+          }
+        }
+      }
+    }
+    final byte[] id = Arrays.copyOf(digest.digest(), ID_LENGTH);
+    final COSArray idArray = new COSArray();
+    idArray.add(new COSString(id));
+    idArray.add(new COSString(id));
+    document.getDocument().getTrailer().setItem(COSName.ID, idArray);
+  }
+
+  /**
+   * Returns a new key of a cached result, to be given the html as it is read.
+   */
+  Key newKey() {
+    final MessageDigest digest = sha256();
+    digest.update(fingerprint);
+    return new Key(digest);
+  }
+
+  private static void update(final MessageDigest digest, final byte[] bytes) {
+    // length prefixed, so adjacent values cannot run into each other
+    final int length = bytes.length;
+    digest.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16),
+        (byte) (length >>> 8), (byte) length});
+    digest.update(bytes);
+  }
+
+  private static byte[] readAll(final InputStream inputStream) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+      bytes.write(buffer, 0, count);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The key of a cached result, the hex SHA-256 digest of the fingerprint and the html,
+   * taken a buffer of html at a time so the key is ready once the html has been read.
+   */
+  static final class Key {
+    private final MessageDigest digest;
+    private byte[] bytes = new byte[0];
+
+    private Key(final MessageDigest digest) {
+      this.digest = digest;
+    }
+
+    /**
+     * Adds the characters to the key.
+     */
+    void update(final char[] characters, final int offset, final int length) {
+      // the utf-16 code units, so a surrogate pair split between buffers still hashes whole
+      if (bytes.length < length * 2) {
+        bytes = new byte[length * 2];
+      }
+      for (int i = 0; i < length; i++) {
+        bytes[i * 2] = (byte) (characters[offset + i] >>> 8);
+        bytes[i * 2 + 1] = (byte) characters[offset + i];
+      }
+      digest.update(bytes, 0, length * 2);
+    }
+
+    /**
+     * Returns the key of every character added, after which no more may be added.
+     */
+    String value() {
+      final StringBuilder key = new StringBuilder();
+      for (final byte value : digest.digest()) {
+        key.append(String.format("%02x", value));
+      }
+      return key.toString();
+    }
+  }
+}
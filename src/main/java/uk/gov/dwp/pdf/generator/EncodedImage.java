@@ -0,0 +1,232 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An image encoded once as a pdf image XObject, held apart from any document.
+ * Each document drawing it gets its own XObject copied from the encoded data, without the
+ * image being decoded and compressed again. Images are encoded as openhtmltopdf would,
+ * jpegs as they are and other images losslessly.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class EncodedImage {
+
+  // the dictionary entries and bookkeeping of an image, roughly, beyond its encoded data
+  private static final long OVERHEAD_BYTES = 512;
+
+  private final int width;
+  private final int height;
+  private final boolean jpeg;
+  private final Stream xobject;
+
+  private EncodedImage(final int width, final int height, final boolean jpeg,
+                       final Stream xobject) {
+    this.width = width;
+    this.height = height;
+    this.jpeg = jpeg;
+    this.xobject = xobject;
+  }
+
+  /**
+   * Returns the image encoded as an XObject, having checked its size against the limit of the
+   * render from its header before decoding it, or null if the image cannot be read.
+   */
+  static EncodedImage encode(final byte[] image, final RenderBudget budget) throws IOException {
+    final int width;
+    final int height;
+    final String format;
+    try (ImageInputStream inputStream =
+             ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+      final Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+      if (!readers.hasNext()) {
+        return null;
+      }
+      final ImageReader reader = readers.next();
+      try {
+        reader.setInput(inputStream, true, true);
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+        format = reader.getFormatName();
+      } finally {
+        reader.dispose();
+      }
+    }
+    budget.checkImage(width, height);
+
+    final boolean jpeg = "jpeg".equalsIgnoreCase(format) || "jpg".equalsIgnoreCase(format);
+    try (PDDocument scratch = new PDDocument()) {
+      final PDImageXObject xobject;
+      if (jpeg) {
+        xobject = JPEGFactory.createFromByteArray(scratch, image);
+      } else {
+        final BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(image));
+        if (decoded == null) {
+          return null;
+        }
+        xobject = LosslessFactory.createFromImage(scratch, decoded);
+      }
+      return new EncodedImage(width, height, jpeg, (Stream) detach(xobject.getCOSObject()));
+    }
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  boolean isJpeg() {
+    return jpeg;
+  }
+
+  /**
+   * Returns the memory, in bytes, held by the encoded image.
+   */
+  long getBytes() {
+    return OVERHEAD_BYTES + bytesOf(xobject);
+  }
+
+  /**
+   * Returns a new XObject of the image belonging to the document.
+   */
+  PDImageXObject toXObject(final PDDocument document) throws IOException {
+    return new PDImageXObject(
+        new PDStream((COSStream) attach(xobject, document.getDocument())), null);
+  }
+
+  private static Object detach(final COSBase base) throws IOException {
+    if (base instanceof COSObject) {
+      return detach(((COSObject) base).getObject());
+    }
+    if (base instanceof COSStream) {
+      final COSStream stream = (COSStream) base;
+      try (InputStream raw = stream.createRawInputStream()) {
+        return new Stream(detachEntries(stream), IOUtils.toByteArray(raw));
+      }
+    }
+    if (base instanceof COSDictionary) {
+      return detachEntries((COSDictionary) base);
+    }
+    if (base instanceof COSArray) {
+      final List<Object> items = new ArrayList<>();
+      for (final COSBase item : (COSArray) base) {
+        items.add(detach(item));
+      }
+      return items;
+    }
+    if (base instanceof COSString) {
+      return new COSString(((COSString) base).getBytes());
+    }
+    // names, numbers, booleans and null are never changed once made
+    return base;
+  }
+
+  private static Map<COSName, Object> detachEntries(final COSDictionary dictionary)
+      throws IOException {
+    final Map<COSName, Object> entries = new LinkedHashMap<>();
+    for (final Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+      // the length is set again as the data is written
+      if (!COSName.LENGTH.equals(entry.getKey())) {
+        entries.put(entry.getKey(), detach(entry.getValue()));
+      }
+    }
+    return entries;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static long bytesOf(final Object detached) {
+    if (detached instanceof Stream) {
+      return ((Stream) detached).data.length + bytesOf(((Stream) detached).entries);
+    }
+    long bytes = 0;
+    if (detached instanceof Map) {
+      for (final Object value : ((Map<COSName, Object>) detached).values()) {
+        bytes += bytesOf(value);
+      }
+    } else if (detached instanceof List) {
+      for (final Object item : (List<Object>) detached) {
+        bytes += bytesOf(item);
+      }
+    }
+    return bytes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static COSBase attach(final Object detached, final COSDocument document)
+      throws IOException {
+    if (detached instanceof Stream) {
+      final Stream stream = (Stream) detached;
+      final COSStream attached =
+          document.createCOSStream(attachEntries(stream.entries, document));
+      try (OutputStream raw = attached.createRawOutputStream()) {
+        raw.write(stream.data);
+      }
+      return attached;
+    }
+    if (detached instanceof Map) {
+      return attachEntries((Map<COSName, Object>) detached, document);
+    }
+    if (detached instanceof List) {
+      final COSArray array = new COSArray();
+      for (final Object item : (List<Object>) detached) {
+        array.add(attach(item, document));
+      }
+      return array;
+    }
+    if (detached instanceof COSString) {
+      return new COSString(((COSString) detached).getBytes());
+    }
+    return (COSBase) detached;
+  }
+
+  private static COSDictionary attachEntries(final Map<COSName, Object> entries,
+                                             final COSDocument document) throws IOException {
+    final COSDictionary dictionary = new COSDictionary();
+    for (final Map.Entry<COSName, Object> entry : entries.entrySet()) {
+      dictionary.setItem(entry.getKey(), attach(entry.getValue(), document));
+    }
+    return dictionary;
+  }
+
+  /**
+   * A stream read into memory, so that any number of renders can copy it at once.
+   */
+  private static final class Stream {
+    private final Map<COSName, Object> entries;
+    private final byte[] data;
+
+    Stream(final Map<COSName, Object> entries, final byte[] data) {
+      this.entries = entries;
+      this.data = data;
+    }
+  }
+}
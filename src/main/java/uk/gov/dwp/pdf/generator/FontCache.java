@@ -0,0 +1,182 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide, bounded cache of parsed TrueType fonts.
+ * Entries are keyed by the font family name and a SHA-256 hash of the font bytes
+ * so the same font is only parsed once however many documents embed it.
+ * The least recently used entry is evicted once the maximum size is reached.
+ * The size of the shared instance can be set with the system property
+ * {@value #MAXIMUM_SIZE_PROPERTY}.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class FontCache {
+
+  /**
+   * System property holding the maximum number of fonts held by the shared cache.
+   */
+  public static final String MAXIMUM_SIZE_PROPERTY = "uk.gov.dwp.pdf.fontCacheSize";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FontCache.class.getName());
+  private static final int DEFAULT_MAXIMUM_SIZE = 32;
+  private static final FontCache SHARED =
+      new FontCache(Integer.getInteger(MAXIMUM_SIZE_PROPERTY, DEFAULT_MAXIMUM_SIZE));
+
+  private final Map<String, CachedFont> fonts;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maximumSize the maximum number of parsed fonts to hold
+   */
+  FontCache(final int maximumSize) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("Font cache size must be at least 1");
+    }
+    this.fonts = new LinkedHashMap<String, CachedFont>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, CachedFont> eldest) {
+        final boolean evict = size() > maximumSize;
+        if (evict) {
+          evictions.incrementAndGet();
+          LOGGER.debug("evicting font '{}' from the font cache", eldest.getValue().family);
+        }
+        return evict;
+      }
+    };
+  }
+
+  /**
+   * Returns the cache shared by every generator in this process.
+   *
+   * @return the shared font cache
+   */
+  public static FontCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the parsed font for the family and font bytes, parsing it on first use.
+   * The returned font is shared between threads and must not be closed by the caller.
+   */
+  TrueTypeFont get(final String family, final byte[] fontBytes) throws IOException {
+    Objects.requireNonNull(fontBytes, "font bytes must not be null");
+
+    // hashed on every call, outside the cache lock, as the caller may have rewritten the bytes
+    final String key = family + '\u0000' + sha256(fontBytes);
+    CachedFont cachedFont;
+    synchronized (fonts) {
+      cachedFont = fonts.get(key);
+      if (cachedFont == null) {
+        cachedFont = new CachedFont(family, fontBytes);
+        fonts.put(key, cachedFont);
+        misses.incrementAndGet();
+      } else {
+        hits.incrementAndGet();
+      }
+    }
+    return cachedFont.parse();
+  }
+
+  /**
+   * Returns the number of parsed fonts currently held.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    synchronized (fonts) {
+      return fonts.size();
+    }
+  }
+
+  /**
+   * Returns the number of lookups served from the cache.
+   *
+   * @return the hit count
+   */
+  public long hitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that required the font to be parsed.
+   *
+   * @return the miss count
+   */
+  public long missCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of fonts evicted to keep the cache within its maximum size.
+   *
+   * @return the eviction count
+   */
+  public long evictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Removes every entry from the cache.
+   */
+  public void clear() {
+    synchronized (fonts) {
+      fonts.clear();
+    }
+  }
+
+  private static String sha256(final byte[] bytes) {
+    try {
+      final byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+      final StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (final byte value : hash) {
+        hex.append(String.format("%02x", value));
+      }
+      return hex.toString();
+
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * A single cache entry, parsed lazily so that the cache lock is not held while parsing.
+   */
+  private static final class CachedFont {
+    private final String family;
+    private byte[] fontBytes;
+    private TrueTypeFont font;
+
+    CachedFont(final String family, final byte[] fontBytes) {
+      this.family = family;
+      this.fontBytes = fontBytes.clone();
+    }
+
+    synchronized TrueTypeFont parse() throws IOException {
+      if (font == null) {
+        LOGGER.debug("parsing font '{}' for the font cache", family);
+        font = new TTFParser().parse(new ByteArrayInputStream(fontBytes));
+        fontBytes = null;
+      }
+      return font;
+    }
+  }
+}
@@ -0,0 +1,569 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Single pass scanner over html that finds the font families declared in style elements
+ * and style attributes and checks them against the families available to the document.
+ * Characters are fed in as they are read, only the tag, attribute or css declaration
+ * currently being scanned is buffered.
+ * A declaration is satisfied when at least one of its families is available,
+ * matching the exact family name the renderer looks the font up by.
+ */
+@SuppressWarnings({"PMD.CommentDefaultAccessModifier", "PMD.GodClass"})
+final class FontFamilyScanner {
+
+  private static final String STYLE = "style";
+  private static final String END_STYLE = "</style";
+  private static final String COMMENT_START = "<!--";
+  private static final String CDATA_START = "<![CDATA[";
+  private static final int MAXIMUM_NAME_LENGTH = 16;
+
+  private enum State {
+    TEXT, TAG_OPEN, TAG_NAME, TAG, ATTRIBUTE_NAME, AFTER_ATTRIBUTE_NAME,
+    BEFORE_ATTRIBUTE_VALUE, ATTRIBUTE_VALUE, UNQUOTED_ATTRIBUTE_VALUE,
+    MARKUP, SKIP, STYLE_TEXT, STYLE_MARKUP
+  }
+
+  private final CssDeclarations declarations;
+  private final StringBuilder name = new StringBuilder();
+  private final StringBuilder pending = new StringBuilder();
+  private State state = State.TEXT;
+  private State skipReturnState;
+  private String skipTerminator;
+  private boolean styleTag;
+  private boolean styleAttribute;
+  private char quote;
+  private char lastTagCharacter;
+
+  /**
+   * Constructor.
+   *
+   * @param fontFamilies the font families available to the document
+   */
+  FontFamilyScanner(final Set<String> fontFamilies) {
+    this.declarations = new CssDeclarations(fontFamilies);
+  }
+
+  /**
+   * Scans the next character of the html.
+   */
+  @SuppressWarnings("PMD.CyclomaticComplexity")
+  void accept(final char character) {
+    if (declarations.missing != null) {
+      return;
+    }
+    switch (state) {
+      case TEXT:
+        if (character == '<') {
+          state = State.TAG_OPEN;
+        }
+        break;
+      case TAG_OPEN:
+        tagOpen(character);
+        break;
+      case TAG_NAME:
+        tagName(character);
+        break;
+      case TAG:
+        tag(character);
+        break;
+      case ATTRIBUTE_NAME:
+        attributeName(character);
+        break;
+      case AFTER_ATTRIBUTE_NAME:
+        afterAttributeName(character);
+        break;
+      case BEFORE_ATTRIBUTE_VALUE:
+        beforeAttributeValue(character);
+        break;
+      case ATTRIBUTE_VALUE:
+        attributeValue(character);
+        break;
+      case UNQUOTED_ATTRIBUTE_VALUE:
+        unquotedAttributeValue(character);
+        break;
+      case MARKUP:
+        markup(character);
+        break;
+      case SKIP:
+        skip(character);
+        break;
+      case STYLE_TEXT:
+        styleText(character);
+        break;
+      default:
+        styleMarkup(character);
+        break;
+    }
+  }
+
+  /**
+   * Scans a whole stylesheet, such as one linked from the html.
+   */
+  void acceptStylesheet(final CharSequence css) {
+    declarations.start();
+    for (int i = 0; i < css.length() && declarations.missing == null; i++) {
+      declarations.accept(css.charAt(i));
+    }
+    declarations.end();
+  }
+
+  /**
+   * Completes the scan once the whole document has been read.
+   */
+  void end() {
+    if (state == State.STYLE_TEXT || state == State.STYLE_MARKUP
+        || state == State.ATTRIBUTE_VALUE && styleAttribute) {
+      declarations.end();
+    }
+    state = State.TEXT;
+  }
+
+  /**
+   * Returns the first font declaration naming none of the available families.
+   *
+   * @return the declaration, or null if every declaration read so far is satisfied
+   */
+  String getMissingDeclaration() {
+    return declarations.missing;
+  }
+
+  private void tagOpen(final char character) {
+    if (character == '!') {
+      pending.setLength(0);
+      pending.append("<!");
+      state = State.MARKUP;
+    } else if (character == '?' || character == '/') {
+      skipUntil(">", State.TEXT);
+    } else if (Character.isLetter(character)) {
+      lastTagCharacter = 0;
+      name.setLength(0);
+      appendName(character);
+      state = State.TAG_NAME;
+    } else {
+      state = State.TEXT;
+    }
+  }
+
+  private void tagName(final char character) {
+    if (Character.isWhitespace(character) || character == '/' || character == '>') {
+      styleTag = isName(STYLE);
+      state = State.TAG;
+      tag(character);
+    } else {
+      appendName(character);
+    }
+  }
+
+  private void tag(final char character) {
+    if (character == '>') {
+      state = styleTag && lastTagCharacter != '/' ? State.STYLE_TEXT : State.TEXT;
+      if (state == State.STYLE_TEXT) {
+        declarations.start();
+      }
+    } else if (!Character.isWhitespace(character) && character != '/') {
+      name.setLength(0);
+      appendName(character);
+      state = State.ATTRIBUTE_NAME;
+    }
+    lastTagCharacter = character;
+  }
+
+  private void attributeName(final char character) {
+    if (character == '=') {
+      state = State.BEFORE_ATTRIBUTE_VALUE;
+    } else if (Character.isWhitespace(character)) {
+      state = State.AFTER_ATTRIBUTE_NAME;
+    } else if (character == '/' || character == '>') {
+      state = State.TAG;
+      tag(character);
+    } else {
+      appendName(character);
+    }
+  }
+
+  private void afterAttributeName(final char character) {
+    if (character == '=') {
+      state = State.BEFORE_ATTRIBUTE_VALUE;
+    } else if (!Character.isWhitespace(character)) {
+      state = State.TAG;
+      tag(character);
+    }
+  }
+
+  private void beforeAttributeValue(final char character) {
+    if (Character.isWhitespace(character)) {
+      return;
+    }
+    styleAttribute = isName(STYLE);
+    if (styleAttribute) {
+      declarations.start();
+    }
+    if (character == '"' || character == '\'') {
+      quote = character;
+      state = State.ATTRIBUTE_VALUE;
+    } else if (character == '>') {
+      state = State.TAG;
+      tag(character);
+    } else {
+      state = State.UNQUOTED_ATTRIBUTE_VALUE;
+      unquotedAttributeValue(character);
+    }
+  }
+
+  private void attributeValue(final char character) {
+    if (character == quote) {
+      endAttributeValue();
+    } else if (styleAttribute) {
+      declarations.acceptEncoded(character);
+    }
+  }
+
+  private void unquotedAttributeValue(final char character) {
+    if (Character.isWhitespace(character) || character == '>') {
+      endAttributeValue();
+      tag(character);
+    } else if (styleAttribute) {
+      declarations.acceptEncoded(character);
+    }
+  }
+
+  private void endAttributeValue() {
+    if (styleAttribute) {
+      declarations.end();
+      styleAttribute = false;
+    }
+    lastTagCharacter = ' ';
+    state = State.TAG;
+  }
+
+  private void markup(final char character) {
+    pending.append(character);
+    if (isPending(COMMENT_START)) {
+      skipUntil("-->", State.TEXT);
+    } else if (isPending(CDATA_START)) {
+      skipUntil("]]>", State.TEXT);
+    } else if (!isPendingPrefixOf(COMMENT_START) && !isPendingPrefixOf(CDATA_START)) {
+      // doctype and other declarations
+      skipUntil(">", State.TEXT);
+      skip(character);
+    }
+  }
+
+  private void skipUntil(final String terminator, final State returnState) {
+    pending.setLength(0);
+    skipTerminator = terminator;
+    skipReturnState = returnState;
+    state = State.SKIP;
+  }
+
+  private void skip(final char character) {
+    pending.append(character);
+    if (pending.length() > skipTerminator.length()) {
+      pending.deleteCharAt(0);
+    }
+    if (skipTerminator.contentEquals(pending)) {
+      pending.setLength(0);
+      state = skipReturnState;
+    }
+  }
+
+  private void styleText(final char character) {
+    if (character == '<') {
+      pending.setLength(0);
+      pending.append(character);
+      state = State.STYLE_MARKUP;
+    } else {
+      declarations.accept(character);
+    }
+  }
+
+  private void styleMarkup(final char character) {
+    pending.append(character);
+    if (isPending(END_STYLE)) {
+      declarations.end();
+      skipUntil(">", State.TEXT);
+    } else if (isPending(COMMENT_START)) {
+      skipUntil("-->", State.STYLE_TEXT);
+    } else if (isPending(CDATA_START)) {
+      // character data markers are transparent to the css inside them
+      pending.setLength(0);
+      state = State.STYLE_TEXT;
+    } else if (!isPendingPrefixOf(END_STYLE) && !isPendingPrefixOf(COMMENT_START)
+        && !isPendingPrefixOf(CDATA_START)) {
+      state = State.STYLE_TEXT;
+      final String unmatched = pending.toString();
+      pending.setLength(0);
+      declarations.accept(unmatched.charAt(0));
+      for (int i = 1; i < unmatched.length(); i++) {
+        accept(unmatched.charAt(i));
+      }
+    }
+  }
+
+  private void appendName(final char character) {
+    if (name.length() <= MAXIMUM_NAME_LENGTH) {
+      name.append(Character.toLowerCase(character));
+    }
+  }
+
+  private boolean isName(final String expected) {
+    return expected.contentEquals(name);
+  }
+
+  private boolean isPending(final String expected) {
+    return pending.length() == expected.length() && isPendingPrefixOf(expected);
+  }
+
+  private boolean isPendingPrefixOf(final String expected) {
+    return pending.length() <= expected.length()
+        && expected.regionMatches(true, 0, pending.toString(), 0, pending.length());
+  }
+
+  /**
+   * Splits css into declarations and checks each font-family and font declaration.
+   * Only the property name and the value of a font declaration are buffered.
+   */
+  @SuppressWarnings("PMD.AvoidStringBufferField")
+  private static final class CssDeclarations {
+    private static final int MAXIMUM_PROPERTY_LENGTH = 32;
+    private static final int MAXIMUM_VALUE_LENGTH = 1024;
+    private static final int MAXIMUM_ENTITY_LENGTH = 10;
+    private static final Pattern FONT_SIZE = Pattern.compile(
+        "(?i)(?:[+]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[a-z]+|%)|0|xx-small|x-small|small|medium"
+            + "|large|x-large|xx-large|smaller|larger)(?:/.*)?");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Set<String> fontFamilies;
+    private final StringBuilder property = new StringBuilder();
+    private final StringBuilder value = new StringBuilder();
+    private final StringBuilder entity = new StringBuilder();
+    private boolean inValue;
+    private boolean fontProperty;
+    private boolean shorthand;
+    private boolean inComment;
+    private boolean slash;
+    private boolean star;
+    private boolean escape;
+    private char stringQuote;
+    private String missing;
+
+    CssDeclarations(final Set<String> fontFamilies) {
+      this.fontFamilies = fontFamilies;
+    }
+
+    void start() {
+      reset();
+      inComment = false;
+      slash = false;
+      entity.setLength(0);
+    }
+
+    void acceptEncoded(final char character) {
+      if (entity.length() > 0 || character == '&') {
+        entity.append(character);
+        if (character == ';' || entity.length() > MAXIMUM_ENTITY_LENGTH) {
+          final String reference = entity.toString();
+          entity.setLength(0);
+          final int decoded = decodeEntity(reference);
+          if (decoded < 0) {
+            for (int i = 0; i < reference.length(); i++) {
+              accept(reference.charAt(i));
+            }
+          } else {
+            accept((char) decoded);
+          }
+        }
+      } else {
+        accept(character);
+      }
+    }
+
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    void accept(final char character) {
+      if (inComment) {
+        inComment = !(star && character == '/');
+        star = character == '*';
+        return;
+      }
+      if (stringQuote != 0) {
+        append(character);
+        if (escape) {
+          escape = false;
+        } else if (character == '\\') {
+          escape = true;
+        } else if (character == stringQuote) {
+          stringQuote = 0;
+        }
+        return;
+      }
+      if (slash) {
+        slash = false;
+        if (character == '*') {
+          inComment = true;
+          star = false;
+          return;
+        }
+        append('/');
+      }
+      if (character == '/') {
+        slash = true;
+      } else if (character == ';' || character == '{' || character == '}') {
+        endDeclaration();
+      } else if (character == ':' && !inValue) {
+        final String name = property.toString().trim().toLowerCase(Locale.ROOT);
+        inValue = true;
+        shorthand = "font".equals(name);
+        fontProperty = shorthand || "font-family".equals(name);
+      } else {
+        if (character == '"' || character == '\'') {
+          stringQuote = character;
+        }
+        append(character);
+      }
+    }
+
+    void end() {
+      if (slash) {
+        slash = false;
+        append('/');
+      }
+      endDeclaration();
+    }
+
+    private void append(final char character) {
+      if (inValue) {
+        if (fontProperty && value.length() < MAXIMUM_VALUE_LENGTH) {
+          value.append(character);
+        }
+      } else if (property.length() <= MAXIMUM_PROPERTY_LENGTH) {
+        property.append(character);
+      }
+    }
+
+    private void endDeclaration() {
+      if (fontProperty && missing == null) {
+        final String declared = WHITESPACE.matcher(value.toString().trim()).replaceAll(" ");
+        final String families = shorthand ? shorthandFamilies(declared) : declared;
+        if (families != null && !isSatisfied(families)) {
+          missing = property.toString().trim() + ": " + declared;
+        }
+      }
+      reset();
+    }
+
+    private void reset() {
+      property.setLength(0);
+      value.setLength(0);
+      inValue = false;
+      fontProperty = false;
+      shorthand = false;
+      escape = false;
+      stringQuote = 0;
+    }
+
+    private boolean isSatisfied(final String families) {
+      final String keyword = families.toLowerCase(Locale.ROOT);
+      if ("inherit".equals(keyword) || "initial".equals(keyword) || "unset".equals(keyword)) {
+        return true;
+      }
+
+      int start = 0;
+      char openQuote = 0;
+      for (int i = 0; i <= families.length(); i++) {
+        final char character = i < families.length() ? families.charAt(i) : ',';
+        if (openQuote != 0) {
+          openQuote = character == openQuote ? 0 : openQuote;
+        } else if (character == '"' || character == '\'') {
+          openQuote = character;
+        } else if (character == ',' || character == '!') {
+          if (fontFamilies.contains(unquote(families.substring(start, i).trim()))) {
+            return true;
+          }
+          if (character == '!') {
+            // !important ends the family list
+            return false;
+          }
+          start = i + 1;
+        }
+      }
+      return false;
+    }
+
+    private static String unquote(final String family) {
+      if (family.length() > 1 && (family.charAt(0) == '"' || family.charAt(0) == '\'')
+          && family.charAt(family.length() - 1) == family.charAt(0)) {
+        return family.substring(1, family.length() - 1);
+      }
+      return family;
+    }
+
+    /**
+     * Returns the family list of a font shorthand, which follows the font size
+     * and optional line height, or null for system fonts and keywords.
+     */
+    private static String shorthandFamilies(final String declared) {
+      boolean sizeSeen = false;
+      boolean lineHeight = false;
+      int index = 0;
+      while (index < declared.length()) {
+        final int end = declared.indexOf(' ', index) < 0
+            ? declared.length() : declared.indexOf(' ', index);
+        final String token = declared.substring(index, end);
+        if (sizeSeen) {
+          if (lineHeight || token.charAt(0) != '/') {
+            if (!lineHeight) {
+              return declared.substring(index);
+            }
+            lineHeight = false;
+          } else {
+            lineHeight = "/".equals(token);
+          }
+        } else if (token.charAt(0) == '"' || token.charAt(0) == '\'') {
+          return null;
+        } else {
+          sizeSeen = FONT_SIZE.matcher(token).matches();
+        }
+        index = end + 1;
+      }
+      return null;
+    }
+
+    private static int decodeEntity(final String reference) {
+      if (reference.charAt(reference.length() - 1) != ';') {
+        return -1;
+      }
+      final String entityName = reference.substring(1, reference.length() - 1);
+      switch (entityName) {
+        case "quot":
+          return '"';
+        case "apos":
+          return '\'';
+        case "amp":
+          return '&';
+        case "lt":
+          return '<';
+        case "gt":
+          return '>';
+        default:
+          return decodeCharacterReference(entityName);
+      }
+    }
+
+    private static int decodeCharacterReference(final String entityName) {
+      try {
+        if (entityName.startsWith("#x") || entityName.startsWith("#X")) {
+          return Integer.parseInt(entityName.substring(2), 16);
+        } else if (entityName.startsWith("#")) {
+          return Integer.parseInt(entityName.substring(1));
+        }
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package uk.gov.dwp.pdf.generator;
+
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Set;
+
+/**
+ * Reader that checks the font families requested by the html as it is read,
+ * so the font check does not need a copy of the document of its own.
+ * Every font declaration in a style element or style attribute must name
+ * at least one of the available fonts.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+class FontVerifyingReader extends FilterReader {
+
+  private final FontFamilyScanner scanner;
+
+  /**
+   * Constructor.
+   *
+   * @param reader       the html being read
+   * @param fontFamilies the font families available to the document
+   */
+  FontVerifyingReader(final Reader reader, final Set<String> fontFamilies) {
+    super(reader);
+    this.scanner = new FontFamilyScanner(fontFamilies);
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int character = super.read();
+    if (character < 0) {
+      scanner.end();
+    } else {
+      scanner.accept((char) character);
+    }
+    return character;
+  }
+
+  @Override
+  public int read(final char[] buffer, final int offset, final int length) throws IOException {
+    final int count = super.read(buffer, offset, length);
+    if (count < 0) {
+      scanner.end();
+    }
+    for (int i = offset; i < offset + count; i++) {
+      scanner.accept(buffer[i]);
+    }
+    return count;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * Throws if any declaration read so far requests a font that is not available.
+   */
+  void verify() throws PdfaGeneratorException {
+    scanner.end();
+    final String missingDeclaration = scanner.getMissingDeclaration();
+    if (missingDeclaration != null) {
+      throw new PdfaGeneratorException(
+          String.format("html element requests %s. "
+                  + "It is not passed in the font map, cannot encode.",
+              missingDeclaration
+          )
+      );
+    }
+  }
+}
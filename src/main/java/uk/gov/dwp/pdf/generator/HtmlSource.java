@@ -0,0 +1,186 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The html input to a generator.
+ * The input is read once, as it is parsed, so the generator never holds
+ * more than one copy of a large document.
+ * Sources created from a {@link Reader} or {@link InputStream} can only be rendered once,
+ * the caller remains responsible for closing them.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class HtmlSource {
+
+  /**
+   * Files at least this size are memory mapped rather than read through a buffer.
+   */
+  static final long MAPPED_FILE_THRESHOLD = 1024 * 1024;
+
+  private final ReaderSupplier readerSupplier;
+  private final String description;
+
+  private HtmlSource(final ReaderSupplier readerSupplier, final String description) {
+    this.readerSupplier = readerSupplier;
+    this.description = description;
+  }
+
+  /**
+   * Returns a source reading html from a string.
+   *
+   * @param html the input html
+   * @return the html source
+   */
+  public static HtmlSource of(final String html) {
+    return new HtmlSource(() -> new StringReader(html), "string");
+  }
+
+  /**
+   * Returns a source reading html from a reader.
+   *
+   * @param reader the reader the html is read from
+   * @return the html source
+   */
+  public static HtmlSource of(final Reader reader) {
+    return new HtmlSource(() -> new UnclosedReader(reader), "reader");
+  }
+
+  /**
+   * Returns a source reading html from an input stream in the given character set.
+   *
+   * @param inputStream the stream the html is read from
+   * @param charset     the character set of the stream
+   * @return the html source
+   */
+  public static HtmlSource of(final InputStream inputStream, final Charset charset) {
+    return new HtmlSource(
+        () -> new UnclosedReader(new InputStreamReader(inputStream, charset)), "stream");
+  }
+
+  /**
+   * Returns a source reading UTF-8 html from a file.
+   *
+   * @param path the file the html is read from
+   * @return the html source
+   */
+  public static HtmlSource of(final Path path) {
+    return of(path, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns a source reading html from a file in the given character set.
+   * Large files are memory mapped rather than copied onto the heap.
+   *
+   * @param path    the file the html is read from
+   * @param charset the character set of the file
+   * @return the html source
+   */
+  public static HtmlSource of(final Path path, final Charset charset) {
+    return new HtmlSource(() -> openFile(path, charset), path.toString());
+  }
+
+  /**
+   * Opens a reader over the html, closing it is the responsibility of the caller.
+   */
+  Reader openReader() throws IOException {
+    return readerSupplier.open();
+  }
+
+  /**
+   * Reads the whole html into memory, for callers that need it as a string.
+   */
+  String readFully() throws IOException {
+    try (Reader reader = openReader()) {
+      final StringBuilder builder = new StringBuilder();
+      final char[] buffer = new char[8192];
+      for (int count = reader.read(buffer); count >= 0; count = reader.read(buffer)) {
+        builder.append(buffer, 0, count);
+      }
+      return builder.toString();
+    }
+  }
+
+  private static Reader openFile(final Path path, final Charset charset) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < MAPPED_FILE_THRESHOLD) {
+        return Files.newBufferedReader(path, charset);
+      }
+
+      final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new BufferedReader(new InputStreamReader(new ByteBufferInputStream(mapped), charset));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "HtmlSource[" + description + "]";
+  }
+
+  /**
+   * Supplies the reader for a source.
+   */
+  @FunctionalInterface
+  private interface ReaderSupplier {
+    Reader open() throws IOException;
+  }
+
+  /**
+   * Reader that leaves the caller supplied reader open when closed.
+   */
+  private static final class UnclosedReader extends FilterReader {
+
+    UnclosedReader(final Reader reader) {
+      super(reader);
+    }
+
+    @Override
+    public void close() {
+      // the caller owns the underlying reader
+    }
+  }
+
+  /**
+   * Input stream over a memory mapped file.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(final ByteBuffer buffer) {
+      super();
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      final int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -1,20 +1,29 @@
 package uk.gov.dwp.pdf.generator;
 
+import com.openhtmltopdf.pdfboxout.PDFCreationListener;
+import com.openhtmltopdf.pdfboxout.PDFontSupplier;
 import com.openhtmltopdf.pdfboxout.PdfBoxFontResolver;
 import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
 import com.openhtmltopdf.svgsupport.BatikSVGDrawer;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import uk.gov.dwp.pdf.exception.PdfValidationException;
 import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.util.Arrays;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
-import java.util.function.Predicate;
+import java.util.Objects;
 
 /**
  * Implementation of the HtmlToPdfGenerator to create PDFs
@@ -26,89 +35,510 @@ class HtmlToAccessiblePdfGenerator implements HtmlToPdfGenerator {
   private static final Logger LOGGER = LoggerFactory.getLogger(
       HtmlToAccessiblePdfGenerator.class.getName());
 
+  private final FontCache fontCache;
+  private final ImageCache imageCache;
+  private final PdfRenderListener listener;
+
+  /**
+   * Constructor using the process-wide font and image caches.
+   */
+  HtmlToAccessiblePdfGenerator() {
+    this(PdfRenderListener.NONE);
+  }
+
+  /**
+   * Constructor using the process-wide font and image caches.
+   *
+   * @param listener the listener told the measurements of each render
+   */
+  HtmlToAccessiblePdfGenerator(final PdfRenderListener listener) {
+    this(FontCache.shared(), ImageCache.shared(), listener);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param fontCache  the cache of parsed fonts
+   * @param imageCache the cache of encoded data URI images
+   * @param listener   the listener told the measurements of each render
+   */
+  HtmlToAccessiblePdfGenerator(final FontCache fontCache, final ImageCache imageCache,
+                               final PdfRenderListener listener) {
+    this.fontCache = fontCache;
+    this.imageCache = imageCache;
+    this.listener = Objects.requireNonNull(listener, "Render listener must not be null");
+  }
+
   @Override
   public byte[] createPdfDocument(final String html,
                                   final byte[] colourProfile,
                                   final Map<String, byte[]> fontMap,
                                   final PdfConformanceLevel conformanceLevel)
       throws PdfaGeneratorException {
+    return createPdfDocument(HtmlSource.of(html), colourProfile, fontMap, conformanceLevel);
+  }
+
+  @Override
+  public void createPdfDocument(final HtmlSource html,
+                                final byte[] colourProfile,
+                                final Map<String, byte[]> fontMap,
+                                final PdfConformanceLevel conformanceLevel,
+                                final OutputStream outputStream)
+      throws PdfaGeneratorException {
 
+    final PdfRenderMetrics metrics = new PdfRenderMetrics(conformanceLevel);
+    final PdfRenderAssets assets;
     try {
-      final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      assets = PdfRenderAssets.prepare(colourProfile, fontMap, conformanceLevel, fontCache);
 
-      final PdfRendererBuilder pdfBuilder = new PdfRendererBuilder()
-          .defaultTextDirection(PdfRendererBuilder.TextDirection.LTR)
-          .useColorProfile(colourProfile)
-          .useSVGDrawer(new BatikSVGDrawer())
-          .withHtmlContent(html, null)
-          .useFastMode()
-          .toStream(outputStream);
+    } catch (Exception e) {
+      throw failed(metrics, failure(e));
+    }
+    metrics.record(PdfRenderPhase.PREPARE_ASSETS);
 
-      Optional.ofNullable(conformanceLevel)
-          .orElseThrow(() -> new IllegalArgumentException("Conformance level must not be null"))
-          .imposeOn(pdfBuilder);
+    createPdfDocument(html, assets, outputStream, metrics,
+        RenderBudget.start(assets.getLimits()));
+  }
 
-      verifyFontApplication(fontMap, html, conformanceLevel);
+  /**
+   * Writes a pdf rendered from the html input using previously prepared assets to the stream.
+   */
+  void createPdfDocument(final HtmlSource html,
+                         final PdfRenderAssets assets,
+                         final OutputStream outputStream)
+      throws PdfaGeneratorException {
 
-      final PdfBoxRenderer pdfBoxRenderer = pdfBuilder.buildPdfRenderer();
-      populateFontResolver(pdfBoxRenderer.getFontResolver(), fontMap);
-      pdfBoxRenderer.createPDF();
+    createPdfDocument(html, assets, outputStream, new PdfRenderMetrics(
+        assets.getConformanceLevel()), RenderBudget.start(assets.getLimits()));
+  }
 
-      final byte[] pdf = outputStream.toByteArray();
+  /**
+   * Writes the pdf the result cache holds for the html to the stream, rendering and caching
+   * it first if it holds none. The html is read once, as it is parsed within the limits of
+   * the render, and keyed as it is read. A pdf served from the cache is reported to the
+   * listener with its input length and output size only, its time after parsing counted
+   * as serialising.
+   */
+  void createPdfDocument(final HtmlSource html,
+                         final PdfRenderAssets assets,
+                         final PdfResultCache resultCache,
+                         final OutputStream outputStream)
+      throws PdfaGeneratorException {
 
-      LOGGER.info("successfully generated pdf");
+    final PdfRenderMetrics metrics = new PdfRenderMetrics(assets.getConformanceLevel());
+    final RenderBudget budget = RenderBudget.start(assets.getLimits());
+    final DeterministicOutput.Key htmlKey = assets.getDeterministicOutput().newKey();
+    final Document document;
+    try {
+      document = parse(html, assets, metrics, budget, htmlKey);
+
+    } catch (PdfaGeneratorException e) {
+      throw failed(metrics, e);
+    }
+
+    final String key = htmlKey.value();
+    byte[] pdf = resultCache.get(key);
+    final boolean cached = pdf != null;
+    if (!cached) {
+      try (PooledBuffer rendered = PdfBufferPool.shared().acquire()) {
+        render(document, assets, rendered, metrics, budget);
+        pdf = rendered.toByteArray();
+      }
+      resultCache.put(key, pdf);
+    }
+
+    try {
+      outputStream.write(pdf);
+      outputStream.flush();
+    } catch (IOException e) {
+      throw failed(metrics, failure(e));
+    }
+    if (cached) {
+      metrics.record(PdfRenderPhase.SERIALISE);
+      metrics.setOutputSize(pdf.length);
+      rendered(metrics);
+    }
+  }
+
+  /**
+   * Writes a pdf rendered from an already parsed and font checked document to the stream.
+   */
+  void createPdfDocument(final Document document,
+                         final PdfRenderAssets assets,
+                         final OutputStream outputStream)
+      throws PdfaGeneratorException {
+
+    render(document, assets, outputStream, new PdfRenderMetrics(assets.getConformanceLevel()),
+        RenderBudget.start(assets.getLimits()));
+  }
+
+  /**
+   * Returns the document parsed from the html input, checking its fonts
+   * against the font map unless the conformance level is NONE.
+   */
+  Document parse(final HtmlSource html, final PdfRenderAssets assets)
+      throws PdfaGeneratorException {
+    return parse(html, assets, new PdfRenderMetrics(assets.getConformanceLevel()),
+        RenderBudget.start(assets.getLimits()), null);
+  }
+
+  private void createPdfDocument(final HtmlSource html,
+                                 final PdfRenderAssets assets,
+                                 final OutputStream outputStream,
+                                 final PdfRenderMetrics metrics,
+                                 final RenderBudget budget)
+      throws PdfaGeneratorException {
+
+    final Document document;
+    try {
+      document = parse(html, assets, metrics, budget, null);
+
+    } catch (PdfaGeneratorException e) {
+      throw failed(metrics, e);
+    }
+    render(document, assets, outputStream, metrics, budget);
+  }
+
+  private Document parse(final HtmlSource html, final PdfRenderAssets assets,
+                         final PdfRenderMetrics metrics, final RenderBudget budget,
+                         final DeterministicOutput.Key key)
+      throws PdfaGeneratorException {
+
+    // keyed, if it is to be, beneath the count so that skipped characters are keyed too
+    try (CountingReader reader = new CountingReader(
+        key == null ? html.openReader() : new KeyingReader(html.openReader(), key), budget)) {
+      final Document document;
+      if (assets.getConformanceLevel() == PdfConformanceLevel.NONE) {
+        document = parse(reader, assets);
 
-      return pdf;
+      } else {
+        LOGGER.debug("validate that all fonts in the document are contained in the font map");
+
+        final FontVerifyingReader verifyingReader =
+            new FontVerifyingReader(reader, assets.getFontFamilies());
+        document = parse(verifyingReader, assets);
+        verifyingReader.verify();
+      }
+
+      metrics.setInputLength(reader.getCount());
+      metrics.record(PdfRenderPhase.PARSE);
+      return document;
+
+    } catch (PdfValidationException e) {
+      LOGGER.warn("html rejected before rendering: {}", e.getMessage());
+      throw e;
 
     } catch (Exception e) {
-      LOGGER.error(e.getMessage());
-      LOGGER.debug(e.getClass().getName(), e);
-      throw new PdfaGeneratorException(e.getMessage(), e);
+      throw failure(e, budget);
     }
   }
 
-  private Predicate<String> fontNotIn(final Set<String> fonts) {
-    return line -> fonts.stream().noneMatch(font -> line.contains(font));
+  private static Document parse(final Reader reader, final PdfRenderAssets assets)
+      throws PdfValidationException {
+    return assets.isPreflight() ? XhtmlParser.parse(reader, assets) : XhtmlParser.parse(reader);
   }
 
-  private boolean lineContainsFont(final String line) {
-    return line.contains("font-family");
+  private void render(final Document document,
+                      final PdfRenderAssets assets,
+                      final OutputStream outputStream,
+                      final PdfRenderMetrics metrics,
+                      final RenderBudget budget)
+      throws PdfaGeneratorException {
+
+    final PdfConformanceVerifier.Sample sample = sample(assets);
+    // closed whatever happens, which deletes any temporary file the document spilled to
+    try (PDDocument pdfDocument = assets.newDocument()) {
+      final NonClosingOutputStream pdfStream = new NonClosingOutputStream(
+          buffered(tee(Objects.requireNonNull(outputStream), sample)));
+      final InlineImages inlineImages = InlineImages.extract(document, imageCache, budget);
+      final PdfRendererBuilder pdfBuilder = pdfBuilder(document, assets, budget)
+          .usePDDocument(pdfDocument)
+          .toStream(pdfStream);
+
+      final PdfBoxRenderer pdfBoxRenderer = pdfBuilder.buildPdfRenderer();
+      metrics.record(PdfRenderPhase.BUILD_RENDERER);
+
+      populateFontResolver(pdfBoxRenderer, assets, new HashMap<>());
+      metrics.record(PdfRenderPhase.REGISTER_FONTS);
+
+      pdfBoxRenderer.setListener(new PhaseListener(metrics, assets, budget));
+      budget.imposeOn(pdfBoxRenderer);
+      inlineImages.imposeOn(pdfBoxRenderer);
+      pdfBoxRenderer.createPDF();
+      metrics.record(PdfRenderPhase.SERIALISE);
+      metrics.setOutputSize(pdfStream.getCount());
+
+      LOGGER.info("successfully generated pdf");
+
+    } catch (Exception e) {
+      throw failed(metrics, failure(e, budget));
+    }
+    if (sample != null) {
+      sample.submit();
+    }
+
+    rendered(metrics);
   }
 
-  private void verifyFontApplication(final Map<String, byte[]> fontMap,
-                                     final String html,
-                                     final PdfConformanceLevel conformanceLevel)
+  /**
+   * Writes a single pdf rendered from each html input in turn to the stream, each starting
+   * on a new page. Every font and identical image is embedded once, as is the colour profile.
+   * Tagged conformance levels are refused, openhtmltopdf builds the structure tree of
+   * a single document only.
+   */
+  void createCombinedPdfDocument(final Iterable<HtmlSource> htmls,
+                                 final PdfRenderAssets assets,
+                                 final OutputStream outputStream)
       throws PdfaGeneratorException {
 
-    if (html != null && conformanceLevel != PdfConformanceLevel.NONE) {
-      LOGGER.debug("validate that all fonts in the document are contained in the font map");
-
-      final Optional<String> missingFontLine = Arrays.stream(html.split("\n"))
-          .filter(this::lineContainsFont)
-          .map(String::trim)
-          .filter(fontNotIn(fontMap.keySet()))
-          .findFirst();
-
-      if (missingFontLine.isPresent()) {
-        throw new PdfaGeneratorException(
-            String.format("html element requests %s. "
-                    + "It is not passed in the font map, cannot encode.",
-                missingFontLine.get().replaceAll(";", "").trim()
-            )
-        );
+    if (assets.getConformanceLevel().isTagged()) {
+      final String message = String.format("conformance level %s gives each document its own "
+          + "structure tree, tagged documents cannot be combined", assets.getConformanceLevel());
+      LOGGER.error(message);
+      throw new PdfaGeneratorException(message);
+    }
+
+    final PdfRenderMetrics metrics = new PdfRenderMetrics(assets.getConformanceLevel());
+    final RenderBudget budget = RenderBudget.start(assets.getLimits());
+    final PdfConformanceVerifier.Sample sample = sample(assets);
+    final Map<String, PDFontSupplier> loadedFonts = new HashMap<>();
+    long inputLength = 0;
+
+    try (PDDocument combined = assets.newDocument()) {
+      for (final HtmlSource html : htmls) {
+        final Document document = parse(html, assets, metrics, budget, null);
+        inputLength += metrics.getInputLength();
+        final InlineImages inlineImages = InlineImages.extract(document, imageCache, budget);
+
+        final PdfRendererBuilder pdfBuilder = pdfBuilder(document, assets, budget)
+            .usePDDocument(combined);
+        if (combined.getNumberOfPages() > 0) {
+          // the first document adds the colour profile as the output intent
+          pdfBuilder.useColorProfile(null);
+        }
+
+        final PdfBoxRenderer pdfBoxRenderer = pdfBuilder.buildPdfRenderer();
+        metrics.record(PdfRenderPhase.BUILD_RENDERER);
+
+        populateFontResolver(pdfBoxRenderer, assets, loadedFonts);
+        metrics.record(PdfRenderPhase.REGISTER_FONTS);
+
+        pdfBoxRenderer.setListener(new PhaseListener(metrics, null, budget));
+        budget.imposeOn(pdfBoxRenderer);
+        inlineImages.imposeOn(pdfBoxRenderer);
+        pdfBoxRenderer.createPDFWithoutClosing();
+        metrics.record(PdfRenderPhase.PAINT);
+      }
+      metrics.setInputLength(inputLength);
+
+      if (combined.getNumberOfPages() == 0) {
+        throw new IllegalArgumentException("Combined pdf must have at least one html document");
+      }
+      budget.checkDeadline();
+      metrics.setPageCount(combined.getNumberOfPages());
+      if (assets.getOptimisation() != null) {
+        // the optimiser shares the identical images itself
+        metrics.setBytesSaved(OutputOptimiser.optimise(combined, assets.getOptimisation()));
+        metrics.record(PdfRenderPhase.OPTIMISE);
+      } else {
+        LOGGER.debug("shared {} duplicate images", SharedImages.deduplicate(combined));
       }
+      if (assets.getDeterministicOutput() != null) {
+        assets.getDeterministicOutput().pin(combined);
+      }
+
+      final NonClosingOutputStream pdfStream = new NonClosingOutputStream(
+          buffered(tee(Objects.requireNonNull(outputStream), sample)));
+      combined.save(pdfStream);
+      pdfStream.close();
+      metrics.record(PdfRenderPhase.SERIALISE);
+      metrics.setOutputSize(pdfStream.getCount());
+
+      LOGGER.info("successfully generated combined pdf of {} pages", metrics.getPageCount());
+
+    } catch (PdfaGeneratorException e) {
+      throw failed(metrics, e);
+
+    } catch (Exception e) {
+      throw failed(metrics, failure(e, budget));
+    }
+    if (sample != null) {
+      sample.submit();
+    }
+
+    rendered(metrics);
+  }
+
+  private PdfRendererBuilder pdfBuilder(final Document document, final PdfRenderAssets assets,
+                                        final RenderBudget budget) {
+    final PdfRendererBuilder pdfBuilder = new PdfRendererBuilder()
+        .defaultTextDirection(PdfRendererBuilder.TextDirection.LTR)
+        .useColorProfile(assets.getColourProfile())
+        .useSVGDrawer(new BatikSVGDrawer())
+        .withW3cDocument(document, assets.getResourceBundle() == null
+            ? null : assets.getResourceBundle().getBaseUri())
+        .useFastMode();
+
+    assets.getConformanceLevel().imposeOn(pdfBuilder);
+    if (assets.getResourceBundle() != null) {
+      assets.getResourceBundle().imposeOn(pdfBuilder, budget);
     }
+    budget.imposeOn(pdfBuilder);
+    return pdfBuilder;
+  }
+
+  /**
+   * Returns the stream buffered, unless it already writes to memory.
+   */
+  static OutputStream buffered(final OutputStream outputStream) {
+    return outputStream instanceof InMemoryOutput
+        ? outputStream : new BufferedOutputStream(outputStream);
+  }
+
+  private static PdfConformanceVerifier.Sample sample(final PdfRenderAssets assets) {
+    return assets.getVerifier() == null
+        ? null : assets.getVerifier().sample(assets.getConformanceLevel());
+  }
+
+  private static OutputStream tee(final OutputStream outputStream,
+                                  final PdfConformanceVerifier.Sample sample) {
+    // a sampled document is copied as it is written, only ever by the render thread
+    return sample == null ? outputStream : sample.tee(outputStream);
+  }
+
+  private void rendered(final PdfRenderMetrics metrics) {
+    try {
+      listener.onRendered(metrics);
+    } catch (RuntimeException e) {
+      LOGGER.warn("render listener failed: {}", e.getMessage());
+    }
+  }
+
+  private PdfaGeneratorException failed(final PdfRenderMetrics metrics,
+                                        final PdfaGeneratorException failure) {
+    try {
+      listener.onFailed(metrics, failure);
+    } catch (RuntimeException e) {
+      LOGGER.warn("render listener failed: {}", e.getMessage());
+    }
+    return failure;
+  }
+
+  private PdfaGeneratorException failure(final Exception exception, final RenderBudget budget) {
+    // whatever openhtmltopdf made of the breach, the breach is what stopped the render
+    if (budget.breach() != null) {
+      LOGGER.warn("render stopped: {}", budget.breach().getMessage());
+      return budget.breach();
+    }
+    return failure(exception);
+  }
+
+  private PdfaGeneratorException failure(final Exception exception) {
+    LOGGER.error(exception.getMessage());
+    LOGGER.debug(exception.getClass().getName(), exception);
+    return new PdfaGeneratorException(exception.getMessage(), exception);
   }
 
   @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-  private void populateFontResolver(final PdfBoxFontResolver fontResolver,
-                                    final Map<String, byte[]> fontMap) {
-    for (final Map.Entry<String, byte[]> entry : fontMap.entrySet()) {
-      fontResolver
-          .addFont(
-              () ->
-                  new ByteArrayInputStream(entry.getValue()), entry.getKey(), null, null, false);
+  private void populateFontResolver(final PdfBoxRenderer pdfBoxRenderer,
+                                    final PdfRenderAssets assets,
+                                    final Map<String, PDFontSupplier> loadedFonts) {
+    final PdfBoxFontResolver fontResolver = pdfBoxRenderer.getFontResolver();
+    final PDDocument document = pdfBoxRenderer.getPdfDocument();
+
+    for (final Map.Entry<String, TrueTypeFont> entry : assets.getFonts().entrySet()) {
+      final PDFontSupplier font = loadedFonts.computeIfAbsent(entry.getKey(),
+          family -> new LazyFontSupplier(document, entry.getValue(), assets.isSubsetFonts()));
+      // the resolver loads fonts it is not told are subset at once, whether a document uses
+      // them or not; the supplier decides whether the font is actually subset
+      fontResolver.addFont(font, entry.getKey(), null, null, true);
       LOGGER.debug("adding font '{}' to font map", entry.getKey());
     }
   }
+
+  /**
+   * Loads a parsed font into the document the first time the font resolver asks for it,
+   * so fonts in the font map a document never uses are not embedded.
+   */
+  private static final class LazyFontSupplier extends PDFontSupplier {
+    private final PDDocument document;
+    private final TrueTypeFont font;
+    private final boolean subset;
+    private PDFont loaded;
+
+    LazyFontSupplier(final PDDocument document, final TrueTypeFont font, final boolean subset) {
+      super(null);
+      this.document = document;
+      this.font = font;
+      this.subset = subset;
+    }
+
+    @Override
+    public PDFont supply() {
+      if (loaded == null) {
+        try {
+          loaded = PDType0Font.load(document, font, subset);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      return loaded;
+    }
+  }
+
+  /**
+   * Splits the time openhtmltopdf spends creating the pdf into its layout, paint
+   * and serialise phases, and counts the pages once they are painted.
+   * Stops a document laid out to too many pages before it is painted, and one past its
+   * deadline before it is saved.
+   * Optimises the document, then pins its dates and ID, if asked to, once it is painted
+   * and before it is saved. Combined documents do both themselves, without assets.
+   */
+  private static final class PhaseListener implements PDFCreationListener {
+    private final PdfRenderMetrics metrics;
+    private final PdfRenderAssets assets;
+    private final RenderBudget budget;
+
+    PhaseListener(final PdfRenderMetrics metrics, final PdfRenderAssets assets,
+                  final RenderBudget budget) {
+      this.metrics = metrics;
+      this.assets = assets;
+      this.budget = budget;
+    }
+
+    @Override
+    public void preOpen(final PdfBoxRenderer renderer) {
+      metrics.record(PdfRenderPhase.LAYOUT);
+      // checked again once laid out, as blank pages at the end are trimmed only then
+      budget.checkPages(renderer.getPdfDocument().getNumberOfPages()
+          + renderer.getRootBox().getLayer().getPages().size());
+    }
+
+    @Override
+    public void preWrite(final PdfBoxRenderer renderer, final int pageCount) {
+      // not called in fast mode
+    }
+
+    @Override
+    public void onClose(final PdfBoxRenderer renderer) {
+      metrics.record(PdfRenderPhase.PAINT);
+      metrics.setPageCount(renderer.getPdfDocument().getNumberOfPages());
+      budget.checkDeadline();
+      if (assets == null) {
+        return;
+      }
+      try {
+        if (assets.getOptimisation() != null) {
+          metrics.setBytesSaved(
+              OutputOptimiser.optimise(renderer.getPdfDocument(), assets.getOptimisation()));
+          metrics.record(PdfRenderPhase.OPTIMISE);
+        }
+        if (assets.getDeterministicOutput() != null) {
+          assets.getDeterministicOutput().pin(renderer.getPdfDocument());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
 }
@@ -1,5 +1,9 @@
 package uk.gov.dwp.pdf.generator;
 
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.util.Map;
+
 /**
  * Factory class for HtmlToPdfGenerator.
  */
@@ -17,5 +21,100 @@ public final class HtmlToPdfFactory {
   public static HtmlToPdfGenerator create() {
     return new HtmlToAccessiblePdfGenerator();
   }
-}
 
+  /**
+   * Returns an instance of the HtmlToPdfGenerator telling the listener
+   * the measurements of each render.
+   *
+   * @param renderListener the render listener
+   * @return
+   */
+  public static HtmlToPdfGenerator create(final PdfRenderListener renderListener) {
+    return new HtmlToAccessiblePdfGenerator(renderListener);
+  }
+
+  /**
+   * Returns a generator bound to a fixed colour profile, font map and conformance level.
+   * The colour profile and fonts are validated and parsed once, here, rather than on every call.
+   *
+   * @param colourProfile    The desired colour profile
+   * @param fontMap          The font map containing the mapping between
+   *                         the font family from the html and the actual font bytes
+   * @param conformanceLevel The pdf conformance level
+   * @return
+   */
+  public static PreparedHtmlToPdfGenerator create(final byte[] colourProfile,
+                                                  final Map<String, byte[]> fontMap,
+                                                  final PdfConformanceLevel conformanceLevel)
+      throws PdfaGeneratorException {
+    return builder()
+        .colourProfile(colourProfile)
+        .fontMap(fontMap)
+        .conformanceLevel(conformanceLevel)
+        .build();
+  }
+
+  /**
+   * Returns a builder for a generator bound to a fixed set of assets.
+   *
+   * @return
+   */
+  public static HtmlToPdfGeneratorBuilder builder() {
+    return new HtmlToPdfGeneratorBuilder();
+  }
+
+  /**
+   * Renders a representative document once at each conformance level, so the first real
+   * request does not pay for class loading and initialisation. The fonts are parsed into
+   * the shared font cache, so generators built later with the same fonts reuse them.
+   * Intended to be called at startup, before reporting ready.
+   *
+   * @param colourProfile     The desired colour profile
+   * @param fontMap           The font map containing the mapping between
+   *                          the font family from the html and the actual font bytes
+   * @param conformanceLevels The pdf conformance levels to warm up
+   * @return
+   */
+  public static PdfWarmUpReport warmUp(final byte[] colourProfile,
+                                       final Map<String, byte[]> fontMap,
+                                       final PdfConformanceLevel... conformanceLevels)
+      throws PdfaGeneratorException {
+    return warmUp(colourProfile, fontMap, 1, conformanceLevels);
+  }
+
+  /**
+   * Renders a representative document a number of times at each conformance level,
+   * warming the JIT compiler as well as loading and initialising classes.
+   *
+   * @param colourProfile     The desired colour profile
+   * @param fontMap           The font map containing the mapping between
+   *                          the font family from the html and the actual font bytes
+   * @param rounds            The number of documents rendered at each level
+   * @param conformanceLevels The pdf conformance levels to warm up
+   * @return
+   */
+  public static PdfWarmUpReport warmUp(final byte[] colourProfile,
+                                       final Map<String, byte[]> fontMap,
+                                       final int rounds,
+                                       final PdfConformanceLevel... conformanceLevels)
+      throws PdfaGeneratorException {
+    return WarmUp.run(colourProfile, fontMap, rounds, conformanceLevels);
+  }
+
+  /**
+   * Renders a representative document a number of times through the generator itself,
+   * so a service warms up the generator it serves with, built with its own options and
+   * limits, rather than one prepared for the warm-up.
+   *
+   * @param generator The generator to warm up
+   * @param fontMap   The font map the generator was built with, whose fonts the document uses
+   * @param rounds    The number of documents rendered
+   * @return
+   */
+  public static PdfWarmUpReport warmUp(final PreparedHtmlToPdfGenerator generator,
+                                       final Map<String, byte[]> fontMap,
+                                       final int rounds)
+      throws PdfaGeneratorException {
+    return WarmUp.run(generator, fontMap, rounds);
+  }
+}
@@ -2,6 +2,10 @@ package uk.gov.dwp.pdf.generator;
 
 import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 
 /**
@@ -25,4 +29,113 @@ public interface HtmlToPdfGenerator {
                            byte[] colourProfile,
                            Map<String, byte[]> fontMap,
                            PdfConformanceLevel conformanceLevel) throws PdfaGeneratorException;
+
+  /**
+   * Returns an accessible pdf from an html source, such as a reader, stream or file.
+   * The source is read once, as the document is parsed.
+   *
+   * @param html             - The input html
+   * @param colourProfile    The desired colour profile
+   * @param fontMap          The font map containing the mapping between
+   *                         the font family from the html and the actual font bytes
+   * @param conformanceLevel The pdf conformance level
+   * @return
+   */
+  default byte[] createPdfDocument(HtmlSource html,
+                                   byte[] colourProfile,
+                                   Map<String, byte[]> fontMap,
+                                   PdfConformanceLevel conformanceLevel)
+      throws PdfaGeneratorException {
+    try (PooledBuffer outputStream = PdfBufferPool.shared().acquire()) {
+      createPdfDocument(html, colourProfile, fontMap, conformanceLevel, outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+
+  /**
+   * Writes an accessible pdf from an html input to the output stream.
+   * The pdf is written directly to the stream without being held in memory first,
+   * the stream is flushed but not closed.
+   * Should rendering fail part way through writing the stream may hold an incomplete pdf.
+   *
+   * @param html             - The input html
+   * @param colourProfile    The desired colour profile
+   * @param fontMap          The font map containing the mapping between
+   *                         the font family from the html and the actual font bytes
+   * @param conformanceLevel The pdf conformance level
+   * @param outputStream     The stream the pdf is written to
+   */
+  default void createPdfDocument(String html,
+                                 byte[] colourProfile,
+                                 Map<String, byte[]> fontMap,
+                                 PdfConformanceLevel conformanceLevel,
+                                 OutputStream outputStream) throws PdfaGeneratorException {
+    createPdfDocument(HtmlSource.of(html), colourProfile, fontMap, conformanceLevel, outputStream);
+  }
+
+  /**
+   * Writes an accessible pdf from an html source to the output stream.
+   * The stream is flushed but not closed.
+   * By default the source is read in full and rendered by the html input method,
+   * implementations able to stream should override it.
+   *
+   * @param html             - The input html
+   * @param colourProfile    The desired colour profile
+   * @param fontMap          The font map containing the mapping between
+   *                         the font family from the html and the actual font bytes
+   * @param conformanceLevel The pdf conformance level
+   * @param outputStream     The stream the pdf is written to
+   */
+  default void createPdfDocument(HtmlSource html,
+                                 byte[] colourProfile,
+                                 Map<String, byte[]> fontMap,
+                                 PdfConformanceLevel conformanceLevel,
+                                 OutputStream outputStream) throws PdfaGeneratorException {
+    try {
+      outputStream.write(
+          createPdfDocument(html.readFully(), colourProfile, fontMap, conformanceLevel));
+      outputStream.flush();
+    } catch (IOException e) {
+      throw new PdfaGeneratorException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Writes an accessible pdf from an html input to the channel.
+   * The channel is not closed.
+   *
+   * @param html             - The input html
+   * @param colourProfile    The desired colour profile
+   * @param fontMap          The font map containing the mapping between
+   *                         the font family from the html and the actual font bytes
+   * @param conformanceLevel The pdf conformance level
+   * @param channel          The channel the pdf is written to
+   */
+  default void createPdfDocument(String html,
+                                 byte[] colourProfile,
+                                 Map<String, byte[]> fontMap,
+                                 PdfConformanceLevel conformanceLevel,
+                                 WritableByteChannel channel) throws PdfaGeneratorException {
+    createPdfDocument(HtmlSource.of(html), colourProfile, fontMap, conformanceLevel, channel);
+  }
+
+  /**
+   * Writes an accessible pdf from an html source to the channel.
+   * The channel is not closed.
+   *
+   * @param html             - The input html
+   * @param colourProfile    The desired colour profile
+   * @param fontMap          The font map containing the mapping between
+   *                         the font family from the html and the actual font bytes
+   * @param conformanceLevel The pdf conformance level
+   * @param channel          The channel the pdf is written to
+   */
+  default void createPdfDocument(HtmlSource html,
+                                 byte[] colourProfile,
+                                 Map<String, byte[]> fontMap,
+                                 PdfConformanceLevel conformanceLevel,
+                                 WritableByteChannel channel) throws PdfaGeneratorException {
+    createPdfDocument(html, colourProfile, fontMap, conformanceLevel,
+        Channels.newOutputStream(channel));
+  }
 }
@@ -0,0 +1,265 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.awt.color.ICC_Profile;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Builder for a PreparedHtmlToPdfGenerator.
+ * The colour profile and fonts are validated and parsed once by {@link #build()}
+ * rather than on every call to createPdfDocument.
+ */
+@SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+public final class HtmlToPdfGeneratorBuilder {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(
+      HtmlToPdfGeneratorBuilder.class.getName());
+
+  private byte[] colourProfile;
+  private Map<String, byte[]> fontMap;
+  private PdfConformanceLevel conformanceLevel;
+  private PdfResourceBundle resourceBundle;
+  private PdfRenderListener renderListener = PdfRenderListener.NONE;
+  private Boolean subsetFonts;
+  private PdfMemoryBudget memoryBudget;
+  private Instant documentDate;
+  private PdfResultCache resultCache;
+  private boolean preflight;
+  private PdfOptimisation optimisation;
+  private PdfRenderLimits limits;
+  private PdfConformanceVerifier verifier;
+
+  HtmlToPdfGeneratorBuilder() {
+  }
+
+  /**
+   * Sets the colour profile embedded in every document.
+   * It is checked to be a valid ICC profile when the generator is built.
+   *
+   * @param colourProfile the desired colour profile
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder colourProfile(final byte[] colourProfile) {
+    this.colourProfile = colourProfile;
+    return this;
+  }
+
+  /**
+   * Sets the fonts available to every document.
+   *
+   * @param fontMap the font map containing the mapping between
+   *                the font family from the html and the actual font bytes
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder fontMap(final Map<String, byte[]> fontMap) {
+    this.fontMap = fontMap;
+    return this;
+  }
+
+  /**
+   * Sets the conformance level every document is rendered to.
+   *
+   * @param conformanceLevel the pdf conformance level
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder conformanceLevel(final PdfConformanceLevel conformanceLevel) {
+    this.conformanceLevel = conformanceLevel;
+    return this;
+  }
+
+  /**
+   * Sets the bundle of stylesheets and images relative references in the html are resolved
+   * against, in place of fetching them by URL on every render.
+   *
+   * @param resourceBundle the resource bundle
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder resourceBundle(final PdfResourceBundle resourceBundle) {
+    this.resourceBundle = resourceBundle;
+    return this;
+  }
+
+  /**
+   * Sets whether only the glyphs each document uses are embedded rather than whole fonts.
+   * By default fonts are subset, which every conformance level allows.
+   *
+   * @param subsetFonts true to subset the fonts, false to embed them whole
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder subsetFonts(final boolean subsetFonts) {
+    this.subsetFonts = subsetFonts;
+    return this;
+  }
+
+  /**
+   * Sets the memory each document may use before PDFBox spills its pages, fonts and images
+   * to a temporary file, for documents too large to hold on the heap.
+   * By default documents are held in memory.
+   *
+   * @param memoryBudget the memory budget, or null to hold documents in memory
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder memoryBudget(final PdfMemoryBudget memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    return this;
+  }
+
+  /**
+   * Pins the creation and modification dates of every document to the given instant
+   * and derives the document ID from its content, so identical inputs always give
+   * byte-identical pdfs. By default each document is dated when it is rendered
+   * and given a random ID.
+   *
+   * @param documentDate the date every document is given
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder deterministic(final Instant documentDate) {
+    this.documentDate = Objects.requireNonNull(documentDate, "Document date must not be null");
+    return this;
+  }
+
+  /**
+   * Sets the cache rendered pdfs are served from when the same html is rendered again.
+   * The output must be deterministic, see {@link #deterministic(Instant)}.
+   * The html of each document is read in full before it is rendered, to find its key.
+   *
+   * @param resultCache the result cache, or null to render every document
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder resultCache(final PdfResultCache resultCache) {
+    this.resultCache = resultCache;
+    return this;
+  }
+
+  /**
+   * Sets whether the html of each document is checked as it is parsed, before anything is
+   * rendered. Input that is not well formed, references a stylesheet or image by a relative url
+   * without a resource bundle, or has images that are not pixelated above conformance level
+   * NONE, is rejected with a {@link uk.gov.dwp.pdf.exception.PdfValidationException} giving
+   * the line and column of the problem. By default only the fonts are checked.
+   *
+   * @param preflight true to check the html before rendering
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder preflight(final boolean preflight) {
+    this.preflight = preflight;
+    return this;
+  }
+
+  /**
+   * Sets how each document is made smaller once it is painted and before it is written,
+   * keeping its conformance level. The bytes saved and time taken are reported to the
+   * render listener. By default documents are written as painted.
+   *
+   * @param optimisation the optimisation, or null to write documents as painted
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder optimise(final PdfOptimisation optimisation) {
+    this.optimisation = optimisation;
+    return this;
+  }
+
+  /**
+   * Sets the most each render may take, so a pathological document is stopped with a
+   * {@link uk.gov.dwp.pdf.exception.PdfRenderLimitException} rather than holding a render
+   * thread or the heap. By default renders are not limited.
+   *
+   * @param limits the limits, or null for none
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder limits(final PdfRenderLimits limits) {
+    this.limits = limits;
+    return this;
+  }
+
+  /**
+   * Sets the verifier validating a sample of the documents rendered against the conformance
+   * level, off the render thread. The verifier can be shared between generators and is closed
+   * by the caller. By default documents are not verified.
+   *
+   * @param verifier the conformance verifier, or null for none
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder verifier(final PdfConformanceVerifier verifier) {
+    this.verifier = verifier;
+    return this;
+  }
+
+  /**
+   * Sets the listener told the per phase timings, sizes and page count of each render.
+   *
+   * @param renderListener the render listener
+   * @return this builder
+   */
+  public HtmlToPdfGeneratorBuilder renderListener(final PdfRenderListener renderListener) {
+    this.renderListener = Objects.requireNonNull(renderListener,
+        "Render listener must not be null");
+    return this;
+  }
+
+  /**
+   * Validates the colour profile, parses the fonts and returns an immutable generator.
+   *
+   * @return the prepared generator
+   * @throws PdfaGeneratorException if the colour profile or any of the fonts are invalid,
+   *                                a bundled stylesheet requests a font not in the font map,
+   *                                or there is a result cache without deterministic output
+   */
+  @SuppressWarnings("PMD.AvoidCatchingGenericException")
+  public PreparedHtmlToPdfGenerator build() throws PdfaGeneratorException {
+    try {
+      final byte[] profile = colourProfile == null ? null : colourProfile.clone();
+      if (profile != null) {
+        ICC_Profile.getInstance(profile);
+      }
+
+      final Map<String, byte[]> fonts = new HashMap<>(
+          Objects.requireNonNull(fontMap, "Font map must not be null"));
+
+      PdfRenderAssets assets = PdfRenderAssets.prepare(
+          profile, fonts, conformanceLevel, FontCache.shared());
+      if (resourceBundle != null) {
+        assets = assets.withResourceBundle(resourceBundle);
+      }
+      if (subsetFonts != null) {
+        assets = assets.withSubsetFonts(subsetFonts);
+      }
+      if (memoryBudget != null) {
+        assets = assets.withMemoryBudget(memoryBudget);
+      }
+      if (preflight) {
+        assets = assets.withPreflight(true);
+      }
+      if (optimisation != null) {
+        assets = assets.withOptimisation(optimisation);
+      }
+      if (limits != null) {
+        assets = assets.withLimits(limits);
+      }
+      if (verifier != null) {
+        assets = assets.withVerifier(verifier);
+      }
+      if (documentDate != null) {
+        assets = assets.withDeterministicOutput(
+            DeterministicOutput.of(documentDate, profile, fonts, assets));
+      }
+
+      LOGGER.debug("prepared generator for conformance level {} with fonts {}",
+          assets.getConformanceLevel(), assets.getFontFamilies());
+
+      return new PreparedAccessiblePdfGenerator(
+          new HtmlToAccessiblePdfGenerator(renderListener), assets, resultCache);
+
+    } catch (Exception e) {
+      LOGGER.error(e.getMessage());
+      LOGGER.debug(e.getClass().getName(), e);
+      throw new PdfaGeneratorException(e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of images embedded in html as base64 data URIs, each decoded and encoded
+ * as a pdf image once however many documents embed it.
+ * Entries are keyed by the length of the base64 payload and a hash of its characters, taken
+ * in place without copying the payload, so identical images are shared whichever document
+ * they came from. Each entry holds the image as it is embedded in a pdf, and is weighed
+ * by the memory that takes.
+ * The least recently used entries are evicted once the maximum weight is reached.
+ * The weight of the shared instance can be set with the system property
+ * {@value #MAXIMUM_BYTES_PROPERTY}.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class ImageCache {
+
+  /**
+   * System property holding the maximum number of bytes held by the shared cache.
+   */
+  public static final String MAXIMUM_BYTES_PROPERTY = "uk.gov.dwp.pdf.imageCacheBytes";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImageCache.class.getName());
+  private static final long DEFAULT_MAXIMUM_BYTES = 32L * 1024 * 1024;
+  private static final String BASE64_MARKER = ";base64,";
+  private static final ImageCache SHARED =
+      new ImageCache(Long.getLong(MAXIMUM_BYTES_PROPERTY, DEFAULT_MAXIMUM_BYTES));
+
+  private final long maximumBytes;
+  private final Map<Key, EncodedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private long bytes;
+
+  /**
+   * Constructor.
+   *
+   * @param maximumBytes the maximum memory, in bytes, held by cached images
+   */
+  ImageCache(final long maximumBytes) {
+    if (maximumBytes < 1) {
+      throw new IllegalArgumentException("Image cache size must be at least 1 byte");
+    }
+    this.maximumBytes = maximumBytes;
+  }
+
+  /**
+   * Returns the cache shared by every generator in this process.
+   *
+   * @return the shared image cache
+   */
+  public static ImageCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns the encoded image of a base64 data URI, decoding and encoding it on first use,
+   * having checked its size against the limit of the render.
+   * Returns null if the URI is not a base64 data URI or its image cannot be read,
+   * so the renderer can report it as it would otherwise.
+   */
+  EncodedImage encode(final String dataUri, final RenderBudget budget) {
+    final int marker = dataUri.indexOf(BASE64_MARKER);
+    if (!dataUri.startsWith("data:") || marker < 0) {
+      return null;
+    }
+
+    final int start = marker + BASE64_MARKER.length();
+    final Key key = new Key(dataUri, start);
+    EncodedImage image;
+    synchronized (images) {
+      image = images.get(key);
+    }
+    if (image != null) {
+      hits.incrementAndGet();
+      budget.checkImage(image.getWidth(), image.getHeight());
+      return image;
+    }
+
+    try {
+      final byte[] decoded = Base64.getMimeDecoder().decode(dataUri.substring(start));
+      image = decoded.length == 0 ? null : EncodedImage.encode(decoded, budget);
+    } catch (IllegalArgumentException | IOException e) {
+      LOGGER.debug("cannot decode embedded image: {}", e.getMessage());
+      return null;
+    }
+    if (image == null) {
+      return null;
+    }
+    misses.incrementAndGet();
+
+    if (image.getBytes() <= maximumBytes) {
+      synchronized (images) {
+        final EncodedImage replaced = images.put(key, image);
+        bytes += image.getBytes() - (replaced == null ? 0 : replaced.getBytes());
+        evictToSize();
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Returns the number of images currently held.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    synchronized (images) {
+      return images.size();
+    }
+  }
+
+  /**
+   * Returns the memory, in bytes, held by the cached images.
+   *
+   * @return the cached bytes
+   */
+  public long bytes() {
+    synchronized (images) {
+      return bytes;
+    }
+  }
+
+  /**
+   * Returns the number of lookups served from the cache.
+   *
+   * @return the hit count
+   */
+  public long hitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that required the image to be decoded.
+   *
+   * @return the miss count
+   */
+  public long missCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of images evicted to keep the cache within its maximum size.
+   *
+   * @return the eviction count
+   */
+  public long evictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Removes every entry from the cache.
+   */
+  public void clear() {
+    synchronized (images) {
+      images.clear();
+      bytes = 0;
+    }
+  }
+
+  private void evictToSize() {
+    final Iterator<EncodedImage> eldest = images.values().iterator();
+    while (bytes > maximumBytes && eldest.hasNext()) {
+      bytes -= eldest.next().getBytes();
+      eldest.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /**
+   * The length of a base64 payload and two independent hashes of its characters, read from
+   * the data URI where it stands.
+   */
+  private static final class Key {
+    private final int length;
+    private final long first;
+    private final long second;
+
+    Key(final String dataUri, final int start) {
+      long firstHash = 0xcbf29ce484222325L;
+      long secondHash = dataUri.length() - start;
+      for (int i = start; i < dataUri.length(); i++) {
+        final char value = dataUri.charAt(i);
+        firstHash = (firstHash ^ value) * 0x100000001b3L;
+        secondHash = Long.rotateLeft(secondHash ^ value, 5) * 0x9e3779b97f4a7c15L;
+      }
+      this.length = dataUri.length() - start;
+      this.first = firstHash;
+      this.second = secondHash;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key) other;
+      return length == key.length && first == key.first && second == key.second;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(first ^ second);
+    }
+  }
+}
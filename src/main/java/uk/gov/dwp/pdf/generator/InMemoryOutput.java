@@ -0,0 +1,9 @@
+package uk.gov.dwp.pdf.generator;
+
+/**
+ * Marks an output stream that writes straight to memory, so that a render writes to it
+ * directly rather than through a {@link java.io.BufferedOutputStream}, which would only
+ * copy every byte one more time.
+ */
+interface InMemoryOutput {
+}
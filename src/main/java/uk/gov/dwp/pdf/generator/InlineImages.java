@@ -0,0 +1,203 @@
+package uk.gov.dwp.pdf.generator;
+
+import com.openhtmltopdf.extend.ReplacedElement;
+import com.openhtmltopdf.extend.ReplacedElementFactory;
+import com.openhtmltopdf.extend.UserAgentCallback;
+import com.openhtmltopdf.layout.LayoutContext;
+import com.openhtmltopdf.layout.SharedContext;
+import com.openhtmltopdf.pdfboxout.PdfBoxImage;
+import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
+import com.openhtmltopdf.render.BlockBox;
+import com.openhtmltopdf.resource.CSSResource;
+import com.openhtmltopdf.resource.ImageResource;
+import com.openhtmltopdf.resource.XMLResource;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The data URI images of a single document, encoded through the image cache.
+ * Each data URI is replaced with a short reference, which the renderer's image elements
+ * load back as an XObject copied into the document from the encoded image, so the renderer
+ * never decodes the base64, reads the image or compresses it again. An image drawn more
+ * than once is added to the document once.
+ * The encoded images are held for the whole render, so evictions from the cache
+ * cannot affect a document already being rendered.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class InlineImages {
+
+  static final String PROTOCOL = "pdf-inline-image";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(InlineImages.class.getName());
+
+  private final List<EncodedImage> images = new ArrayList<>();
+  private final Map<EncodedImage, String> references = new IdentityHashMap<>();
+
+  private InlineImages() {
+  }
+
+  /**
+   * Replaces the base64 data URI images of the document with references to their encoded
+   * images, checking each against the image limit of the render. Svg data URIs are left
+   * to the renderer.
+   */
+  static InlineImages extract(final Document document, final ImageCache imageCache,
+                              final RenderBudget budget) {
+    final InlineImages inlineImages = new InlineImages();
+    final NodeList elements = document.getElementsByTagName("img");
+    for (int i = 0; i < elements.getLength(); i++) {
+      final Element element = (Element) elements.item(i);
+      final String source = element.getAttribute("src");
+      if (source.startsWith("data:") && !source.startsWith("data:image/svg")) {
+        final EncodedImage image = imageCache.encode(source, budget);
+        if (image != null) {
+          element.setAttribute("src", inlineImages.referenceTo(image));
+        }
+      }
+    }
+    return inlineImages;
+  }
+
+  /**
+   * Loads the referenced images through the renderer's replaced element factory, if the
+   * document has any.
+   */
+  void imposeOn(final PdfBoxRenderer renderer) {
+    if (images.isEmpty()) {
+      return;
+    }
+    final SharedContext sharedContext = renderer.getSharedContext();
+    sharedContext.setReplacedElementFactory(new InlineImageElementFactory(
+        sharedContext.getReplacedElementFactory(), renderer.getPdfDocument()));
+  }
+
+  private String referenceTo(final EncodedImage image) {
+    return references.computeIfAbsent(image, added -> {
+      images.add(added);
+      return PROTOCOL + ":" + (images.size() - 1);
+    });
+  }
+
+  /**
+   * The renderer's replaced element factory, giving image elements referring to an encoded
+   * image an XObject of it belonging to the document.
+   */
+  private final class InlineImageElementFactory implements ReplacedElementFactory {
+    private final ReplacedElementFactory elementFactory;
+    private final PDDocument document;
+    private final PDImageXObject[] xobjects = new PDImageXObject[images.size()];
+
+    InlineImageElementFactory(final ReplacedElementFactory elementFactory,
+                              final PDDocument document) {
+      this.elementFactory = elementFactory;
+      this.document = document;
+    }
+
+    @Override
+    public ReplacedElement createReplacedElement(final LayoutContext context, final BlockBox box,
+                                                 final UserAgentCallback userAgent,
+                                                 final int cssWidth, final int cssHeight) {
+      final Element element = box.getElement();
+      final boolean inline = element != null
+          && element.getAttribute("src").startsWith(PROTOCOL + ":");
+      return elementFactory.createReplacedElement(context, box, inline
+              ? new InlineImageAgent(userAgent, this, context.getSharedContext().getDotsPerPixel())
+              : userAgent, cssWidth, cssHeight);
+    }
+
+    @Override
+    public boolean isReplacedElement(final Element element) {
+      return elementFactory.isReplacedElement(element);
+    }
+
+    ImageResource imageOf(final String uri, final int dotsPerPixel) {
+      final int index = Integer.parseInt(uri.substring(PROTOCOL.length() + 1));
+      final EncodedImage image = images.get(index);
+      try {
+        if (xobjects[index] == null) {
+          xobjects[index] = image.toXObject(document);
+        }
+      } catch (IOException e) {
+        LOGGER.warn("cannot add embedded image to the document: {}", e.getMessage());
+        return new ImageResource(uri, null);
+      }
+      // scaled to the output resolution as openhtmltopdf scales the images it loads
+      return new ImageResource(uri, new PdfBoxImage(null, uri,
+          (float) image.getWidth() * dotsPerPixel, (float) image.getHeight() * dotsPerPixel,
+          image.isJpeg(), xobjects[index]));
+    }
+  }
+
+  /**
+   * The renderer's user agent, loading referenced images from the element factory.
+   */
+  private static final class InlineImageAgent implements UserAgentCallback {
+    private final UserAgentCallback userAgent;
+    private final InlineImageElementFactory elementFactory;
+    private final int dotsPerPixel;
+
+    InlineImageAgent(final UserAgentCallback userAgent,
+                     final InlineImageElementFactory elementFactory, final int dotsPerPixel) {
+      this.userAgent = userAgent;
+      this.elementFactory = elementFactory;
+      this.dotsPerPixel = dotsPerPixel;
+    }
+
+    @Override
+    public ImageResource getImageResource(final String uri) {
+      return uri.startsWith(PROTOCOL + ":")
+          ? elementFactory.imageOf(uri, dotsPerPixel) : userAgent.getImageResource(uri);
+    }
+
+    @Override
+    public CSSResource getCSSResource(final String uri) {
+      return userAgent.getCSSResource(uri);
+    }
+
+    @Override
+    public XMLResource getXMLResource(final String uri) {
+      return userAgent.getXMLResource(uri);
+    }
+
+    @Override
+    public byte[] getBinaryResource(final String uri) {
+      return userAgent.getBinaryResource(uri);
+    }
+
+    @Override
+    public boolean isVisited(final String uri) {
+      return userAgent.isVisited(uri);
+    }
+
+    @Override
+    public void setBaseURL(final String uri) {
+      userAgent.setBaseURL(uri);
+    }
+
+    @Override
+    public String getBaseURL() {
+      return userAgent.getBaseURL();
+    }
+
+    @Override
+    public String resolveURI(final String uri) {
+      return userAgent.resolveURI(uri);
+    }
+
+    @Override
+    public String resolveUri(final String baseUri, final String uri) {
+      return userAgent.resolveUri(baseUri, uri);
+    }
+  }
+}
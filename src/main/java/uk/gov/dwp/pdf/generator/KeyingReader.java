@@ -0,0 +1,69 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that adds every character read through it to the key of a cached result,
+ * so the html can be keyed as it is parsed rather than read twice.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+class KeyingReader extends FilterReader {
+
+  private final DeterministicOutput.Key key;
+  private final char[] single = new char[1];
+
+  /**
+   * Constructor.
+   *
+   * @param reader the reader to key
+   * @param key    the key given the characters read
+   */
+  KeyingReader(final Reader reader, final DeterministicOutput.Key key) {
+    super(reader);
+    this.key = key;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int character = super.read();
+    if (character >= 0) {
+      single[0] = (char) character;
+      key.update(single, 0, 1);
+    }
+    return character;
+  }
+
+  @Override
+  public int read(final char[] buffer, final int offset, final int length) throws IOException {
+    final int read = super.read(buffer, offset, length);
+    if (read > 0) {
+      key.update(buffer, offset, read);
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(final long characters) throws IOException {
+    if (characters <= 0) {
+      return super.skip(characters);
+    }
+    // read rather than skipped, so the skipped characters are keyed too
+    final char[] buffer = new char[(int) Math.min(characters, 8192)];
+    long skipped = 0;
+    while (skipped < characters) {
+      final int read = read(buffer, 0, (int) Math.min(characters - skipped, buffer.length));
+      if (read < 0) {
+        break;
+      }
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+}
@@ -0,0 +1,49 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that flushes rather than closes the wrapped stream.
+ * PDFBox closes the stream it saves to, which must not happen to a caller supplied stream.
+ * The number of bytes written is counted as they pass through.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+class NonClosingOutputStream extends FilterOutputStream {
+
+  private long count;
+
+  /**
+   * Constructor.
+   *
+   * @param outputStream the stream to write to
+   */
+  NonClosingOutputStream(final OutputStream outputStream) {
+    super(outputStream);
+  }
+
+  @Override
+  public void write(final int value) throws IOException {
+    out.write(value);
+    count++;
+  }
+
+  @Override
+  public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+    out.write(bytes, offset, length);
+    count += length;
+  }
+
+  /**
+   * Returns the number of bytes written.
+   */
+  long getCount() {
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+}
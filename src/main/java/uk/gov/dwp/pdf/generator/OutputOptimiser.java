@@ -0,0 +1,310 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.DrawObject;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetGraphicsStateParameters;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Makes a painted document smaller before it is saved: shares identical images,
+ * downsamples images drawn at more than the maximum resolution, and recompresses
+ * flate and unfiltered streams at the highest compression level.
+ * PDFBox 2 cannot write object or cross reference streams, so objects are still
+ * written one by one with a plain cross reference table.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class OutputOptimiser {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OutputOptimiser.class.getName());
+  private static final COSName[] IMAGE_DESCRIPTION = {COSName.WIDTH, COSName.HEIGHT,
+      COSName.BITS_PER_COMPONENT, COSName.COLORSPACE, COSName.FILTER, COSName.DECODE_PARMS,
+      COSName.DECODE, COSName.SMASK};
+  private static final float POINTS_PER_INCH = 72f;
+  // images this close to the maximum resolution are not worth encoding again
+  private static final float DOWNSAMPLE_THRESHOLD = 1.1f;
+  private static final float JPEG_QUALITY = 0.85f;
+
+  private OutputOptimiser() {
+  }
+
+  /**
+   * Optimises the document, which must be fully painted but not yet saved.
+   *
+   * @return the number of bytes of stream data saved
+   */
+  static long optimise(final PDDocument document, final PdfOptimisation optimisation)
+      throws IOException {
+    final long before = streamBytes(document);
+
+    final int shared = SharedImages.deduplicate(document);
+    final int downsampled = optimisation.getMaximumDpi() == 0
+        ? 0 : downsample(document, optimisation.getMaximumDpi());
+    int recompressed = 0;
+    for (final COSStream stream : streams(document)) {
+      if (recompress(stream)) {
+        recompressed++;
+      }
+    }
+
+    final long saved = before - streamBytes(document);
+    LOGGER.debug("saved {} bytes sharing {} images, downsampling {} and recompressing {} streams",
+        saved, shared, downsampled, recompressed);
+    return saved;
+  }
+
+  private static int downsample(final PDDocument document, final int maximumDpi)
+      throws IOException {
+    final ImageSizes sizes = new ImageSizes();
+    for (final PDPage page : document.getPages()) {
+      sizes.processPage(page);
+    }
+
+    int downsampled = 0;
+    for (final Map.Entry<COSStream, PDImageXObject> entry : sizes.images.entrySet()) {
+      final float[] drawn = sizes.drawnPoints.get(entry.getKey());
+      final PDImageXObject image = entry.getValue();
+      final float scale = Math.max(
+          drawn[0] / POINTS_PER_INCH * maximumDpi / image.getWidth(),
+          drawn[1] / POINTS_PER_INCH * maximumDpi / image.getHeight());
+
+      if (drawn[0] > 0 && drawn[1] > 0 && scale * DOWNSAMPLE_THRESHOLD < 1 && isResampled(image)
+          && replace(document, image, scale)) {
+        downsampled++;
+      }
+    }
+    return downsampled;
+  }
+
+  private static boolean isResampled(final PDImageXObject image) throws IOException {
+    // masks by colour key or stencil cannot be carried over, other colour spaces are left alone
+    if (image.isStencil() || image.getCOSObject().getDictionaryObject(COSName.MASK) != null) {
+      return false;
+    }
+    final PDColorSpace colourSpace = image.getColorSpace();
+    return colourSpace instanceof PDDeviceRGB || colourSpace instanceof PDDeviceGray;
+  }
+
+  private static boolean replace(final PDDocument document, final PDImageXObject image,
+                                 final float scale) throws IOException {
+    final boolean masked = image.getCOSObject().getDictionaryObject(COSName.SMASK) != null;
+    final boolean grey = image.getColorSpace() instanceof PDDeviceGray && !masked;
+    final BufferedImage resampled = resample(image.getImage(),
+        Math.max(1, Math.round(image.getWidth() * scale)),
+        Math.max(1, Math.round(image.getHeight() * scale)),
+        masked ? BufferedImage.TYPE_INT_ARGB
+            : grey ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+
+    final PDImageXObject replacement = "jpg".equals(image.getSuffix())
+        ? JPEGFactory.createFromImage(document, resampled, JPEG_QUALITY)
+        : LosslessFactory.createFromImage(document, resampled);
+    if (encodedLength(replacement.getCOSObject()) >= encodedLength(image.getCOSObject())) {
+      return false;
+    }
+
+    // rewritten in place, so every page and form drawing the image draws the new one
+    final COSStream target = image.getCOSObject();
+    final COSStream source = replacement.getCOSObject();
+    for (final COSName key : IMAGE_DESCRIPTION) {
+      final COSBase value = source.getItem(key);
+      if (value == null) {
+        target.removeItem(key);
+      } else {
+        target.setItem(key, value);
+      }
+    }
+    try (InputStream inputStream = source.createRawInputStream();
+         OutputStream outputStream = target.createRawOutputStream()) {
+      copy(inputStream, outputStream);
+    }
+    return true;
+  }
+
+  private static BufferedImage resample(final BufferedImage source, final int width,
+                                        final int height, final int type) {
+    // halved in steps, a single large reduction would skip most of the source pixels
+    BufferedImage current = source;
+    int currentWidth = source.getWidth();
+    int currentHeight = source.getHeight();
+    do {
+      currentWidth = Math.max(width, currentWidth / 2);
+      currentHeight = Math.max(height, currentHeight / 2);
+      final BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+      final Graphics2D graphics = next.createGraphics();
+      try {
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+            RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+      } finally {
+        graphics.dispose();
+      }
+      current = next;
+    } while (currentWidth != width || currentHeight != height);
+    return current;
+  }
+
+  private static boolean recompress(final COSStream stream) throws IOException {
+    final COSBase filter = stream.getFilters();
+    // pdf/a requires the metadata is readable without decoding it
+    if (COSName.METADATA.equals(stream.getCOSName(COSName.TYPE))
+        || stream.getItem(COSName.DECODE_PARMS) != null
+        || filter != null && !COSName.FLATE_DECODE.equals(filter)) {
+      return false;
+    }
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    try (InputStream inputStream = stream.createInputStream();
+         DeflaterOutputStream outputStream = new DeflaterOutputStream(compressed, deflater)) {
+      copy(inputStream, outputStream);
+    } finally {
+      deflater.end();
+    }
+    if (compressed.size() >= stream.getLength()) {
+      return false;
+    }
+
+    try (OutputStream outputStream = stream.createRawOutputStream()) {
+      compressed.writeTo(outputStream);
+    }
+    stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+    return true;
+  }
+
+  private static long encodedLength(final COSStream image) {
+    final COSBase mask = image.getDictionaryObject(COSName.SMASK);
+    return image.getLength() + (mask instanceof COSStream ? ((COSStream) mask).getLength() : 0);
+  }
+
+  private static long streamBytes(final PDDocument document) {
+    long bytes = 0;
+    for (final COSStream stream : streams(document)) {
+      bytes += stream.getLength();
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns every stream reachable from the trailer, which is every stream that is saved.
+   */
+  private static List<COSStream> streams(final PDDocument document) {
+    final List<COSStream> streams = new ArrayList<>();
+    final Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    final Deque<COSBase> pending = new ArrayDeque<>();
+    pending.push(document.getDocument().getTrailer());
+
+    while (!pending.isEmpty()) {
+      COSBase base = pending.pop();
+      if (base instanceof COSObject) {
+        base = ((COSObject) base).getObject();
+      }
+      if (base == null || !visited.add(base)) {
+        continue;
+      }
+      if (base instanceof COSStream) {
+        streams.add((COSStream) base);
+      }
+      if (base instanceof COSDictionary) {
+        pushAll(pending, ((COSDictionary) base).getValues());
+      } else if (base instanceof COSArray) {
+        pushAll(pending, (COSArray) base);
+      }
+    }
+    return streams;
+  }
+
+  private static void pushAll(final Deque<COSBase> pending, final Iterable<COSBase> values) {
+    for (final COSBase value : values) {
+      // arrays can hold nulls, which the deque does not take
+      if (value != null) {
+        pending.push(value);
+      }
+    }
+  }
+
+  private static void copy(final InputStream inputStream, final OutputStream outputStream)
+      throws IOException {
+    final byte[] buffer = new byte[8192];
+    for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+      outputStream.write(buffer, 0, count);
+    }
+  }
+
+  /**
+   * Finds the largest size, in points, each image is drawn at on the pages.
+   */
+  private static final class ImageSizes extends PDFStreamEngine {
+    private final Map<COSStream, PDImageXObject> images = new IdentityHashMap<>();
+    private final Map<COSStream, float[]> drawnPoints = new IdentityHashMap<>();
+
+    ImageSizes() {
+      super();
+      addOperator(new Concatenate());
+      addOperator(new DrawObject());
+      addOperator(new SetGraphicsStateParameters());
+      addOperator(new Save());
+      addOperator(new Restore());
+      addOperator(new SetMatrix());
+    }
+
+    @Override
+    protected void processOperator(final Operator operator, final List<COSBase> operands)
+        throws IOException {
+      if ("Do".equals(operator.getName()) && !operands.isEmpty()
+          && operands.get(0) instanceof COSName && getResources() != null) {
+        final PDXObject xobject = getResources().getXObject((COSName) operands.get(0));
+        if (xobject instanceof PDImageXObject) {
+          final Matrix matrix = getGraphicsState().getCurrentTransformationMatrix();
+          final COSStream stream = ((PDImageXObject) xobject).getCOSObject();
+          images.putIfAbsent(stream, (PDImageXObject) xobject);
+          final float[] drawn = drawnPoints.computeIfAbsent(stream, key -> new float[2]);
+          drawn[0] = Math.max(drawn[0], Math.abs(matrix.getScalingFactorX()));
+          drawn[1] = Math.max(drawn[1], Math.abs(matrix.getScalingFactorY()));
+          return;
+        }
+      }
+      super.processOperator(operator, operands);
+    }
+  }
+}
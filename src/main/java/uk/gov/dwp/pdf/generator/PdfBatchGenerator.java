@@ -0,0 +1,197 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Renders batches of documents with a prepared generator on a pool of worker threads.
+ * The number of renders in flight is capped, so the memory used by concurrent renders
+ * is bounded however large the batch; further jobs are only read from the batch
+ * as earlier ones complete.
+ * Each job produces its own result, a failed document does not fail the batch.
+ * A render dying with an {@link Error} is delivered as a failure before the error is rethrown.
+ */
+@SuppressWarnings("PMD.AvoidCatchingGenericException")
+public final class PdfBatchGenerator implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PdfBatchGenerator.class.getName());
+
+  private final PreparedHtmlToPdfGenerator generator;
+  private final Executor executor;
+  private final ExecutorService ownedExecutor;
+  private final int maximumInFlight;
+
+  /**
+   * Constructor for a batch generator with its own pool of worker threads,
+   * shut down when the batch generator is closed.
+   *
+   * @param generator       the generator each document is rendered with
+   * @param workers         the number of worker threads
+   * @param maximumInFlight the maximum number of renders started but not yet delivered
+   */
+  public PdfBatchGenerator(final PreparedHtmlToPdfGenerator generator,
+                           final int workers,
+                           final int maximumInFlight) {
+    this(generator, Arguments.positive(maximumInFlight, "Maximum in flight"),
+        Executors.newFixedThreadPool(Arguments.positive(workers, "Workers"),
+            new PdfWorkerThreadFactory("pdf-batch")),
+        true);
+  }
+
+  /**
+   * Constructor for a batch generator rendering on a caller supplied executor,
+   * which is left running when the batch generator is closed.
+   *
+   * @param generator       the generator each document is rendered with
+   * @param executor        the executor renders run on
+   * @param maximumInFlight the maximum number of renders started but not yet delivered
+   */
+  public PdfBatchGenerator(final PreparedHtmlToPdfGenerator generator,
+                           final Executor executor,
+                           final int maximumInFlight) {
+    this(generator, Arguments.positive(maximumInFlight, "Maximum in flight"), executor, false);
+  }
+
+  private PdfBatchGenerator(final PreparedHtmlToPdfGenerator generator,
+                            final int maximumInFlight,
+                            final Executor executor,
+                            final boolean ownsExecutor) {
+    this.generator = Objects.requireNonNull(generator, "Generator must not be null");
+    this.executor = Objects.requireNonNull(executor, "Executor must not be null");
+    this.ownedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    this.maximumInFlight = maximumInFlight;
+  }
+
+  /**
+   * Renders every job, delivering each result to the consumer as it completes.
+   * The consumer is called from the worker threads, possibly concurrently, and should
+   * write the pdf away rather than hold on to it.
+   * Returns once every result has been delivered.
+   *
+   * @param jobs           the documents to render
+   * @param resultConsumer receives the result of each job
+   * @return the counts and throughput of the batch
+   * @throws InterruptedException if interrupted while waiting for renders to complete
+   */
+  public PdfBatchSummary generate(final Iterable<PdfRenderJob> jobs,
+                                  final Consumer<PdfRenderResult> resultConsumer)
+      throws InterruptedException {
+
+    Objects.requireNonNull(resultConsumer, "Result consumer must not be null");
+    final Semaphore inFlight = new Semaphore(maximumInFlight);
+    final LongAdder succeeded = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final long start = System.nanoTime();
+
+    try {
+      for (final PdfRenderJob job : jobs) {
+        inFlight.acquire();
+        final Runnable render = () -> {
+          try {
+            final PdfRenderResult result = render(job);
+            deliver(result, resultConsumer, succeeded, failed);
+            if (!result.isSuccess() && result.getFailure().getCause() instanceof Error) {
+              // rethrown once the failure is delivered and counted
+              throw (Error) result.getFailure().getCause();
+            }
+          } finally {
+            inFlight.release();
+          }
+        };
+
+        try {
+          executor.execute(render);
+        } catch (RejectedExecutionException e) {
+          inFlight.release();
+          deliver(PdfRenderResult.failure(job.getId(),
+              new PdfaGeneratorException("render rejected by the executor", e), Duration.ZERO),
+              resultConsumer, succeeded, failed);
+        }
+      }
+
+    } finally {
+      // wait for the renders already started
+      inFlight.acquireUninterruptibly(maximumInFlight);
+    }
+
+    final PdfBatchSummary summary = new PdfBatchSummary(
+        succeeded.sum(), failed.sum(), Duration.ofNanos(System.nanoTime() - start));
+    LOGGER.info("batch complete: {}", summary);
+    return summary;
+  }
+
+  /**
+   * Renders every job in the stream, delivering each result to the consumer as it completes.
+   *
+   * @param jobs           the documents to render
+   * @param resultConsumer receives the result of each job
+   * @return the counts and throughput of the batch
+   * @throws InterruptedException if interrupted while waiting for renders to complete
+   * @see #generate(Iterable, Consumer)
+   */
+  public PdfBatchSummary generate(final Stream<PdfRenderJob> jobs,
+                                  final Consumer<PdfRenderResult> resultConsumer)
+      throws InterruptedException {
+    return generate(jobs::iterator, resultConsumer);
+  }
+
+  /**
+   * Shuts down the worker pool, if it was created by this batch generator.
+   */
+  @Override
+  public void close() {
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+  }
+
+  private PdfRenderResult render(final PdfRenderJob job) {
+    final long start = System.nanoTime();
+    try {
+      final byte[] pdf = generator.createPdfDocument(job.getHtml());
+      return PdfRenderResult.success(job.getId(), pdf, Duration.ofNanos(System.nanoTime() - start));
+
+    } catch (PdfaGeneratorException e) {
+      return PdfRenderResult.failure(job.getId(), e, Duration.ofNanos(System.nanoTime() - start));
+
+    } catch (RuntimeException e) {
+      return PdfRenderResult.failure(job.getId(), new PdfaGeneratorException(e.getMessage(), e),
+          Duration.ofNanos(System.nanoTime() - start));
+
+    } catch (Error e) {
+      // such as a stack overflow on deeply nested html
+      return PdfRenderResult.failure(job.getId(), new PdfaGeneratorException(e.toString(), e),
+          Duration.ofNanos(System.nanoTime() - start));
+    }
+  }
+
+  private static void deliver(final PdfRenderResult result,
+                              final Consumer<PdfRenderResult> resultConsumer,
+                              final LongAdder succeeded,
+                              final LongAdder failed) {
+    if (result.isSuccess()) {
+      succeeded.increment();
+    } else {
+      failed.increment();
+      LOGGER.warn("batch job '{}' failed: {}", result.getId(), result.getFailure().getMessage());
+    }
+
+    try {
+      resultConsumer.accept(result);
+    } catch (RuntimeException e) {
+      LOGGER.error("result consumer failed for batch job '{}'", result.getId(), e);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.time.Duration;
+
+/**
+ * Counts and throughput of a completed batch.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfBatchSummary {
+
+  private final long succeeded;
+  private final long failed;
+  private final Duration elapsed;
+
+  PdfBatchSummary(final long succeeded, final long failed, final Duration elapsed) {
+    this.succeeded = succeeded;
+    this.failed = failed;
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * Returns the number of jobs in the batch.
+   *
+   * @return the job count
+   */
+  public long getJobCount() {
+    return succeeded + failed;
+  }
+
+  /**
+   * Returns the number of jobs that produced a pdf.
+   *
+   * @return the success count
+   */
+  public long getSucceeded() {
+    return succeeded;
+  }
+
+  /**
+   * Returns the number of jobs that failed.
+   *
+   * @return the failure count
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * Returns the wall clock time taken by the batch.
+   *
+   * @return the elapsed time
+   */
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * Returns the number of jobs completed per second of wall clock time.
+   *
+   * @return the throughput
+   */
+  public double getDocumentsPerSecond() {
+    final long nanos = elapsed.toNanos();
+    return nanos == 0 ? 0 : getJobCount() * 1_000_000_000.0 / nanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d jobs, %d succeeded, %d failed in %d ms (%.1f documents/s)",
+        getJobCount(), succeeded, failed, elapsed.toMillis(), getDocumentsPerSecond());
+  }
+}
@@ -0,0 +1,270 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide pool of the buffers pdfs are rendered into when they are returned as bytes.
+ * New buffers are sized from a running estimate of recent pdf sizes, so a buffer rarely grows
+ * by copying, and released buffers are kept for the next render rather than left to the
+ * garbage collector.
+ * Every buffer taken from the pool must be closed, which returns it. A buffer that is
+ * garbage collected without being closed is reported as a leak, with the stack that took it
+ * when the system property {@value #LEAK_TRACING_PROPERTY} is true. Leaks are looked for
+ * whenever a buffer is taken or closed.
+ * The idle buffers are bounded both in number and in the bytes they hold together, which for
+ * the shared instance can be set with the system properties {@value #MAXIMUM_IDLE_PROPERTY}
+ * and {@value #MAXIMUM_IDLE_BYTES_PROPERTY}.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfBufferPool {
+
+  /**
+   * System property holding the maximum number of idle buffers held by the shared pool.
+   */
+  public static final String MAXIMUM_IDLE_PROPERTY = "uk.gov.dwp.pdf.bufferPoolSize";
+
+  /**
+   * System property holding the maximum bytes held by the idle buffers of the shared pool.
+   */
+  public static final String MAXIMUM_IDLE_BYTES_PROPERTY = "uk.gov.dwp.pdf.bufferPoolBytes";
+
+  /**
+   * System property recording where each buffer was taken, to report with leaks.
+   */
+  public static final String LEAK_TRACING_PROPERTY = "uk.gov.dwp.pdf.bufferLeakTracing";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PdfBufferPool.class.getName());
+  private static final int MINIMUM_CAPACITY = 16 * 1024;
+  private static final int INITIAL_ESTIMATE = 64 * 1024;
+  private static final int MAXIMUM_RETAINED_CAPACITY = 16 * 1024 * 1024;
+  private static final int ALIGNMENT = 4096;
+  private static final long DEFAULT_MAXIMUM_IDLE_BYTES = 32 * 1024 * 1024;
+  private static final PdfBufferPool SHARED = new PdfBufferPool(Integer.getInteger(
+      MAXIMUM_IDLE_PROPERTY, Runtime.getRuntime().availableProcessors() * 2),
+      Long.getLong(MAXIMUM_IDLE_BYTES_PROPERTY, DEFAULT_MAXIMUM_IDLE_BYTES),
+      Boolean.getBoolean(LEAK_TRACING_PROPERTY));
+
+  private final int maximumIdle;
+  private final long maximumIdleBytes;
+  private final boolean leakTracing;
+  private final ConcurrentLinkedDeque<byte[]> idle = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private final AtomicLong idleBytes = new AtomicLong();
+  private final ReferenceQueue<PooledBuffer> collected = new ReferenceQueue<>();
+  private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+  private final AtomicLong estimate = new AtomicLong(INITIAL_ESTIMATE);
+  private final AtomicLong acquisitions = new AtomicLong();
+  private final AtomicLong reuses = new AtomicLong();
+  private final AtomicLong leaks = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maximumIdle      the maximum number of released buffers kept for reuse
+   * @param maximumIdleBytes the maximum bytes held by the released buffers kept for reuse
+   * @param leakTracing      whether to record where each buffer was taken
+   */
+  PdfBufferPool(final int maximumIdle, final long maximumIdleBytes, final boolean leakTracing) {
+    if (maximumIdle < 0) {
+      throw new IllegalArgumentException("Buffer pool size must not be negative");
+    }
+    if (maximumIdleBytes < 0) {
+      throw new IllegalArgumentException("Buffer pool bytes must not be negative");
+    }
+    this.maximumIdle = maximumIdle;
+    this.maximumIdleBytes = maximumIdleBytes;
+    this.leakTracing = leakTracing;
+  }
+
+  /**
+   * Returns the pool shared by every generator in this process.
+   *
+   * @return the shared buffer pool
+   */
+  public static PdfBufferPool shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns an empty buffer, reused if one is idle. It must be closed once its bytes
+   * have been taken, which returns it to the pool.
+   */
+  PooledBuffer acquire() {
+    reportLeaks();
+    acquisitions.incrementAndGet();
+
+    byte[] bytes = idle.pollFirst();
+    if (bytes != null) {
+      idleCount.decrementAndGet();
+      idleBytes.addAndGet(-bytes.length);
+      if (bytes.length < estimate.get()) {
+        // sized for smaller pdfs than are rendered now, it would only grow by copying
+        bytes = null;
+      } else {
+        reuses.incrementAndGet();
+      }
+    }
+    if (bytes == null) {
+      bytes = new byte[capacityFor(estimate.get())];
+    }
+
+    final PooledBuffer buffer = new PooledBuffer(this, bytes);
+    buffer.lease = new Lease(buffer, collected,
+        leakTracing ? new Throwable("buffer taken here") : null);
+    leases.add(buffer.lease);
+    return buffer;
+  }
+
+  /**
+   * Takes back the bytes of a closed buffer, recording its size in the running estimate.
+   */
+  void release(final PooledBuffer buffer, final byte[] bytes, final int size) {
+    leases.remove(buffer.lease);
+    buffer.lease.clear();
+    reportLeaks();
+
+    // weighted towards recent pdfs, each moving the estimate an eighth of the way
+    if (size > 0) {
+      estimate.accumulateAndGet(size, (current, latest) -> current + (latest - current) / 8);
+    }
+
+    final long retainable = Math.max(MINIMUM_CAPACITY, estimate.get() * 4);
+    // a buffer grown by an unusually large pdf is left to the garbage collector
+    if (bytes.length <= Math.min(retainable, MAXIMUM_RETAINED_CAPACITY) && reserve(bytes)) {
+      idle.offerFirst(bytes);
+    }
+  }
+
+  /**
+   * Returns the running estimate, in bytes, of the size of recently rendered pdfs.
+   *
+   * @return the estimated pdf size
+   */
+  public long estimatedSize() {
+    return estimate.get();
+  }
+
+  /**
+   * Returns the number of released buffers held for reuse.
+   *
+   * @return the number of idle buffers
+   */
+  public int size() {
+    return idleCount.get();
+  }
+
+  /**
+   * Returns the bytes held by the released buffers held for reuse.
+   *
+   * @return the bytes of the idle buffers
+   */
+  public long bytes() {
+    return idleBytes.get();
+  }
+
+  /**
+   * Returns the number of buffers taken and not yet closed.
+   *
+   * @return the number of buffers in use
+   */
+  public int outstanding() {
+    return leases.size();
+  }
+
+  /**
+   * Returns the number of buffers taken from the pool.
+   *
+   * @return the acquisition count
+   */
+  public long acquisitionCount() {
+    return acquisitions.get();
+  }
+
+  /**
+   * Returns the number of buffers taken that reused an idle buffer.
+   *
+   * @return the reuse count
+   */
+  public long reuseCount() {
+    return reuses.get();
+  }
+
+  /**
+   * Returns the number of buffers found garbage collected without being closed.
+   *
+   * @return the leak count
+   */
+  public long leakCount() {
+    reportLeaks();
+    return leaks.get();
+  }
+
+  /**
+   * Drops every idle buffer. Buffers in use are unaffected and are kept when closed.
+   */
+  public void clear() {
+    for (byte[] bytes = idle.pollFirst(); bytes != null; bytes = idle.pollFirst()) {
+      idleCount.decrementAndGet();
+      idleBytes.addAndGet(-bytes.length);
+    }
+  }
+
+  private boolean reserve(final byte[] bytes) {
+    // counted before the buffer is offered, so racing releases cannot overfill the pool
+    if (idleCount.incrementAndGet() > maximumIdle) {
+      idleCount.decrementAndGet();
+      return false;
+    }
+    if (idleBytes.addAndGet(bytes.length) > maximumIdleBytes) {
+      idleBytes.addAndGet(-bytes.length);
+      idleCount.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  private void reportLeaks() {
+    for (Lease lease = (Lease) collected.poll(); lease != null;
+         lease = (Lease) collected.poll()) {
+      if (leases.remove(lease)) {
+        leaks.incrementAndGet();
+        if (lease.taken == null) {
+          LOGGER.warn("pdf buffer garbage collected without being closed, set {} to see where "
+              + "it was taken", LEAK_TRACING_PROPERTY);
+        } else {
+          LOGGER.warn("pdf buffer garbage collected without being closed", lease.taken);
+        }
+      }
+    }
+  }
+
+  private static int capacityFor(final long estimatedSize) {
+    // headroom over the estimate, so a typical pdf fits without growing
+    final long capacity = Math.max(MINIMUM_CAPACITY, estimatedSize + estimatedSize / 4);
+    return (int) Math.min(MAXIMUM_RETAINED_CAPACITY,
+        (capacity + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+  }
+
+  /**
+   * Tracks a buffer in use, enqueued when the buffer is garbage collected.
+   * Closing the buffer clears it, so only leaked buffers are ever enqueued.
+   */
+  static final class Lease extends WeakReference<PooledBuffer> {
+    private final Throwable taken;
+
+    Lease(final PooledBuffer buffer, final ReferenceQueue<PooledBuffer> queue,
+          final Throwable taken) {
+      super(buffer, queue);
+      this.taken = taken;
+    }
+  }
+}
@@ -35,4 +35,12 @@ public enum PdfConformanceLevel {
     LOGGER.info("building pdf to comply with conformance level {}", this.name());
     builder.usePdfAConformance(PdfRendererBuilder.PdfAConformance.valueOf(this.name()));
   }
+
+  /**
+   * Returns whether documents at this level carry a structure tree, as PDF/UA and
+   * the accessible PDF/A levels do.
+   */
+  boolean isTagged() {
+    return this == PDF_UA || name().endsWith("_A");
+  }
 }
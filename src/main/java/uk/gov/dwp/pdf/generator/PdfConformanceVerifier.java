@@ -0,0 +1,300 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Validates a sample of the pdfs generators render against their PDF/A conformance level
+ * with veraPDF, on a single low priority thread, so renders are never slowed by validation.
+ * Sampled pdfs wait in a bounded queue; when it is full further samples are dropped rather
+ * than copied, so a busy generator is not held back either. Failures are logged with the
+ * rules they broke and counted, by rule, for monitoring.
+ * PDF/UA and unconstrained documents are never sampled, veraPDF has no profile for them.
+ * veraPDF's {@code org.verapdf:validation-model} is an optional dependency of this library
+ * and must be added by applications using a verifier.
+ */
+@SuppressWarnings({"PMD.CommentDefaultAccessModifier", "PMD.AvoidCatchingGenericException"})
+public final class PdfConformanceVerifier implements AutoCloseable {
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger(PdfConformanceVerifier.class.getName());
+  private static final int DEFAULT_QUEUE_SIZE = 16;
+
+  private final double sampleRate;
+  private final ThreadPoolExecutor executor;
+  private final LongAdder sampled = new LongAdder();
+  private final LongAdder passed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final Map<String, LongAdder> failedRules = new ConcurrentHashMap<>();
+  private final Set<CompletableFuture<Void>> verifications = ConcurrentHashMap.newKeySet();
+
+  private PdfConformanceVerifier(final double sampleRate, final int queueSize) {
+    this.sampleRate = sampleRate;
+    this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueSize),
+        new PdfWorkerThreadFactory("pdf-verify", Thread.MIN_PRIORITY));
+  }
+
+  /**
+   * Returns a verifier validating the fraction of documents, queueing at most 16 at a time.
+   *
+   * @param sampleRate the fraction of documents validated, greater than 0 and at most 1
+   * @return the verifier
+   */
+  public static PdfConformanceVerifier sampling(final double sampleRate) {
+    return sampling(sampleRate, DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * Returns a verifier validating the fraction of documents.
+   *
+   * @param sampleRate the fraction of documents validated, greater than 0 and at most 1
+   * @param queueSize  the most sampled documents waiting to be validated
+   * @return the verifier
+   */
+  public static PdfConformanceVerifier sampling(final double sampleRate, final int queueSize) {
+    if (!(sampleRate > 0 && sampleRate <= 1)) {
+      throw new IllegalArgumentException("Sample rate must be greater than 0 and at most 1");
+    }
+    if (queueSize < 1) {
+      throw new IllegalArgumentException("Verification queue size must be at least 1");
+    }
+    try {
+      Class.forName("org.verapdf.pdfa.Foundries", false,
+          PdfConformanceVerifier.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(
+          "Conformance verification needs org.verapdf:validation-model on the classpath", e);
+    }
+    return new PdfConformanceVerifier(sampleRate, queueSize);
+  }
+
+  /**
+   * Returns a sample to copy a document rendered at the conformance level into, or null
+   * if it is not sampled, cannot be validated, or would only be dropped.
+   */
+  Sample sample(final PdfConformanceLevel conformanceLevel) {
+    if (conformanceLevel == PdfConformanceLevel.NONE
+        || conformanceLevel == PdfConformanceLevel.PDF_UA || executor.isShutdown()
+        || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+      return null;
+    }
+    if (executor.getQueue().remainingCapacity() == 0) {
+      dropped.increment();
+      return null;
+    }
+    return new Sample(conformanceLevel);
+  }
+
+  /**
+   * Returns the number of documents sampled and queued for validation.
+   *
+   * @return the sampled count
+   */
+  public long sampledCount() {
+    return sampled.sum();
+  }
+
+  /**
+   * Returns the number of sampled documents found conformant.
+   *
+   * @return the passed count
+   */
+  public long passedCount() {
+    return passed.sum();
+  }
+
+  /**
+   * Returns the number of sampled documents found not conformant.
+   *
+   * @return the failed count
+   */
+  public long failedCount() {
+    return failed.sum();
+  }
+
+  /**
+   * Returns the number of sampled documents dropped because the queue was full.
+   *
+   * @return the dropped count
+   */
+  public long droppedCount() {
+    return dropped.sum();
+  }
+
+  /**
+   * Returns the number of sampled documents veraPDF could not validate.
+   *
+   * @return the error count
+   */
+  public long errorCount() {
+    return errors.sum();
+  }
+
+  /**
+   * Returns the number of failed documents breaking each rule, keyed by the clause of the
+   * specification and the test number, such as {@code 6.2.11.4.1-1}.
+   *
+   * @return the failed rule counts, in rule order
+   */
+  public Map<String, Long> failedRules() {
+    final Map<String, Long> counts = new TreeMap<>();
+    failedRules.forEach((rule, count) -> counts.put(rule, count.sum()));
+    return Collections.unmodifiableMap(counts);
+  }
+
+  /**
+   * Waits for every queued document to be validated, for testing and orderly shutdown.
+   *
+   * @param timeout the longest to wait
+   * @param unit    the unit of the timeout
+   * @return whether every queued document was validated in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitIdle(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    try {
+      CompletableFuture.allOf(verifications.toArray(new CompletableFuture<?>[0]))
+          .get(timeout, unit);
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException e) {
+      // allOf fails only once every verification has finished, so the verifier is idle
+      LOGGER.debug("sampled pdf verification failed: {}", e.getMessage());
+    }
+    return true;
+  }
+
+  /**
+   * Stops sampling and shuts down the validation thread once the queued documents are done.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  private void submit(final byte[] pdf, final PdfConformanceLevel conformanceLevel) {
+    try {
+      final CompletableFuture<Void> verification =
+          CompletableFuture.runAsync(() -> verify(pdf, conformanceLevel), executor);
+      verifications.add(verification);
+      verification.whenComplete((result, failure) -> verifications.remove(verification));
+      sampled.increment();
+    } catch (RejectedExecutionException e) {
+      // filled since the document was sampled, or closed
+      dropped.increment();
+    }
+  }
+
+  private void verify(final byte[] pdf, final PdfConformanceLevel conformanceLevel) {
+    try {
+      final Iterable<String> rules = VeraPdfValidation.failedRules(pdf, conformanceLevel);
+      if (!rules.iterator().hasNext()) {
+        passed.increment();
+        return;
+      }
+      failed.increment();
+      for (final String rule : rules) {
+        failedRules.computeIfAbsent(rule, key -> new LongAdder()).increment();
+      }
+      LOGGER.warn("sampled pdf does not conform to {}, failed rules {}", conformanceLevel, rules);
+    } catch (Exception | LinkageError e) {
+      errors.increment();
+      LOGGER.warn("cannot validate sampled pdf: {}", e.getMessage());
+      LOGGER.debug(e.getClass().getName(), e);
+    }
+  }
+
+  /**
+   * A copy of one sampled document, taken as it is written and queued once it is complete.
+   */
+  final class Sample {
+    private final PdfConformanceLevel conformanceLevel;
+    private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    private Sample(final PdfConformanceLevel conformanceLevel) {
+      this.conformanceLevel = conformanceLevel;
+    }
+
+    /**
+     * Returns a stream writing to the output stream and to the copy, which writes to memory
+     * if the output stream does.
+     */
+    OutputStream tee(final OutputStream outputStream) {
+      return outputStream instanceof InMemoryOutput
+          ? new InMemoryTee(outputStream, copy) : new Tee(outputStream, copy);
+    }
+
+    /**
+     * Queues the complete document for validation, dropping it if the queue has filled.
+     */
+    void submit() {
+      PdfConformanceVerifier.this.submit(copy.toByteArray(), conformanceLevel);
+    }
+  }
+
+  /**
+   * Writes to an output stream and to the copy of a sample.
+   */
+  private static class Tee extends OutputStream {
+    private final OutputStream outputStream;
+    private final ByteArrayOutputStream copy;
+
+    Tee(final OutputStream outputStream, final ByteArrayOutputStream copy) {
+      this.outputStream = outputStream;
+      this.copy = copy;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      outputStream.write(b);
+      copy.write(b);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length)
+        throws IOException {
+      outputStream.write(bytes, offset, length);
+      copy.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      outputStream.close();
+    }
+  }
+
+  /**
+   * Writes to an output stream in memory and to the copy of a sample.
+   */
+  private static final class InMemoryTee extends Tee implements InMemoryOutput {
+    InMemoryTee(final OutputStream outputStream, final ByteArrayOutputStream copy) {
+      super(outputStream, copy);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * How much memory PDFBox may use for the pages, fonts and images of a single document
+ * before spilling them to a temporary file, for documents too large to hold on the heap.
+ * The temporary file is created only once the budget is exceeded and is deleted when
+ * the render ends, whether or not it succeeded.
+ * Instances are immutable and can be shared between threads.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfMemoryBudget {
+
+  private final long maximumBytes;
+  private final Path tempDirectory;
+
+  private PdfMemoryBudget(final long maximumBytes, final Path tempDirectory) {
+    this.maximumBytes = maximumBytes;
+    this.tempDirectory = tempDirectory;
+  }
+
+  /**
+   * Returns a budget spilling to the default temporary directory.
+   *
+   * @param maximumBytes the memory held before spilling, 0 to spill everything
+   * @return the memory budget
+   */
+  public static PdfMemoryBudget of(final long maximumBytes) {
+    return new PdfMemoryBudget(checked(maximumBytes), null);
+  }
+
+  /**
+   * Returns a budget spilling to the given directory.
+   *
+   * @param maximumBytes  the memory held before spilling, 0 to spill everything
+   * @param tempDirectory the existing directory temporary files are created in
+   * @return the memory budget
+   */
+  public static PdfMemoryBudget of(final long maximumBytes, final Path tempDirectory) {
+    if (!Files.isDirectory(Objects.requireNonNull(tempDirectory,
+        "Temporary directory must not be null"))) {
+      throw new IllegalArgumentException(
+          String.format("Temporary directory '%s' is not a directory", tempDirectory));
+    }
+    return new PdfMemoryBudget(checked(maximumBytes), tempDirectory);
+  }
+
+  /**
+   * Returns the memory held before spilling.
+   *
+   * @return the maximum bytes
+   */
+  public long getMaximumBytes() {
+    return maximumBytes;
+  }
+
+  /**
+   * Returns the directory temporary files are created in, or null for the default.
+   *
+   * @return the temporary directory
+   */
+  public Path getTempDirectory() {
+    return tempDirectory;
+  }
+
+  /**
+   * Returns a new PDFBox setting for one document, the settings are not safe to share.
+   */
+  MemoryUsageSetting toMemoryUsageSetting() {
+    final MemoryUsageSetting setting = maximumBytes == 0
+        ? MemoryUsageSetting.setupTempFileOnly()
+        : MemoryUsageSetting.setupMixed(maximumBytes);
+    return tempDirectory == null ? setting : setting.setTempDir(tempDirectory.toFile());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d bytes spilling to %s", maximumBytes,
+        tempDirectory == null ? "the default temporary directory" : tempDirectory);
+  }
+
+  private static long checked(final long maximumBytes) {
+    if (maximumBytes < 0) {
+      throw new IllegalArgumentException("Memory budget must not be negative");
+    }
+    return maximumBytes;
+  }
+}
@@ -0,0 +1,57 @@
+package uk.gov.dwp.pdf.generator;
+
+/**
+ * What is done to make each pdf smaller once it is painted and before it is written.
+ * Every optimisation shares identical images and recompresses streams at the highest
+ * compression level, which changes nothing drawn. Images can also be downsampled to
+ * a maximum resolution at the size they are drawn, which loses detail only beyond it.
+ * Documents keep their conformance level, nothing is added that it does not allow.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class PdfOptimisation {
+
+  private static final PdfOptimisation LOSSLESS = new PdfOptimisation(0);
+
+  private final int maximumDpi;
+
+  private PdfOptimisation(final int maximumDpi) {
+    this.maximumDpi = maximumDpi;
+  }
+
+  /**
+   * Returns the optimisation that shares identical images and recompresses streams only.
+   *
+   * @return the lossless optimisation
+   */
+  public static PdfOptimisation lossless() {
+    return LOSSLESS;
+  }
+
+  /**
+   * Returns the optimisation that also downsamples images drawn at more than the resolution,
+   * in dots per inch, to it. Jpeg images are encoded as jpegs again, others losslessly.
+   *
+   * @param maximumDpi the highest resolution images are kept at
+   * @return the downsampling optimisation
+   */
+  public static PdfOptimisation downsamplingTo(final int maximumDpi) {
+    if (maximumDpi < 1) {
+      throw new IllegalArgumentException("Maximum image resolution must be at least 1 dpi");
+    }
+    return new PdfOptimisation(maximumDpi);
+  }
+
+  /**
+   * Returns the highest resolution images are kept at.
+   *
+   * @return the maximum dpi, or 0 if images are not downsampled
+   */
+  public int getMaximumDpi() {
+    return maximumDpi;
+  }
+
+  @Override
+  public String toString() {
+    return maximumDpi == 0 ? "lossless" : "downsampling to " + maximumDpi + "dpi";
+  }
+}
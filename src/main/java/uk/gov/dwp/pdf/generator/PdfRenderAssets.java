@@ -0,0 +1,247 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The colour profile, parsed fonts, conformance level, how the fonts are embedded,
+ * the memory budget, whether the output is pinned, whether the html is checked
+ * before rendering, how the output is optimised, the limits of each render and the
+ * verifier sampling the output, used to render a document.
+ * Instances are immutable and can be shared between threads.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class PdfRenderAssets {
+
+  private final byte[] colourProfile;
+  private final Map<String, TrueTypeFont> fonts;
+  private final PdfConformanceLevel conformanceLevel;
+  private final PdfResourceBundle resourceBundle;
+  private final boolean subsetFonts;
+  private final PdfMemoryBudget memoryBudget;
+  private final DeterministicOutput deterministicOutput;
+  private final boolean preflight;
+  private final PdfOptimisation optimisation;
+  private final PdfRenderLimits limits;
+  private final PdfConformanceVerifier verifier;
+
+  private PdfRenderAssets(final byte[] colourProfile,
+                          final Map<String, TrueTypeFont> fonts,
+                          final PdfConformanceLevel conformanceLevel,
+                          final PdfResourceBundle resourceBundle,
+                          final boolean subsetFonts,
+                          final PdfMemoryBudget memoryBudget,
+                          final DeterministicOutput deterministicOutput,
+                          final boolean preflight,
+                          final PdfOptimisation optimisation,
+                          final PdfRenderLimits limits,
+                          final PdfConformanceVerifier verifier) {
+    this.colourProfile = colourProfile;
+    this.fonts = Collections.unmodifiableMap(fonts);
+    this.conformanceLevel = conformanceLevel;
+    this.resourceBundle = resourceBundle;
+    this.subsetFonts = subsetFonts;
+    this.memoryBudget = memoryBudget;
+    this.deterministicOutput = deterministicOutput;
+    this.preflight = preflight;
+    this.optimisation = optimisation;
+    this.limits = limits;
+    this.verifier = verifier;
+  }
+
+  /**
+   * Validates the conformance level and resolves every font in the font map from the font cache.
+   * Fonts are subset, which every conformance level allows; PDFBox adds the CIDSet PDF/A-1
+   * requires of subset fonts.
+   * The colour profile is held by reference, callers retaining it must pass a copy.
+   */
+  static PdfRenderAssets prepare(final byte[] colourProfile,
+                                 final Map<String, byte[]> fontMap,
+                                 final PdfConformanceLevel conformanceLevel,
+                                 final FontCache fontCache) throws IOException {
+
+    final PdfConformanceLevel level = Optional.ofNullable(conformanceLevel)
+        .orElseThrow(() -> new IllegalArgumentException("Conformance level must not be null"));
+
+    final Map<String, TrueTypeFont> fonts = new LinkedHashMap<>();
+    for (final Map.Entry<String, byte[]> entry : Objects.requireNonNull(fontMap).entrySet()) {
+      fonts.put(entry.getKey(), fontCache.get(entry.getKey(), entry.getValue()));
+    }
+
+    return new PdfRenderAssets(colourProfile, fonts, level, null,
+        true, null, null, false, null, null, null);
+  }
+
+  /**
+   * Returns these assets with relative references resolved against the resource bundle.
+   * Unless the conformance level is NONE, the fonts requested by the stylesheets
+   * in the bundle are checked against the font map here, once.
+   */
+  PdfRenderAssets withResourceBundle(final PdfResourceBundle bundle)
+      throws PdfaGeneratorException {
+
+    if (conformanceLevel != PdfConformanceLevel.NONE) {
+      for (final Map.Entry<String, byte[]> resource : bundle.getResources().entrySet()) {
+        if (resource.getKey().toLowerCase(Locale.ROOT).endsWith(".css")) {
+          final FontFamilyScanner scanner = new FontFamilyScanner(getFontFamilies());
+          scanner.acceptStylesheet(new String(resource.getValue(), StandardCharsets.UTF_8));
+          if (scanner.getMissingDeclaration() != null) {
+            throw new PdfaGeneratorException(String.format(
+                "stylesheet %s requests %s. It is not passed in the font map, cannot encode.",
+                resource.getKey(), scanner.getMissingDeclaration()));
+          }
+        }
+      }
+    }
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, bundle, subsetFonts,
+        memoryBudget, deterministicOutput, preflight, optimisation, limits,
+        verifier);
+  }
+
+  /**
+   * Returns these assets with the fonts embedded whole or subset to the glyphs each document uses.
+   */
+  PdfRenderAssets withSubsetFonts(final boolean subset) {
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, resourceBundle, subset,
+        memoryBudget, deterministicOutput, preflight, optimisation, limits,
+        verifier);
+  }
+
+  /**
+   * Returns these assets with documents spilling to temporary files beyond the memory budget.
+   */
+  PdfRenderAssets withMemoryBudget(final PdfMemoryBudget budget) {
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, resourceBundle,
+        subsetFonts, budget, deterministicOutput, preflight, optimisation, limits,
+        verifier);
+  }
+
+  /**
+   * Returns these assets with the dates and ID of every document pinned.
+   */
+  PdfRenderAssets withDeterministicOutput(final DeterministicOutput deterministic) {
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, resourceBundle,
+        subsetFonts, memoryBudget, deterministic, preflight, optimisation, limits,
+        verifier);
+  }
+
+  /**
+   * Returns these assets with the html of every document checked as it is parsed.
+   */
+  PdfRenderAssets withPreflight(final boolean check) {
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, resourceBundle,
+        subsetFonts, memoryBudget, deterministicOutput, check, optimisation, limits,
+        verifier);
+  }
+
+  /**
+   * Returns these assets with every document optimised before it is written.
+   */
+  PdfRenderAssets withOptimisation(final PdfOptimisation optimise) {
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, resourceBundle,
+        subsetFonts, memoryBudget, deterministicOutput, preflight, optimise, limits, verifier);
+  }
+
+  /**
+   * Returns these assets with every render stopped once it breaches the limits.
+   */
+  PdfRenderAssets withLimits(final PdfRenderLimits renderLimits) {
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, resourceBundle,
+        subsetFonts, memoryBudget, deterministicOutput, preflight, optimisation, renderLimits,
+        verifier);
+  }
+
+  /**
+   * Returns these assets with a sample of documents validated by the verifier.
+   */
+  PdfRenderAssets withVerifier(final PdfConformanceVerifier conformanceVerifier) {
+    return new PdfRenderAssets(colourProfile, fonts, conformanceLevel, resourceBundle,
+        subsetFonts, memoryBudget, deterministicOutput, preflight, optimisation, limits,
+        conformanceVerifier);
+  }
+
+  byte[] getColourProfile() {
+    return colourProfile;
+  }
+
+  Map<String, TrueTypeFont> getFonts() {
+    return fonts;
+  }
+
+  Set<String> getFontFamilies() {
+    return fonts.keySet();
+  }
+
+  PdfConformanceLevel getConformanceLevel() {
+    return conformanceLevel;
+  }
+
+  /**
+   * Returns whether only the glyphs used by a document are embedded, rather than whole fonts.
+   */
+  boolean isSubsetFonts() {
+    return subsetFonts;
+  }
+
+  /**
+   * Returns the resource bundle relative references are resolved against, if any.
+   */
+  PdfResourceBundle getResourceBundle() {
+    return resourceBundle;
+  }
+
+  /**
+   * Returns how the dates and ID of each document are pinned, if they are.
+   */
+  DeterministicOutput getDeterministicOutput() {
+    return deterministicOutput;
+  }
+
+  /**
+   * Returns whether the html is checked by a {@link PreflightFilter} as it is parsed.
+   */
+  boolean isPreflight() {
+    return preflight;
+  }
+
+  /**
+   * Returns how each document is optimised before it is written, if it is.
+   */
+  PdfOptimisation getOptimisation() {
+    return optimisation;
+  }
+
+  /**
+   * Returns the limits each render is stopped at, if there are any.
+   */
+  PdfRenderLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * Returns the verifier sampling the documents rendered, if there is one.
+   */
+  PdfConformanceVerifier getVerifier() {
+    return verifier;
+  }
+
+  /**
+   * Returns a new empty document for the renderer to write into, spilling to a temporary
+   * file beyond the memory budget if there is one. The caller must close it.
+   */
+  PDDocument newDocument() {
+    return memoryBudget == null
+        ? new PDDocument() : new PDDocument(memoryBudget.toMemoryUsageSetting());
+  }
+}
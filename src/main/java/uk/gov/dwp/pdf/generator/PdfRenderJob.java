@@ -0,0 +1,57 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.util.Objects;
+
+/**
+ * A single document in a batch, identified so its result can be matched back to it.
+ */
+public final class PdfRenderJob {
+
+  private final String id;
+  private final HtmlSource html;
+
+  private PdfRenderJob(final String id, final HtmlSource html) {
+    this.id = Objects.requireNonNull(id, "Job id must not be null");
+    this.html = Objects.requireNonNull(html, "Job html must not be null");
+  }
+
+  /**
+   * Returns a job rendering the html string.
+   *
+   * @param id   the identifier reported with the result
+   * @param html the input html
+   * @return the render job
+   */
+  public static PdfRenderJob of(final String id, final String html) {
+    return new PdfRenderJob(id, HtmlSource.of(html));
+  }
+
+  /**
+   * Returns a job rendering the html source.
+   *
+   * @param id   the identifier reported with the result
+   * @param html the input html
+   * @return the render job
+   */
+  public static PdfRenderJob of(final String id, final HtmlSource html) {
+    return new PdfRenderJob(id, html);
+  }
+
+  /**
+   * Returns the identifier reported with the result.
+   *
+   * @return the job id
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Returns the html rendered by the job.
+   *
+   * @return the html source
+   */
+  public HtmlSource getHtml() {
+    return html;
+  }
+}
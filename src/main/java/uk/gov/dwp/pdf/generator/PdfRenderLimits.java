@@ -0,0 +1,132 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The most a single render may take: a wall-clock deadline, a page count, a length of html
+ * and a number of pixels for any one image. A render breaching one is stopped with a
+ * {@link uk.gov.dwp.pdf.exception.PdfRenderLimitException}, so a pathological document
+ * cannot hold a render thread or the heap for long. Each limit is unset by default.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class PdfRenderLimits {
+
+  private static final PdfRenderLimits NONE = new PdfRenderLimits(null, 0, 0, 0);
+
+  private final Duration deadline;
+  private final int maximumPages;
+  private final long maximumInputLength;
+  private final long maximumImagePixels;
+
+  private PdfRenderLimits(final Duration deadline, final int maximumPages,
+                          final long maximumInputLength, final long maximumImagePixels) {
+    this.deadline = deadline;
+    this.maximumPages = maximumPages;
+    this.maximumInputLength = maximumInputLength;
+    this.maximumImagePixels = maximumImagePixels;
+  }
+
+  /**
+   * Returns the limits with nothing limited, to set each limit on.
+   *
+   * @return the unset limits
+   */
+  public static PdfRenderLimits none() {
+    return NONE;
+  }
+
+  /**
+   * Returns these limits stopping any render still running the duration after it started.
+   * Renders are stopped as they parse, lay out text, and start each page.
+   *
+   * @param deadline the longest a render may take
+   * @return the new limits
+   */
+  public PdfRenderLimits withDeadline(final Duration deadline) {
+    if (Objects.requireNonNull(deadline, "Deadline must not be null").isNegative()
+        || deadline.isZero()) {
+      throw new IllegalArgumentException("Deadline must be positive");
+    }
+    return new PdfRenderLimits(deadline, maximumPages, maximumInputLength, maximumImagePixels);
+  }
+
+  /**
+   * Returns these limits stopping any document laid out to more than the number of pages,
+   * before any page is painted.
+   *
+   * @param maximumPages the most pages a document may have
+   * @return the new limits
+   */
+  public PdfRenderLimits withMaximumPages(final int maximumPages) {
+    return new PdfRenderLimits(deadline, Arguments.positive(maximumPages, "Maximum pages"),
+        maximumInputLength, maximumImagePixels);
+  }
+
+  /**
+   * Returns these limits stopping any document of more than the number of characters of html,
+   * as soon as it is read past it.
+   *
+   * @param maximumInputLength the most characters of html a document may have
+   * @return the new limits
+   */
+  public PdfRenderLimits withMaximumInputLength(final long maximumInputLength) {
+    return new PdfRenderLimits(deadline, maximumPages,
+        Arguments.positive(maximumInputLength, "Maximum input length"), maximumImagePixels);
+  }
+
+  /**
+   * Returns these limits stopping any document with an embedded or bundled image of more than
+   * the number of pixels, read from the image header before the image is decoded.
+   *
+   * @param maximumImagePixels the most pixels, width times height, any one image may have
+   * @return the new limits
+   */
+  public PdfRenderLimits withMaximumImagePixels(final long maximumImagePixels) {
+    return new PdfRenderLimits(deadline, maximumPages, maximumInputLength,
+        Arguments.positive(maximumImagePixels, "Maximum image pixels"));
+  }
+
+  /**
+   * Returns the longest a render may take.
+   *
+   * @return the deadline, or null if renders are not timed
+   */
+  public Duration getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Returns the most pages a document may have.
+   *
+   * @return the maximum pages, or 0 if pages are not limited
+   */
+  public int getMaximumPages() {
+    return maximumPages;
+  }
+
+  /**
+   * Returns the most characters of html a document may have.
+   *
+   * @return the maximum input length, or 0 if it is not limited
+   */
+  public long getMaximumInputLength() {
+    return maximumInputLength;
+  }
+
+  /**
+   * Returns the most pixels any one image may have.
+   *
+   * @return the maximum image pixels, or 0 if they are not limited
+   */
+  public long getMaximumImagePixels() {
+    return maximumImagePixels;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("deadline %s, %d pages, %d characters and %d image pixels at most",
+        deadline == null ? "none" : deadline.toMillis() + "ms", maximumPages, maximumInputLength,
+        maximumImagePixels);
+  }
+}
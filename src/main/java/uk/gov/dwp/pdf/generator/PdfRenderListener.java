@@ -0,0 +1,35 @@
+package uk.gov.dwp.pdf.generator;
+
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+/**
+ * Receives the measurements of each render, such as to bridge them to a metrics library.
+ * Listeners are called on the rendering thread once the render has finished,
+ * so must be thread safe and should be quick. Exceptions thrown by a listener
+ * are logged and do not fail the render.
+ */
+public interface PdfRenderListener {
+
+  /**
+   * The default listener, ignoring every render.
+   */
+  PdfRenderListener NONE = new PdfRenderListener() {
+  };
+
+  /**
+   * Called once a pdf has been written.
+   *
+   * @param metrics the measurements of the render
+   */
+  default void onRendered(PdfRenderMetrics metrics) {
+  }
+
+  /**
+   * Called when a render fails, with the measurements of the phases completed before it failed.
+   *
+   * @param metrics the measurements of the render
+   * @param failure the failure
+   */
+  default void onFailed(PdfRenderMetrics metrics, PdfaGeneratorException failure) {
+  }
+}
@@ -0,0 +1,142 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * The measurements of a single render: the time spent in each phase, the size of the html
+ * and the pdf, the number of pages and the bytes saved by optimisation. Measurements not taken,
+ * such as the output size of a failed render, are -1.
+ * Each render has its own instance, written only by the rendering thread.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfRenderMetrics {
+
+  private static final PdfRenderPhase[] PHASES = PdfRenderPhase.values();
+
+  private final PdfConformanceLevel conformanceLevel;
+  private final long[] phaseNanos = new long[PHASES.length];
+  private long mark = System.nanoTime();
+  private long inputLength = -1;
+  private long outputSize = -1;
+  private int pageCount = -1;
+  private long bytesSaved = -1;
+
+  /**
+   * Constructor, starting the clock for the first phase.
+   *
+   * @param conformanceLevel the conformance level rendered to
+   */
+  PdfRenderMetrics(final PdfConformanceLevel conformanceLevel) {
+    this.conformanceLevel = conformanceLevel;
+  }
+
+  /**
+   * Adds the time since the previous phase ended to the phase.
+   */
+  void record(final PdfRenderPhase phase) {
+    final long now = System.nanoTime();
+    phaseNanos[phase.ordinal()] += now - mark;
+    mark = now;
+  }
+
+  void setInputLength(final long inputLength) {
+    this.inputLength = inputLength;
+  }
+
+  void setOutputSize(final long outputSize) {
+    this.outputSize = outputSize;
+  }
+
+  void setPageCount(final int pageCount) {
+    this.pageCount = pageCount;
+  }
+
+  void setBytesSaved(final long bytesSaved) {
+    this.bytesSaved = bytesSaved;
+  }
+
+  /**
+   * Returns the conformance level rendered to.
+   *
+   * @return the conformance level
+   */
+  public PdfConformanceLevel getConformanceLevel() {
+    return conformanceLevel;
+  }
+
+  /**
+   * Returns the time spent in a phase, zero if the render did not reach it.
+   *
+   * @param phase the render phase
+   * @return the phase duration
+   */
+  public Duration getDuration(final PdfRenderPhase phase) {
+    return Duration.ofNanos(phaseNanos[phase.ordinal()]);
+  }
+
+  /**
+   * Returns the time spent in every phase.
+   *
+   * @return the render duration
+   */
+  public Duration getTotalDuration() {
+    long total = 0;
+    for (final long nanos : phaseNanos) {
+      total += nanos;
+    }
+    return Duration.ofNanos(total);
+  }
+
+  /**
+   * Returns the number of characters of html read.
+   *
+   * @return the input length, or -1 if the html was not parsed, as for a compiled template
+   */
+  public long getInputLength() {
+    return inputLength;
+  }
+
+  /**
+   * Returns the number of bytes of pdf written.
+   *
+   * @return the output size
+   */
+  public long getOutputSize() {
+    return outputSize;
+  }
+
+  /**
+   * Returns the number of pages in the pdf.
+   *
+   * @return the page count
+   */
+  public int getPageCount() {
+    return pageCount;
+  }
+
+  /**
+   * Returns the number of bytes the pdf was made smaller by its {@link PdfOptimisation}.
+   *
+   * @return the bytes saved, or -1 if the pdf was not optimised
+   */
+  public long getBytesSaved() {
+    return bytesSaved;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder(160)
+        .append(conformanceLevel)
+        .append(": ").append(inputLength).append(" chars in, ")
+        .append(outputSize).append(" bytes and ").append(pageCount).append(" pages out");
+    if (bytesSaved >= 0) {
+      builder.append(", ").append(bytesSaved).append(" bytes saved");
+    }
+    for (final PdfRenderPhase phase : PHASES) {
+      builder.append(", ").append(phase.name().toLowerCase(Locale.ROOT)).append(' ')
+          .append(phaseNanos[phase.ordinal()] / 1_000_000).append("ms");
+    }
+    return builder.toString();
+  }
+}
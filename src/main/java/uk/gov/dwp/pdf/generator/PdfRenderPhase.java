@@ -0,0 +1,41 @@
+package uk.gov.dwp.pdf.generator;
+
+/**
+ * The phases of a render, in the order they run, timed by {@link PdfRenderMetrics}.
+ */
+public enum PdfRenderPhase {
+  /**
+   * Resolving the colour profile and fonts passed with the html, only for generators
+   * that are not prepared.
+   */
+  PREPARE_ASSETS,
+  /**
+   * Parsing the html, checking the fonts it requests as it is read unless the conformance
+   * level is NONE. Compiled templates are parsed once, so skip this phase.
+   */
+  PARSE,
+  /**
+   * Building the openhtmltopdf renderer, including loading the css.
+   */
+  BUILD_RENDERER,
+  /**
+   * Adding the fonts to the renderer's font resolver.
+   */
+  REGISTER_FONTS,
+  /**
+   * Laying the document out into pages.
+   */
+  LAYOUT,
+  /**
+   * Drawing the laid out pages into the pdf.
+   */
+  PAINT,
+  /**
+   * Making the painted pdf smaller, only for generators with a {@link PdfOptimisation}.
+   */
+  OPTIMISE,
+  /**
+   * Writing the pdf to the output stream.
+   */
+  SERIALISE
+}
@@ -0,0 +1,80 @@
+package uk.gov.dwp.pdf.generator;
+
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.time.Duration;
+
+/**
+ * The outcome of a single render job, either the pdf or the reason it failed.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfRenderResult {
+
+  private final String id;
+  private final byte[] pdf;
+  private final PdfaGeneratorException failure;
+  private final Duration duration;
+
+  private PdfRenderResult(final String id, final byte[] pdf,
+                          final PdfaGeneratorException failure, final Duration duration) {
+    this.id = id;
+    this.pdf = pdf;
+    this.failure = failure;
+    this.duration = duration;
+  }
+
+  static PdfRenderResult success(final String id, final byte[] pdf, final Duration duration) {
+    return new PdfRenderResult(id, pdf, null, duration);
+  }
+
+  static PdfRenderResult failure(final String id, final PdfaGeneratorException failure,
+                                 final Duration duration) {
+    return new PdfRenderResult(id, null, failure, duration);
+  }
+
+  /**
+   * Returns the id of the job this is the result of.
+   *
+   * @return the job id
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Returns true if the pdf was rendered.
+   *
+   * @return whether the job succeeded
+   */
+  public boolean isSuccess() {
+    return failure == null;
+  }
+
+  /**
+   * Returns the rendered pdf.
+   *
+   * @return the pdf, or null if the job failed
+   */
+  @SuppressWarnings("PMD.MethodReturnsInternalArray")
+  public byte[] getPdf() {
+    return pdf;
+  }
+
+  /**
+   * Returns the reason the job failed.
+   *
+   * @return the failure, or null if the job succeeded
+   */
+  public PdfaGeneratorException getFailure() {
+    return failure;
+  }
+
+  /**
+   * Returns how long the render took.
+   *
+   * @return the render duration
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+}
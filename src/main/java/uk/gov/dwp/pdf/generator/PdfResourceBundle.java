@@ -0,0 +1,241 @@
+package uk.gov.dwp.pdf.generator;
+
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.extend.FSStreamFactory;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A named set of stylesheets, images and other resources held in memory and
+ * served to the renderer under the base URI {@code pdf-bundle://<name>/}.
+ * Relative references in the html, such as {@code <link href="css/letter.css"/>},
+ * are resolved against the bundle, so rendering needs no network or file access.
+ * Every resource is loaded when the bundle is built; bundles are immutable and
+ * safe to share between threads.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfResourceBundle {
+
+  static final String PROTOCOL = "pdf-bundle";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PdfResourceBundle.class.getName());
+  private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9.-]*");
+
+  private final String name;
+  private final String baseUri;
+  private final Map<String, byte[]> resources;
+
+  private PdfResourceBundle(final String name, final Map<String, byte[]> resources) {
+    this.name = name;
+    this.baseUri = PROTOCOL + "://" + name + "/";
+    this.resources = Collections.unmodifiableMap(new LinkedHashMap<>(resources));
+  }
+
+  /**
+   * Returns a builder for a bundle with the given name.
+   *
+   * @param name the bundle name, letters, digits, dots and hyphens
+   * @return the bundle builder
+   */
+  public static Builder builder(final String name) {
+    if (name == null || !NAME.matcher(name).matches()) {
+      throw new IllegalArgumentException(String.format(
+          "Resource bundle name '%s' must be letters, digits, dots and hyphens", name));
+    }
+    return new Builder(name);
+  }
+
+  /**
+   * Returns the bundle name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the base URI relative references in the html are resolved against.
+   *
+   * @return the base URI
+   */
+  public String getBaseUri() {
+    return baseUri;
+  }
+
+  /**
+   * Returns the paths of the resources in the bundle.
+   *
+   * @return the resource paths
+   */
+  public Set<String> getPaths() {
+    return resources.keySet();
+  }
+
+  /**
+   * Returns the resources of the bundle by path.
+   */
+  Map<String, byte[]> getResources() {
+    return resources;
+  }
+
+  /**
+   * Resolves the document against the bundle and serves its resources from memory,
+   * checking each against the image limit of the render.
+   */
+  void imposeOn(final PdfRendererBuilder pdfBuilder, final RenderBudget budget) {
+    final FSStreamFactory streamFactory = uri -> open(uri, budget);
+    pdfBuilder.useProtocolsStreamImplementation(streamFactory, PROTOCOL);
+  }
+
+  private FSStream open(final String uri, final RenderBudget budget) {
+    byte[] resource = null;
+    try {
+      final URI resolved = new URI(uri).normalize();
+      if (name.equals(resolved.getAuthority())) {
+        resource = resources.get(normalise(resolved.getPath()));
+      }
+    } catch (URISyntaxException e) {
+      LOGGER.debug("invalid bundle uri '{}': {}", uri, e.getMessage());
+    }
+    if (resource == null) {
+      LOGGER.warn("resource '{}' is not in bundle '{}'", uri, name);
+    } else {
+      budget.checkImage(resource);
+    }
+
+    final byte[] content = resource;
+    return new FSStream() {
+      @Override
+      public InputStream getStream() {
+        return content == null ? null : new ByteArrayInputStream(content);
+      }
+
+      @Override
+      public Reader getReader() {
+        return content == null ? null : new InputStreamReader(getStream(), StandardCharsets.UTF_8);
+      }
+    };
+  }
+
+  private static String normalise(final String path) {
+    String normalised = path == null ? "" : path;
+    while (normalised.startsWith("/")) {
+      normalised = normalised.substring(1);
+    }
+    return normalised;
+  }
+
+  /**
+   * Builder for a resource bundle, loading each resource as it is added.
+   */
+  public static final class Builder {
+    private final String name;
+    private final Map<String, byte[]> resources = new LinkedHashMap<>();
+
+    private Builder(final String name) {
+      this.name = name;
+    }
+
+    /**
+     * Adds a resource held in memory.
+     *
+     * @param path  the path the resource is referenced by, relative to the base URI
+     * @param bytes the resource content
+     * @return this builder
+     */
+    public Builder add(final String path, final byte[] bytes) {
+      resources.put(pathOf(path), Objects.requireNonNull(bytes, "Resource bytes must not be null")
+          .clone());
+      return this;
+    }
+
+    /**
+     * Adds a resource read from a file.
+     *
+     * @param path the path the resource is referenced by, relative to the base URI
+     * @param file the file the resource is read from
+     * @return this builder
+     * @throws IOException if the file cannot be read
+     */
+    public Builder add(final String path, final Path file) throws IOException {
+      resources.put(pathOf(path), Files.readAllBytes(file));
+      return this;
+    }
+
+    /**
+     * Adds a resource read from the classpath.
+     *
+     * @param path         the path the resource is referenced by, relative to the base URI
+     * @param resourceName the name of the classpath resource
+     * @return this builder
+     * @throws IOException if the resource cannot be found or read
+     */
+    public Builder addClasspathResource(final String path, final String resourceName)
+        throws IOException {
+      final ClassLoader classLoader = Thread.currentThread().getContextClassLoader() == null
+          ? PdfResourceBundle.class.getClassLoader()
+          : Thread.currentThread().getContextClassLoader();
+
+      try (InputStream inputStream = classLoader.getResourceAsStream(resourceName)) {
+        if (inputStream == null) {
+          throw new FileNotFoundException(
+              String.format("classpath resource '%s' not found", resourceName));
+        }
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+          content.write(buffer, 0, count);
+        }
+        resources.put(pathOf(path), content.toByteArray());
+      }
+      return this;
+    }
+
+    /**
+     * Returns the immutable bundle.
+     *
+     * @return the resource bundle
+     */
+    public PdfResourceBundle build() {
+      return new PdfResourceBundle(name, resources);
+    }
+
+    private static String pathOf(final String path) {
+      final String normalised;
+      try {
+        normalised = normalise(new URI(null, null,
+            Objects.requireNonNull(path, "Resource path must not be null"), null)
+            .normalize().getPath());
+      } catch (URISyntaxException e) {
+        throw new IllegalArgumentException(e.getMessage(), e);
+      }
+
+      if (normalised.isEmpty() || normalised.startsWith("..")) {
+        throw new IllegalArgumentException(
+            String.format("Resource path '%s' must be relative to the bundle", path));
+      }
+      return normalised;
+    }
+  }
+}
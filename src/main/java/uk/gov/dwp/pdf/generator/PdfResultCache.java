@@ -0,0 +1,278 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of rendered pdfs keyed by a hash of everything that went into them: the html,
+ * colour profile, fonts, conformance level, resource bundle and document date.
+ * A bounded in-memory tier holds the most recently used pdfs, and an optional bounded
+ * directory on local disk holds more, surviving restarts.
+ * Only generators with deterministic output can use a cache, see
+ * {@link HtmlToPdfGeneratorBuilder#deterministic}, so a cached pdf is byte for byte
+ * the pdf a render would have produced.
+ * The html is still read within the generator's {@link PdfRenderLimits}, and cached pdfs
+ * are reported to its {@link PdfRenderListener} as renders with no pages measured.
+ * Caches are safe to share between threads and between generators.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfResultCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PdfResultCache.class.getName());
+  private static final String SUFFIX = ".pdf";
+
+  private final long maximumBytes;
+  private final Path directory;
+  private final long maximumDiskBytes;
+  private final Map<String, byte[]> results = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong diskHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private long bytes;
+  private long diskBytes;
+
+  /**
+   * Constructor for a cache held in memory only.
+   *
+   * @param maximumBytes the maximum memory, in bytes, held by cached pdfs
+   */
+  public PdfResultCache(final long maximumBytes) {
+    if (maximumBytes < 1) {
+      throw new IllegalArgumentException("Result cache size must be at least 1 byte");
+    }
+    this.maximumBytes = maximumBytes;
+    this.directory = null;
+    this.maximumDiskBytes = 0;
+  }
+
+  /**
+   * Constructor for a cache held in memory and in a directory on local disk.
+   * Pdfs already in the directory, from an earlier process, are served from it.
+   *
+   * @param maximumBytes     the maximum memory, in bytes, held by cached pdfs
+   * @param directory        the existing directory cached pdfs are written to
+   * @param maximumDiskBytes the maximum disk space, in bytes, used by cached pdfs
+   * @throws IOException if the directory cannot be read
+   */
+  public PdfResultCache(final long maximumBytes, final Path directory,
+                        final long maximumDiskBytes) throws IOException {
+    if (maximumBytes < 1) {
+      throw new IllegalArgumentException("Result cache size must be at least 1 byte");
+    }
+    if (maximumDiskBytes < 1) {
+      throw new IllegalArgumentException("Disk cache size must be at least 1 byte");
+    }
+    if (!Files.isDirectory(Objects.requireNonNull(directory,
+        "Cache directory must not be null"))) {
+      throw new IllegalArgumentException(
+          String.format("Cache directory '%s' is not a directory", directory));
+    }
+    this.maximumBytes = maximumBytes;
+    this.directory = directory;
+    this.maximumDiskBytes = maximumDiskBytes;
+
+    for (final Path file : cachedFiles()) {
+      diskBytes += Files.size(file);
+    }
+  }
+
+  /**
+   * Returns the cached pdf with the key, looking in memory and then on disk,
+   * or null if it is not cached. The returned bytes are shared and must not be modified.
+   */
+  byte[] get(final String key) {
+    synchronized (results) {
+      final byte[] pdf = results.get(key);
+      if (pdf != null) {
+        hits.incrementAndGet();
+        return pdf;
+      }
+    }
+
+    if (directory != null) {
+      final Path file = directory.resolve(key + SUFFIX);
+      try {
+        final byte[] pdf = Files.readAllBytes(file);
+        // touched, so the disk tier evicts the least recently used pdfs
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        diskHits.incrementAndGet();
+        putInMemory(key, pdf);
+        return pdf;
+
+      } catch (NoSuchFileException e) {
+        LOGGER.trace("{} not cached on disk", key);
+      } catch (IOException e) {
+        LOGGER.warn("cannot read cached pdf {}: {}", file, e.getMessage());
+      }
+    }
+
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Caches the pdf under the key, in memory and, if there is one, on disk.
+   * The bytes are held by reference and must not be modified afterwards.
+   */
+  void put(final String key, final byte[] pdf) {
+    putInMemory(key, pdf);
+
+    if (directory != null && pdf.length <= maximumDiskBytes) {
+      final Path file = directory.resolve(key + SUFFIX);
+      try {
+        // written aside and moved into place, so a reader never sees a partial pdf
+        final Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+          Files.write(temporary, pdf);
+          Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          Files.deleteIfExists(temporary);
+        }
+        synchronized (this) {
+          diskBytes += pdf.length;
+          if (diskBytes > maximumDiskBytes) {
+            evictFromDisk();
+          }
+        }
+
+      } catch (IOException e) {
+        LOGGER.warn("cannot write cached pdf {}: {}", file, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns the number of pdfs currently held in memory.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    synchronized (results) {
+      return results.size();
+    }
+  }
+
+  /**
+   * Returns the memory, in bytes, held by the cached pdfs.
+   *
+   * @return the cached bytes
+   */
+  public long bytes() {
+    synchronized (results) {
+      return bytes;
+    }
+  }
+
+  /**
+   * Returns the number of lookups served from memory.
+   *
+   * @return the hit count
+   */
+  public long hitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of lookups served from disk.
+   *
+   * @return the disk hit count
+   */
+  public long diskHitCount() {
+    return diskHits.get();
+  }
+
+  /**
+   * Returns the number of lookups that required the pdf to be rendered.
+   *
+   * @return the miss count
+   */
+  public long missCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of pdfs evicted from memory to keep the cache within its maximum size.
+   *
+   * @return the eviction count
+   */
+  public long evictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Removes every pdf from memory. Pdfs on disk are left in place.
+   */
+  public void clear() {
+    synchronized (results) {
+      results.clear();
+      bytes = 0;
+    }
+  }
+
+  private void putInMemory(final String key, final byte[] pdf) {
+    if (pdf.length > maximumBytes) {
+      return;
+    }
+    synchronized (results) {
+      final byte[] previous = results.put(key, pdf);
+      bytes += pdf.length - (previous == null ? 0 : previous.length);
+
+      final Iterator<byte[]> eldest = results.values().iterator();
+      while (bytes > maximumBytes && eldest.hasNext()) {
+        bytes -= eldest.next().length;
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private void evictFromDisk() throws IOException {
+    final List<Path> files = cachedFiles();
+    final Map<Path, FileTime> modified = new LinkedHashMap<>();
+    for (final Path file : files) {
+      modified.put(file, Files.getLastModifiedTime(file));
+    }
+    files.sort((first, second) -> modified.get(first).compareTo(modified.get(second)));
+
+    long total = 0;
+    for (final Path file : files) {
+      total += Files.size(file);
+    }
+    for (final Iterator<Path> eldest = files.iterator();
+         total > maximumDiskBytes && eldest.hasNext(); ) {
+      final Path file = eldest.next();
+      final long size = Files.size(file);
+      if (Files.deleteIfExists(file)) {
+        total -= size;
+      }
+    }
+    diskBytes = total;
+  }
+
+  private List<Path> cachedFiles() throws IOException {
+    final List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (final Path file : stream) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+}
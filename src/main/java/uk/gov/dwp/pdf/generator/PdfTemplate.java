@@ -0,0 +1,210 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An xhtml template parsed and font checked once, then rendered many times with different values.
+ * Placeholders of the form <code>${name}</code> in text and attribute values are replaced with
+ * the values supplied to each render. Values are inserted as text, so markup in a value is
+ * escaped rather than parsed.
+ * Templates are immutable and safe to share between threads.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+public final class PdfTemplate {
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z0-9_.-]+)}");
+  private static final String STYLE = "style";
+
+  private final HtmlToAccessiblePdfGenerator generator;
+  private final PdfRenderAssets assets;
+  private final Document document;
+  private final List<Binding> bindings;
+  private final Set<String> placeholders;
+
+  private PdfTemplate(final HtmlToAccessiblePdfGenerator generator,
+                      final PdfRenderAssets assets,
+                      final Document document,
+                      final List<Binding> bindings) {
+    this.generator = generator;
+    this.assets = assets;
+    this.document = document;
+    this.bindings = bindings;
+
+    final Set<String> names = new LinkedHashSet<>();
+    for (final Binding binding : bindings) {
+      final Matcher matcher = PLACEHOLDER.matcher(binding.text);
+      while (matcher.find()) {
+        names.add(matcher.group(1));
+      }
+    }
+    this.placeholders = Collections.unmodifiableSet(names);
+  }
+
+  /**
+   * Parses the template, checks its fonts and records where its placeholders are.
+   * Placeholders are not allowed in styles unless the conformance level is NONE,
+   * as the fonts of the template are only checked here.
+   */
+  static PdfTemplate compile(final HtmlToAccessiblePdfGenerator generator,
+                             final PdfRenderAssets assets,
+                             final HtmlSource template) throws PdfaGeneratorException {
+
+    final Document document = generator.parse(template, assets);
+    final List<Binding> bindings = new ArrayList<>();
+    findBindings(document, new ArrayList<>(), false, bindings);
+
+    if (assets.getConformanceLevel() != PdfConformanceLevel.NONE) {
+      for (final Binding binding : bindings) {
+        if (binding.inStyle) {
+          throw new PdfaGeneratorException(String.format(
+              "template placeholder in style '%s' is not allowed, "
+                  + "fonts are only checked when the template is compiled", binding.text.trim()));
+        }
+      }
+    }
+    return new PdfTemplate(generator, assets, document, bindings);
+  }
+
+  /**
+   * Returns the names of the placeholders in the template.
+   *
+   * @return the placeholder names in document order
+   */
+  public Set<String> getPlaceholders() {
+    return placeholders;
+  }
+
+  /**
+   * Returns a pdf rendered from the template with the placeholders replaced by the values.
+   *
+   * @param values the value of each placeholder
+   * @return
+   */
+  public byte[] render(final Map<String, String> values) throws PdfaGeneratorException {
+    try (PooledBuffer outputStream = PdfBufferPool.shared().acquire()) {
+      render(values, outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+
+  /**
+   * Writes a pdf rendered from the template with the placeholders replaced by the values
+   * to the output stream. The stream is flushed but not closed.
+   *
+   * @param values       the value of each placeholder
+   * @param outputStream The stream the pdf is written to
+   */
+  public void render(final Map<String, String> values, final OutputStream outputStream)
+      throws PdfaGeneratorException {
+
+    for (final String name : placeholders) {
+      if (values.get(name) == null) {
+        throw new PdfaGeneratorException(
+            String.format("no value supplied for template placeholder '%s'", name));
+      }
+    }
+
+    final Document copy;
+    // the dom is not safe for concurrent reads, nodes cache their children lazily
+    synchronized (document) {
+      copy = (Document) document.cloneNode(true);
+    }
+    for (final Binding binding : bindings) {
+      binding.bind(copy, values);
+    }
+
+    generator.createPdfDocument(copy, assets, outputStream);
+  }
+
+  private static void findBindings(final Node node, final List<Integer> path,
+                                   final boolean inStyle, final List<Binding> bindings) {
+    if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+      if (PLACEHOLDER.matcher(node.getNodeValue()).find()) {
+        bindings.add(new Binding(toArray(path), null, node.getNodeValue(), inStyle));
+      }
+      return;
+    }
+
+    if (node.getNodeType() == Node.ELEMENT_NODE) {
+      final NamedNodeMap attributes = node.getAttributes();
+      for (int i = 0; i < attributes.getLength(); i++) {
+        final Attr attribute = (Attr) attributes.item(i);
+        if (PLACEHOLDER.matcher(attribute.getValue()).find()) {
+          bindings.add(new Binding(toArray(path), attribute.getName(), attribute.getValue(),
+              STYLE.equalsIgnoreCase(attribute.getName())));
+        }
+      }
+    }
+
+    final boolean styleElement = inStyle
+        || node.getNodeType() == Node.ELEMENT_NODE && STYLE.equalsIgnoreCase(node.getNodeName());
+    final NodeList children = node.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      path.add(i);
+      findBindings(children.item(i), path, styleElement, bindings);
+      path.remove(path.size() - 1);
+    }
+  }
+
+  private static int[] toArray(final List<Integer> path) {
+    final int[] array = new int[path.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = path.get(i);
+    }
+    return array;
+  }
+
+  /**
+   * A text node or attribute containing placeholders, located by its child index path.
+   */
+  private static final class Binding {
+    private final int[] path;
+    private final String attributeName;
+    private final String text;
+    private final boolean inStyle;
+
+    Binding(final int[] path, final String attributeName, final String text,
+            final boolean inStyle) {
+      this.path = path;
+      this.attributeName = attributeName;
+      this.text = text;
+      this.inStyle = inStyle;
+    }
+
+    void bind(final Document copy, final Map<String, String> values) {
+      Node node = copy;
+      for (final int index : path) {
+        node = node.getChildNodes().item(index);
+      }
+
+      final Matcher matcher = PLACEHOLDER.matcher(text);
+      final StringBuffer bound = new StringBuffer(text.length());
+      while (matcher.find()) {
+        matcher.appendReplacement(bound, Matcher.quoteReplacement(values.get(matcher.group(1))));
+      }
+      matcher.appendTail(bound);
+
+      if (attributeName == null) {
+        node.setNodeValue(bound.toString());
+      } else {
+        ((Element) node).setAttribute(attributeName, bound.toString());
+      }
+    }
+  }
+}
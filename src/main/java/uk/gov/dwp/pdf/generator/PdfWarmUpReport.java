@@ -0,0 +1,57 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The outcome of warming up the generator, see {@link HtmlToPdfFactory#warmUp}.
+ */
+public final class PdfWarmUpReport {
+
+  private final Map<PdfConformanceLevel, Duration> levelDurations;
+  private final int documentCount;
+  private final Duration duration;
+
+  PdfWarmUpReport(final Map<PdfConformanceLevel, Duration> levelDurations,
+                  final int documentCount,
+                  final Duration duration) {
+    this.levelDurations = Collections.unmodifiableMap(new EnumMap<>(levelDurations));
+    this.documentCount = documentCount;
+    this.duration = duration;
+  }
+
+  /**
+   * Returns the time spent warming up each conformance level, including preparing its generator.
+   *
+   * @return the duration of each level
+   */
+  public Map<PdfConformanceLevel, Duration> getLevelDurations() {
+    return levelDurations;
+  }
+
+  /**
+   * Returns the number of documents rendered.
+   *
+   * @return the document count
+   */
+  public int getDocumentCount() {
+    return documentCount;
+  }
+
+  /**
+   * Returns the time the whole warm-up took.
+   *
+   * @return the warm-up duration
+   */
+  public Duration getDuration() {
+    return duration;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("warmed up %s with %d documents in %dms",
+        levelDurations.keySet(), documentCount, duration.toMillis());
+  }
+}
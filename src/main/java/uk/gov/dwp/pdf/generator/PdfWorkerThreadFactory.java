@@ -0,0 +1,45 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names the threads of pools created by the library and makes them daemons,
+ * so a generator that is never closed does not keep the JVM alive.
+ * Background work can be given a lower priority than the renders callers wait on.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class PdfWorkerThreadFactory implements ThreadFactory {
+
+  private final String prefix;
+  private final int priority;
+  private final AtomicInteger count = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param prefix the prefix of each thread name
+   */
+  PdfWorkerThreadFactory(final String prefix) {
+    this(prefix, Thread.NORM_PRIORITY);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param prefix   the prefix of each thread name
+   * @param priority the priority of each thread
+   */
+  PdfWorkerThreadFactory(final String prefix, final int priority) {
+    this.prefix = prefix;
+    this.priority = priority;
+  }
+
+  @Override
+  public Thread newThread(final Runnable runnable) {
+    final Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+    thread.setDaemon(true);
+    thread.setPriority(priority);
+    return thread;
+  }
+}
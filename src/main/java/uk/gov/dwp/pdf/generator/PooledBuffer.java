@@ -0,0 +1,97 @@
+package uk.gov.dwp.pdf.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer taken from a {@link PdfBufferPool}, used in place of a
+ * {@link java.io.ByteArrayOutputStream} so its array can be reused by later renders.
+ * It is taken, written, its bytes copied out, then closed, which returns the array
+ * to the pool. Once closed it can no longer be used. Not safe for use by several threads.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class PooledBuffer extends OutputStream implements InMemoryOutput {
+
+  private final PdfBufferPool pool;
+  private byte[] bytes;
+  private int count;
+  PdfBufferPool.Lease lease;
+
+  /**
+   * Constructor.
+   *
+   * @param pool  the pool the array is returned to
+   * @param bytes the array to write into
+   */
+  PooledBuffer(final PdfBufferPool pool, final byte[] bytes) {
+    this.pool = pool;
+    this.bytes = bytes;
+  }
+
+  @Override
+  public void write(final int value) {
+    ensureCapacity(count + 1);
+    bytes[count++] = (byte) value;
+  }
+
+  @Override
+  public void write(final byte[] source, final int offset, final int length) {
+    if (offset < 0 || length < 0 || offset + length > source.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    ensureCapacity(count + length);
+    System.arraycopy(source, offset, bytes, count, length);
+    count += length;
+  }
+
+  /**
+   * Returns the number of bytes written.
+   */
+  int size() {
+    open();
+    return count;
+  }
+
+  /**
+   * Returns a copy of the bytes written.
+   */
+  byte[] toByteArray() {
+    return Arrays.copyOf(open(), count);
+  }
+
+  /**
+   * Writes the bytes written to the stream, without copying them.
+   */
+  void writeTo(final OutputStream outputStream) throws IOException {
+    outputStream.write(open(), 0, count);
+  }
+
+  /**
+   * Returns the array to the pool. Closing more than once has no effect.
+   */
+  @Override
+  public void close() {
+    if (bytes != null) {
+      final byte[] released = bytes;
+      bytes = null;
+      pool.release(this, released, count);
+    }
+  }
+
+  private byte[] open() {
+    if (bytes == null) {
+      throw new IllegalStateException("pdf buffer used after it was closed");
+    }
+    return bytes;
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (capacity < 0) {
+      throw new OutOfMemoryError("pdf buffer larger than an array");
+    }
+    if (capacity > open().length) {
+      bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+    }
+  }
+}
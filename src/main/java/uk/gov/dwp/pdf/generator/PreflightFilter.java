@@ -0,0 +1,170 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the html as the parser reads it, before anything is rendered, passing every event
+ * on to the document being built so the input is still only read once.
+ * As well as the well formedness checked by the parser itself, it rejects references
+ * to stylesheets and images by relative URL, which cannot be loaded without a resource bundle,
+ * and, above conformance level NONE, raster images without {@code image-rendering: pixelated},
+ * which PDF/A does not allow to be interpolated.
+ * The first problem found stops the parse, reported at its line and column.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class PreflightFilter extends XMLFilterImpl {
+
+  private static final Pattern ABSOLUTE = Pattern.compile("^\\s*[A-Za-z][A-Za-z0-9+.-]*:");
+  private static final Pattern CSS_URL =
+      Pattern.compile("url\\(\\s*(['\"]?)([^'\")]*)\\1\\s*\\)", Pattern.CASE_INSENSITIVE);
+  private static final Pattern PIXELATED =
+      Pattern.compile("image-rendering\\s*:\\s*pixelated", Pattern.CASE_INSENSITIVE);
+  private static final String STYLE = "style";
+
+  private final PdfRenderAssets assets;
+  private final boolean relativeAllowed;
+  private Locator locator;
+  private StringBuilder styleText;
+  private int styleLine;
+  private int styleColumn;
+  private boolean pixelatedStyle;
+  private boolean linkedStylesheet;
+  private int imageLine = -1;
+  private int imageColumn = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param parent the parser reading the html
+   * @param assets the assets the document is rendered with
+   */
+  PreflightFilter(final XMLReader parent, final PdfRenderAssets assets) {
+    super(parent);
+    this.assets = assets;
+    this.relativeAllowed = assets.getResourceBundle() != null;
+    if (relativeAllowed) {
+      for (final Map.Entry<String, byte[]> resource
+          : assets.getResourceBundle().getResources().entrySet()) {
+        if (resource.getKey().toLowerCase(Locale.ROOT).endsWith(".css")
+            && PIXELATED.matcher(new String(resource.getValue(), StandardCharsets.UTF_8)).find()) {
+          pixelatedStyle = true;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void setDocumentLocator(final Locator documentLocator) {
+    this.locator = documentLocator;
+    super.setDocumentLocator(documentLocator);
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName,
+                           final Attributes attributes) throws SAXException {
+    final String name = (localName == null || localName.isEmpty() ? qName : localName)
+        .toLowerCase(Locale.ROOT);
+
+    final String style = attributes.getValue(STYLE);
+    if (style != null) {
+      checkStylesheet(style);
+    }
+
+    if ("img".equals(name)) {
+      final String source = attributes.getValue("src");
+      if (source != null) {
+        checkUrl(source, "image");
+        if (imageLine < 0 && !source.trim().startsWith("data:image/svg")
+            && (style == null || !PIXELATED.matcher(style).find())) {
+          imageLine = line();
+          imageColumn = column();
+        }
+      }
+
+    } else if ("link".equals(name)) {
+      final String href = attributes.getValue("href");
+      if (href != null) {
+        checkUrl(href, "stylesheet");
+        linkedStylesheet |= ABSOLUTE.matcher(href).find();
+      }
+
+    } else if (STYLE.equals(name)) {
+      styleText = new StringBuilder();
+      styleLine = line();
+      styleColumn = column();
+    }
+    super.startElement(uri, localName, qName, attributes);
+  }
+
+  @Override
+  public void characters(final char[] characters, final int start, final int length)
+      throws SAXException {
+    if (styleText != null) {
+      styleText.append(characters, start, length);
+    }
+    super.characters(characters, start, length);
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName)
+      throws SAXException {
+    if (styleText != null) {
+      final String stylesheet = styleText.toString();
+      styleText = null;
+      pixelatedStyle |= PIXELATED.matcher(stylesheet).find();
+      try {
+        checkStylesheet(stylesheet);
+      } catch (SAXParseException e) {
+        throw new SAXParseException(e.getMessage(), null, null, styleLine, styleColumn);
+      }
+    }
+    super.endElement(uri, localName, qName);
+  }
+
+  @Override
+  public void endDocument() throws SAXException {
+    // a stylesheet fetched by url may set it, so only what can be seen is enforced
+    if (assets.getConformanceLevel() != PdfConformanceLevel.NONE
+        && imageLine >= 0 && !pixelatedStyle && !linkedStylesheet) {
+      throw new SAXParseException(String.format("image without 'image-rendering: pixelated', "
+              + "conformance level %s does not allow images to be interpolated",
+          assets.getConformanceLevel()), null, null, imageLine, imageColumn);
+    }
+    super.endDocument();
+  }
+
+  private void checkStylesheet(final String stylesheet) throws SAXParseException {
+    final Matcher matcher = CSS_URL.matcher(stylesheet);
+    while (matcher.find()) {
+      checkUrl(matcher.group(2), "stylesheet resource");
+    }
+  }
+
+  private void checkUrl(final String url, final String kind) throws SAXParseException {
+    if (!relativeAllowed && !url.trim().isEmpty() && !url.trim().startsWith("#")
+        && !ABSOLUTE.matcher(url).find()) {
+      throw new SAXParseException(String.format("%s '%s' has a relative url, "
+              + "which can only be loaded from a resource bundle", kind, url),
+          null, null, line(), column());
+    }
+  }
+
+  private int line() {
+    return locator == null ? -1 : locator.getLineNumber();
+  }
+
+  private int column() {
+    return locator == null ? -1 : locator.getColumnNumber();
+  }
+}
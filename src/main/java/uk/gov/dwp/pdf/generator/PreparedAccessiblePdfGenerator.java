@@ -0,0 +1,75 @@
+package uk.gov.dwp.pdf.generator;
+
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.OutputStream;
+
+/**
+ * Implementation of the PreparedHtmlToPdfGenerator that renders
+ * with assets prepared when it was built, serving repeated documents
+ * from a result cache if it has one.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+class PreparedAccessiblePdfGenerator implements PreparedHtmlToPdfGenerator {
+
+  private final HtmlToAccessiblePdfGenerator generator;
+  private final PdfRenderAssets assets;
+  private final PdfResultCache resultCache;
+
+  /**
+   * Constructor.
+   *
+   * @param generator the generator used to render each document
+   * @param assets    the prepared colour profile, fonts and conformance level
+   */
+  PreparedAccessiblePdfGenerator(final HtmlToAccessiblePdfGenerator generator,
+                                 final PdfRenderAssets assets) {
+    this(generator, assets, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param generator   the generator used to render each document
+   * @param assets      the prepared colour profile, fonts and conformance level,
+   *                    with deterministic output if there is a result cache
+   * @param resultCache the cache of rendered pdfs, or null to render every document
+   */
+  PreparedAccessiblePdfGenerator(final HtmlToAccessiblePdfGenerator generator,
+                                 final PdfRenderAssets assets,
+                                 final PdfResultCache resultCache) {
+    if (resultCache != null && assets.getDeterministicOutput() == null) {
+      throw new IllegalArgumentException("A result cache needs deterministic output");
+    }
+    this.generator = generator;
+    this.assets = assets;
+    this.resultCache = resultCache;
+  }
+
+  @Override
+  public void createPdfDocument(final HtmlSource html, final OutputStream outputStream)
+      throws PdfaGeneratorException {
+    if (resultCache == null) {
+      generator.createPdfDocument(html, assets, outputStream);
+    } else {
+      generator.createPdfDocument(html, assets, resultCache, outputStream);
+    }
+  }
+
+  @Override
+  public void createCombinedPdfDocument(final Iterable<HtmlSource> htmls,
+                                        final OutputStream outputStream)
+      throws PdfaGeneratorException {
+    generator.createCombinedPdfDocument(htmls, assets, outputStream);
+  }
+
+  @Override
+  public PdfTemplate compile(final HtmlSource template) throws PdfaGeneratorException {
+    return PdfTemplate.compile(generator, assets, template);
+  }
+
+  @Override
+  public PdfConformanceLevel getConformanceLevel() {
+    return assets.getConformanceLevel();
+  }
+}
@@ -0,0 +1,143 @@
+package uk.gov.dwp.pdf.generator;
+
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Interface for an html to pdf generator bound to a fixed colour profile,
+ * font map and conformance level.
+ * The assets are prepared once when the generator is built, implementations
+ * are immutable and safe to share between threads.
+ */
+public interface PreparedHtmlToPdfGenerator {
+  /**
+   * Returns an accessible pdf from an html input using the bound assets.
+   * It will perform a sanity check on the input html
+   * to ensure that all the fonts declared in the html's font family
+   * are present in the bound font map.
+   *
+   * @param html - The input html
+   * @return
+   */
+  default byte[] createPdfDocument(String html) throws PdfaGeneratorException {
+    return createPdfDocument(HtmlSource.of(html));
+  }
+
+  /**
+   * Returns an accessible pdf from an html source, such as a reader, stream or file,
+   * using the bound assets.
+   *
+   * @param html - The input html
+   * @return
+   */
+  default byte[] createPdfDocument(HtmlSource html) throws PdfaGeneratorException {
+    try (PooledBuffer outputStream = PdfBufferPool.shared().acquire()) {
+      createPdfDocument(html, outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+
+  /**
+   * Writes an accessible pdf from an html input to the output stream using the bound assets.
+   * The stream is flushed but not closed.
+   *
+   * @param html         - The input html
+   * @param outputStream The stream the pdf is written to
+   */
+  default void createPdfDocument(String html, OutputStream outputStream)
+      throws PdfaGeneratorException {
+    createPdfDocument(HtmlSource.of(html), outputStream);
+  }
+
+  /**
+   * Writes an accessible pdf from an html source to the output stream using the bound assets.
+   * The stream is flushed but not closed.
+   *
+   * @param html         - The input html
+   * @param outputStream The stream the pdf is written to
+   */
+  void createPdfDocument(HtmlSource html, OutputStream outputStream) throws PdfaGeneratorException;
+
+  /**
+   * Writes an accessible pdf from an html input to the channel using the bound assets.
+   * The channel is not closed.
+   *
+   * @param html    - The input html
+   * @param channel The channel the pdf is written to
+   */
+  default void createPdfDocument(String html, WritableByteChannel channel)
+      throws PdfaGeneratorException {
+    createPdfDocument(HtmlSource.of(html), channel);
+  }
+
+  /**
+   * Writes an accessible pdf from an html source to the channel using the bound assets.
+   * The channel is not closed.
+   *
+   * @param html    - The input html
+   * @param channel The channel the pdf is written to
+   */
+  default void createPdfDocument(HtmlSource html, WritableByteChannel channel)
+      throws PdfaGeneratorException {
+    createPdfDocument(html, Channels.newOutputStream(channel));
+  }
+
+  /**
+   * Returns a single pdf rendered from each html source in turn, each starting on a new page.
+   * Fonts, identical images and the colour profile are embedded once rather than per document.
+   * Every document is font checked as it is rendered.
+   * Only untagged conformance levels, NONE and the PDF/A b and u levels, can be combined.
+   *
+   * @param htmls - The input html documents, in page order
+   * @return
+   */
+  default byte[] createCombinedPdfDocument(Iterable<HtmlSource> htmls)
+      throws PdfaGeneratorException {
+    try (PooledBuffer outputStream = PdfBufferPool.shared().acquire()) {
+      createCombinedPdfDocument(htmls, outputStream);
+      return outputStream.toByteArray();
+    }
+  }
+
+  /**
+   * Writes a single pdf rendered from each html source in turn to the output stream,
+   * each starting on a new page. The pdf is assembled in memory and written once
+   * every document has been rendered. The stream is flushed but not closed.
+   * Only untagged conformance levels, NONE and the PDF/A b and u levels, can be combined.
+   *
+   * @param htmls        - The input html documents, in page order
+   * @param outputStream The stream the pdf is written to
+   */
+  void createCombinedPdfDocument(Iterable<HtmlSource> htmls, OutputStream outputStream)
+      throws PdfaGeneratorException;
+
+  /**
+   * Returns a template compiled from the html, parsed and font checked once
+   * and rendered with the bound assets.
+   *
+   * @param template - The template html
+   * @return
+   */
+  default PdfTemplate compile(String template) throws PdfaGeneratorException {
+    return compile(HtmlSource.of(template));
+  }
+
+  /**
+   * Returns a template compiled from the html source, parsed and font checked once
+   * and rendered with the bound assets.
+   *
+   * @param template - The template html
+   * @return
+   */
+  PdfTemplate compile(HtmlSource template) throws PdfaGeneratorException;
+
+  /**
+   * Returns the conformance level every document is rendered to.
+   *
+   * @return the bound conformance level
+   */
+  PdfConformanceLevel getConformanceLevel();
+}
@@ -0,0 +1,255 @@
+package uk.gov.dwp.pdf.generator;
+
+import com.openhtmltopdf.extend.FSTextBreaker;
+import com.openhtmltopdf.extend.ReplacedElement;
+import com.openhtmltopdf.extend.ReplacedElementFactory;
+import com.openhtmltopdf.extend.UserAgentCallback;
+import com.openhtmltopdf.layout.LayoutContext;
+import com.openhtmltopdf.layout.SharedContext;
+import com.openhtmltopdf.layout.UrlAwareLineBreakIterator;
+import com.openhtmltopdf.pdfboxout.PageSupplier;
+import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import com.openhtmltopdf.render.BlockBox;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import uk.gov.dwp.pdf.exception.PdfRenderLimitException;
+import uk.gov.dwp.pdf.exception.PdfRenderLimitException.Limit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * What is left of the {@link PdfRenderLimits} of a single render, checked cooperatively
+ * as the html is read, as text and blocks are laid out and as each page is started.
+ * The first breach is recorded and thrown unchecked, to unwind out of openhtmltopdf;
+ * it is thrown again at every later check, should openhtmltopdf catch and carry on,
+ * and the generator reports the recorded breach whatever it caught.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class RenderBudget {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RenderBudget.class.getName());
+
+  private final PdfRenderLimits limits;
+  private final long deadlineNanos;
+  private PdfRenderLimitException breach;
+
+  private RenderBudget(final PdfRenderLimits limits) {
+    this.limits = limits;
+    this.deadlineNanos = limits.getDeadline() == null
+        ? 0 : System.nanoTime() + limits.getDeadline().toNanos();
+  }
+
+  /**
+   * Starts the clock on a render under the limits, unlimited if they are null.
+   */
+  static RenderBudget start(final PdfRenderLimits limits) {
+    return new RenderBudget(limits == null ? PdfRenderLimits.none() : limits);
+  }
+
+  /**
+   * Returns the breach that stopped the render, or null if no limit was breached.
+   */
+  PdfRenderLimitException breach() {
+    return breach;
+  }
+
+  /**
+   * Stops the render if it has run past its deadline.
+   */
+  void checkDeadline() {
+    rethrow();
+    if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) {
+      breached(Limit.DEADLINE, limits.getDeadline().toMillis(), String.format(
+          "render did not finish within its %dms deadline", limits.getDeadline().toMillis()));
+    }
+  }
+
+  /**
+   * Stops the render if it has read more html than it may.
+   */
+  void checkInputLength(final long inputLength) {
+    rethrow();
+    if (limits.getMaximumInputLength() > 0 && inputLength > limits.getMaximumInputLength()) {
+      breached(Limit.INPUT_LENGTH, limits.getMaximumInputLength(), String.format(
+          "html is longer than the %d characters allowed", limits.getMaximumInputLength()));
+    }
+  }
+
+  /**
+   * Stops the render if the document has more pages than it may.
+   */
+  void checkPages(final int pages) {
+    rethrow();
+    if (limits.getMaximumPages() > 0 && pages > limits.getMaximumPages()) {
+      breached(Limit.PAGES, limits.getMaximumPages(), String.format(
+          "document of %d pages is longer than the %d pages allowed", pages,
+          limits.getMaximumPages()));
+    }
+  }
+
+  /**
+   * Stops the render if the image has more pixels than it may, reading only its header.
+   * Images that cannot be read are left to the renderer to report.
+   */
+  void checkImage(final byte[] image) {
+    rethrow();
+    if (limits.getMaximumImagePixels() == 0) {
+      return;
+    }
+    try (ImageInputStream inputStream =
+             ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+      final Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+      if (!readers.hasNext()) {
+        return;
+      }
+      final ImageReader reader = readers.next();
+      try {
+        reader.setInput(inputStream, true, true);
+        checkImage(reader.getWidth(0), reader.getHeight(0));
+      } finally {
+        reader.dispose();
+      }
+    } catch (IOException e) {
+      // a broken image is left to the renderer to report as it would otherwise
+      LOGGER.debug("cannot read image header: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Stops the render if an image of the width and height has more pixels than it may.
+   */
+  void checkImage(final int width, final int height) {
+    rethrow();
+    final long pixels = (long) width * height;
+    if (limits.getMaximumImagePixels() > 0 && pixels > limits.getMaximumImagePixels()) {
+      breached(Limit.IMAGE_PIXELS, limits.getMaximumImagePixels(), String.format(
+          "image of %d pixels is larger than the %d pixels allowed", pixels,
+          limits.getMaximumImagePixels()));
+    }
+  }
+
+  /**
+   * Checks the deadline as the renderer lays out text and starts each page, if there is one.
+   */
+  void imposeOn(final PdfRendererBuilder pdfBuilder) {
+    if (deadlineNanos == 0) {
+      return;
+    }
+    pdfBuilder.useUnicodeLineBreaker(new DeadlineLineBreaker(
+        new UrlAwareLineBreakIterator(BreakIterator.getLineInstance(Locale.US))));
+    pdfBuilder.usePageSupplier(new DeadlinePageSupplier());
+  }
+
+  /**
+   * Checks the page count as the renderer lays out each block, if there is a page limit.
+   */
+  void imposeOn(final PdfBoxRenderer renderer) {
+    if (limits.getMaximumPages() == 0) {
+      return;
+    }
+    // openhtmltopdf adds pages as the layout reaches them without telling anyone, but asks
+    // its replaced element factory about every block it lays out
+    final SharedContext sharedContext = renderer.getSharedContext();
+    sharedContext.setReplacedElementFactory(new PageCountingElementFactory(
+        sharedContext.getReplacedElementFactory(), renderer.getPdfDocument()));
+  }
+
+  private void rethrow() {
+    if (breach != null) {
+      throw new Exceeded(breach);
+    }
+  }
+
+  private void breached(final Limit limit, final long maximum, final String message) {
+    breach = new PdfRenderLimitException(limit, maximum, message);
+    throw new Exceeded(breach);
+  }
+
+  /**
+   * Unwinds the render once a limit is breached.
+   */
+  static final class Exceeded extends RuntimeException {
+    private static final long serialVersionUID = -3312409251874370186L;
+
+    Exceeded(final PdfRenderLimitException breach) {
+      super(breach.getMessage(), null, false, false);
+    }
+  }
+
+  /**
+   * The default line breaker, checking the deadline as each run of text is laid out.
+   */
+  private final class DeadlineLineBreaker implements FSTextBreaker {
+    private final FSTextBreaker lineBreaker;
+
+    DeadlineLineBreaker(final FSTextBreaker lineBreaker) {
+      this.lineBreaker = lineBreaker;
+    }
+
+    @Override
+    public int next() {
+      return lineBreaker.next();
+    }
+
+    @Override
+    public void setText(final String text) {
+      checkDeadline();
+      lineBreaker.setText(text);
+    }
+  }
+
+  /**
+   * The default page supplier, checking the deadline as each page is started.
+   */
+  private final class DeadlinePageSupplier implements PageSupplier {
+    @Override
+    public PDPage requestPage(final PDDocument document, final float width, final float height,
+                              final int pageNumber, final int shadowPageNumber) {
+      checkDeadline();
+      final PDPage page = new PDPage(new PDRectangle(width, height));
+      document.addPage(page);
+      return page;
+    }
+  }
+
+  /**
+   * The renderer's replaced element factory, checking the page count as each block is laid out.
+   */
+  private final class PageCountingElementFactory implements ReplacedElementFactory {
+    private final ReplacedElementFactory elementFactory;
+    private final PDDocument document;
+
+    PageCountingElementFactory(final ReplacedElementFactory elementFactory,
+                               final PDDocument document) {
+      this.elementFactory = elementFactory;
+      this.document = document;
+    }
+
+    @Override
+    public ReplacedElement createReplacedElement(final LayoutContext context, final BlockBox box,
+                                                 final UserAgentCallback userAgent,
+                                                 final int cssWidth, final int cssHeight) {
+      // pages already in the document are those of earlier documents combined into it, and
+      // the layout may have started the page after its content, which is trimmed at the end
+      checkPages(document.getNumberOfPages() + context.getRootLayer().getPages().size() - 1);
+      return elementFactory.createReplacedElement(context, box, userAgent, cssWidth, cssHeight);
+    }
+
+    @Override
+    public boolean isReplacedElement(final Element element) {
+      return elementFactory.isReplacedElement(element);
+    }
+  }
+}
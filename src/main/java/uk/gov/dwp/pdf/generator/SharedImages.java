@@ -0,0 +1,111 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Points every page drawing an identical image at a single copy of it.
+ * Each openhtmltopdf renderer embeds the images of its own document, so a pdf combined
+ * from many documents would otherwise hold one copy of a shared logo per document.
+ * Images are identical when their encoded data, soft mask and the entries describing
+ * how to decode them are the same.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class SharedImages {
+
+  private static final COSName[] DESCRIPTION = {COSName.WIDTH, COSName.HEIGHT,
+      COSName.BITS_PER_COMPONENT, COSName.COLORSPACE, COSName.FILTER, COSName.DECODE_PARMS,
+      COSName.DECODE, COSName.INTERPOLATE, COSName.IMAGE_MASK};
+
+  private SharedImages() {
+  }
+
+  /**
+   * Replaces the duplicate images on every page with the first copy found.
+   *
+   * @return the number of duplicates replaced
+   */
+  static int deduplicate(final PDDocument document) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    final Map<String, PDImageXObject> images = new HashMap<>();
+    int replaced = 0;
+    for (final PDPage page : document.getPages()) {
+      final PDResources resources = page.getResources();
+      if (resources == null) {
+        continue;
+      }
+      for (final COSName name : resources.getXObjectNames()) {
+        final PDXObject xobject = resources.getXObject(name);
+        if (!(xobject instanceof PDImageXObject)) {
+          continue;
+        }
+
+        final String key = keyOf((PDImageXObject) xobject, digest);
+        if (key == null) {
+          continue;
+        }
+        final PDImageXObject shared = images.putIfAbsent(key, (PDImageXObject) xobject);
+        if (shared != null && shared.getCOSObject() != xobject.getCOSObject()) {
+          resources.put(name, shared);
+          replaced++;
+        }
+      }
+    }
+    return replaced;
+  }
+
+  private static String keyOf(final PDImageXObject image, final MessageDigest digest)
+      throws IOException {
+    final COSStream stream = image.getCOSObject();
+    final StringBuilder key = new StringBuilder(128);
+    for (final COSName entry : DESCRIPTION) {
+      final COSBase value = stream.getDictionaryObject(entry);
+      if (value instanceof COSStream) {
+        // an ICC based colour space or the like, not worth comparing
+        return null;
+      }
+      key.append(entry.getName()).append('=').append(value).append(';');
+    }
+
+    key.append(digestOf(stream, digest));
+    final COSBase mask = stream.getDictionaryObject(COSName.SMASK);
+    if (mask instanceof COSStream) {
+      key.append(';').append(digestOf((COSStream) mask, digest));
+    } else if (mask != null) {
+      return null;
+    }
+    return key.toString();
+  }
+
+  private static String digestOf(final COSStream stream, final MessageDigest digest)
+      throws IOException {
+    digest.reset();
+    final byte[] buffer = new byte[8192];
+    try (InputStream inputStream = stream.createRawInputStream()) {
+      for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+        digest.update(buffer, 0, count);
+      }
+    }
+    return Base64.getEncoder().encodeToString(digest.digest());
+  }
+}
@@ -0,0 +1,56 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.verapdf.pdfa.Foundries;
+import org.verapdf.pdfa.PDFAParser;
+import org.verapdf.pdfa.PDFAValidator;
+import org.verapdf.pdfa.VeraGreenfieldFoundryProvider;
+import org.verapdf.pdfa.flavours.PDFAFlavour;
+import org.verapdf.pdfa.results.TestAssertion;
+import org.verapdf.pdfa.results.ValidationResult;
+
+import java.io.ByteArrayInputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Validates pdfs against their PDF/A flavour with veraPDF. Kept apart from the
+ * {@link PdfConformanceVerifier}, so veraPDF, an optional dependency, is loaded only
+ * once a document is validated.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class VeraPdfValidation {
+
+  static {
+    VeraGreenfieldFoundryProvider.initialise();
+  }
+
+  private VeraPdfValidation() {
+  }
+
+  /**
+   * Returns the rules, as clause and test number, the pdf fails at the conformance level,
+   * which must be a PDF/A level. The pdf is conformant if there are none.
+   */
+  static Set<String> failedRules(final byte[] pdf, final PdfConformanceLevel conformanceLevel)
+      throws Exception {
+    final String name = conformanceLevel.name();
+    final PDFAFlavour flavour =
+        PDFAFlavour.fromString(name.charAt(5) + name.substring(7).toLowerCase(Locale.ROOT));
+
+    final Set<String> failedRules = new TreeSet<>();
+    try (PDFAParser parser =
+             Foundries.defaultInstance().createParser(new ByteArrayInputStream(pdf), flavour)) {
+      // only failed assertions are recorded, passed ones are not logged
+      final PDFAValidator validator = Foundries.defaultInstance().createValidator(flavour, false);
+      final ValidationResult result = validator.validate(parser);
+      for (final TestAssertion assertion : result.getTestAssertions()) {
+        if (assertion.getStatus() == TestAssertion.Status.FAILED) {
+          failedRules.add(assertion.getRuleId().getClause() + "-"
+              + assertion.getRuleId().getTestNumber());
+        }
+      }
+    }
+    return failedRules;
+  }
+}
@@ -0,0 +1,143 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Renders a representative document at each conformance level, so the classes of
+ * openhtmltopdf, PDFBox, Batik and the colour management code are loaded and initialised,
+ * and the fonts are parsed into the shared font cache, before the first real request.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class WarmUp {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WarmUp.class.getName());
+
+  private WarmUp() {
+  }
+
+  /**
+   * Renders the representative document the given number of times at each level.
+   */
+  static PdfWarmUpReport run(final byte[] colourProfile,
+                             final Map<String, byte[]> fontMap,
+                             final int rounds,
+                             final PdfConformanceLevel... levels) throws PdfaGeneratorException {
+    Arguments.positive(rounds, "Warm-up rounds");
+    if (levels.length == 0) {
+      throw new IllegalArgumentException("Warm-up needs at least one conformance level");
+    }
+
+    final String html = document(Objects.requireNonNull(fontMap, "Font map must not be null"));
+    final Map<PdfConformanceLevel, Duration> levelDurations =
+        new EnumMap<>(PdfConformanceLevel.class);
+    final long start = System.nanoTime();
+    int documents = 0;
+
+    for (final PdfConformanceLevel level : levels) {
+      final long levelStart = System.nanoTime();
+      final PreparedHtmlToPdfGenerator generator =
+          HtmlToPdfFactory.create(colourProfile, fontMap, level);
+      documents += render(generator, html, rounds);
+      levelDurations.put(level, Duration.ofNanos(System.nanoTime() - levelStart));
+    }
+
+    return report(levelDurations, documents, start);
+  }
+
+  /**
+   * Renders the representative document the given number of times through the generator.
+   */
+  static PdfWarmUpReport run(final PreparedHtmlToPdfGenerator generator,
+                             final Map<String, byte[]> fontMap,
+                             final int rounds) throws PdfaGeneratorException {
+    Objects.requireNonNull(generator, "Generator must not be null");
+    Arguments.positive(rounds, "Warm-up rounds");
+
+    final String html = document(Objects.requireNonNull(fontMap, "Font map must not be null"));
+    final long start = System.nanoTime();
+    final int documents = render(generator, html, rounds);
+    final Map<PdfConformanceLevel, Duration> levelDurations =
+        new EnumMap<>(PdfConformanceLevel.class);
+    levelDurations.put(generator.getConformanceLevel(),
+        Duration.ofNanos(System.nanoTime() - start));
+
+    return report(levelDurations, documents, start);
+  }
+
+  /**
+   * Returns a two page document of text in every font, a table, a list,
+   * an embedded png and an svg, which passes the preflight checks of every level.
+   */
+  static String document(final Map<String, byte[]> fontMap) {
+    final StringBuilder styles = new StringBuilder(256);
+    final StringBuilder text = new StringBuilder(1024);
+    int index = 0;
+    for (final String family : fontMap.keySet()) {
+      if (family.matches("[^'\"\\\\<>&]+")) {
+        if (index == 0) {
+          styles.append("body { font-family: '").append(family).append("'; } ");
+        }
+        styles.append(".f").append(index).append(" { font-family: '").append(family)
+            .append("'; } ");
+        text.append("<p class=\"f").append(index).append("\">The quick brown fox jumps over ")
+            .append("the lazy dog 0123456789 <b>bold</b> <i>italic</i></p>");
+        index++;
+      }
+    }
+
+    return "<!DOCTYPE html><html lang=\"en\"><head><title>Warm-up</title><style>"
+        + styles
+        + "table { border-collapse: collapse; width: 100%; } td { border: 1px solid black; } "
+        + "img, svg { width: 40px; height: 40px; } img { image-rendering: pixelated; } "
+        + ".page { page-break-after: always; }"
+        + "</style></head><body>"
+        + "<div class=\"page\"><h1>Warm-up</h1>" + text
+        + "<table><tr><td>one</td><td>two</td></tr><tr><td>three</td><td>four</td></tr></table>"
+        + "<ul><li>first</li><li>second</li></ul></div>"
+        + "<div><img alt=\"image\" src=\"data:image/png;base64," + image() + "\"/>"
+        + "<svg viewBox=\"0 0 10 10\" xmlns=\"http://www.w3.org/2000/svg\">"
+        + "<rect x=\"1\" y=\"1\" width=\"8\" height=\"8\"/></svg>" + text + "</div>"
+        + "</body></html>";
+  }
+
+  private static int render(final PreparedHtmlToPdfGenerator generator, final String html,
+                            final int rounds) throws PdfaGeneratorException {
+    for (int round = 0; round < rounds; round++) {
+      generator.createPdfDocument(html);
+    }
+    return rounds;
+  }
+
+  private static PdfWarmUpReport report(final Map<PdfConformanceLevel, Duration> levelDurations,
+                                        final int documents, final long start) {
+    final PdfWarmUpReport report = new PdfWarmUpReport(levelDurations, documents,
+        Duration.ofNanos(System.nanoTime() - start));
+    LOGGER.info(report.toString());
+    return report;
+  }
+
+  private static String image() {
+    final BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(1, 1, 0x1d70b8);
+    final ByteArrayOutputStream png = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, "png", png);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Base64.getEncoder().encodeToString(png.toByteArray());
+  }
+}
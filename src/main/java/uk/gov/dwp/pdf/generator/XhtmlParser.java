@@ -0,0 +1,73 @@
+package uk.gov.dwp.pdf.generator;
+
+import com.openhtmltopdf.layout.SharedContext;
+import com.openhtmltopdf.resource.XMLResource;
+import com.openhtmltopdf.util.ThreadCtx;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import uk.gov.dwp.pdf.exception.PdfValidationException;
+
+import javax.xml.transform.sax.SAXSource;
+import java.io.Reader;
+
+/**
+ * Parses xhtml into a document ahead of building the renderer, using the
+ * same secured parser configuration the renderer would use itself.
+ */
+@SuppressWarnings("PMD.CommentDefaultAccessModifier")
+final class XhtmlParser {
+
+  /**
+   * The parser only reads the preferred xml factory settings from the shared context,
+   * so a default context can be shared by every thread.
+   */
+  private static final SharedContext PARSER_CONTEXT = new SharedContext();
+
+  private XhtmlParser() {
+  }
+
+  /**
+   * Returns the document parsed from the reader.
+   * Must not be called while a renderer is in use on the same thread.
+   */
+  static Document parse(final Reader reader) {
+    ThreadCtx.get().setSharedContext(PARSER_CONTEXT);
+    try {
+      return XMLResource.load(new InputSource(reader)).getDocument();
+
+    } finally {
+      ThreadCtx.cleanup();
+    }
+  }
+
+  /**
+   * Returns the document parsed from the reader, checked by a {@link PreflightFilter}
+   * as it is read.
+   * Must not be called while a renderer is in use on the same thread.
+   *
+   * @throws PdfValidationException at the first problem found, with its line and column
+   */
+  @SuppressWarnings("deprecation") // load(Source) is the only way in for a filtering reader
+  static Document parse(final Reader reader, final PdfRenderAssets assets)
+      throws PdfValidationException {
+    ThreadCtx.get().setSharedContext(PARSER_CONTEXT);
+    try {
+      final PreflightFilter filter = new PreflightFilter(XMLResource.newXMLReader(), assets);
+      return XMLResource.load(new SAXSource(filter, new InputSource(reader))).getDocument();
+
+    } catch (RuntimeException e) {
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+        if (cause instanceof SAXParseException) {
+          final SAXParseException parseException = (SAXParseException) cause;
+          throw new PdfValidationException(parseException.getMessage(),
+              parseException.getLineNumber(), parseException.getColumnNumber(), e);
+        }
+      }
+      throw e;
+
+    } finally {
+      ThreadCtx.cleanup();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfGeneratorRejectedException;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class AsyncHtmlToPdfGeneratorTest {
+  private static PreparedHtmlToPdfGenerator generator;
+  private static String htmlFile;
+
+  @BeforeClass
+  public static void init() throws PdfaGeneratorException {
+    htmlFile = html("successfulHtml.html");
+
+    generator = HtmlToPdfFactory.create(colourProfile(), fontMap(), PDFA_1_A);
+  }
+
+  @Test
+  public void successfullyCreatePdfAsynchronously() throws Exception {
+    try (AsyncHtmlToPdfGenerator instance = new AsyncHtmlToPdfGenerator(generator, 4)) {
+      PDDocument pdfDoc = PDDocument.load(instance.createPdfDocument(htmlFile).get(30, TimeUnit.SECONDS));
+
+      assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+      pdfDoc.close();
+      assertThat(instance.pendingCount(), is(equalTo(0)));
+    }
+  }
+
+  @Test
+  public void failedRenderCompletesExceptionally() throws Exception {
+    try (AsyncHtmlToPdfGenerator instance = new AsyncHtmlToPdfGenerator(generator, 4)) {
+      instance.createPdfDocument(html("badHtmlFile.html"))
+          .get(30, TimeUnit.SECONDS);
+      fail("should have failed with bad html");
+
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(PdfaGeneratorException.class)));
+      assertThat(e.getCause().getMessage(), startsWith("Can't load the XML resource"));
+    }
+  }
+
+  @Test
+  public void renderDyingWithAnErrorCompletesExceptionally() throws Exception {
+    PreparedHtmlToPdfGenerator overflowing = new PreparedHtmlToPdfGenerator() {
+      @Override
+      public void createPdfDocument(HtmlSource html, OutputStream outputStream) {
+        throw new StackOverflowError("nested too deeply");
+      }
+
+      @Override
+      public void createCombinedPdfDocument(Iterable<HtmlSource> htmls, OutputStream outputStream) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public PdfTemplate compile(HtmlSource template) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public PdfConformanceLevel getConformanceLevel() {
+        return generator.getConformanceLevel();
+      }
+    };
+
+    try (AsyncHtmlToPdfGenerator instance = new AsyncHtmlToPdfGenerator(overflowing, 4)) {
+      instance.createPdfDocument(htmlFile).get(30, TimeUnit.SECONDS);
+      fail("should have failed with the error");
+
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(StackOverflowError.class)));
+    }
+  }
+
+  @Test
+  public void rejectWhenAtCapacity() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    PreparedHtmlToPdfGenerator blocking = new BlockingGenerator(release);
+
+    try (AsyncHtmlToPdfGenerator instance = new AsyncHtmlToPdfGenerator(blocking, 1)) {
+      CompletableFuture<byte[]> accepted = instance.createPdfDocument(htmlFile);
+      CompletableFuture<byte[]> refused = instance.createPdfDocument(htmlFile);
+
+      assertThat(refused.isCompletedExceptionally(), is(true));
+      try {
+        refused.get();
+        fail("should have been rejected");
+
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), is(instanceOf(PdfGeneratorRejectedException.class)));
+        assertThat(e.getCause().getMessage(), is(equalTo("pdf generator at capacity, 1 renders already pending")));
+      }
+      assertThat(instance.rejectedCount(), is(equalTo(1L)));
+
+      release.countDown();
+      assertThat(accepted.get(30, TimeUnit.SECONDS).length > 0, is(true));
+    }
+  }
+
+  @Test
+  public void concurrentRendersAreCappedOnCallerExecutor() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maximum = new AtomicInteger();
+    PreparedHtmlToPdfGenerator counting = new PreparedHtmlToPdfGenerator() {
+      @Override
+      public void createPdfDocument(HtmlSource html, OutputStream outputStream) throws PdfaGeneratorException {
+        maximum.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          generator.createPdfDocument(html, outputStream);
+        } finally {
+          running.decrementAndGet();
+        }
+      }
+
+      @Override
+      public void createCombinedPdfDocument(Iterable<HtmlSource> htmls, OutputStream outputStream)
+          throws PdfaGeneratorException {
+        generator.createCombinedPdfDocument(htmls, outputStream);
+      }
+
+      @Override
+      public PdfTemplate compile(HtmlSource template) throws PdfaGeneratorException {
+        return generator.compile(template);
+      }
+
+      @Override
+      public PdfConformanceLevel getConformanceLevel() {
+        return generator.getConformanceLevel();
+      }
+    };
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try (AsyncHtmlToPdfGenerator instance = new AsyncHtmlToPdfGenerator(counting, executor, 8, 2)) {
+      List<CompletableFuture<byte[]>> renders = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        renders.add(instance.createPdfDocument(htmlFile));
+      }
+      CompletableFuture.allOf(renders.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+
+      assertThat(maximum.get() <= 2, is(true));
+
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static final class BlockingGenerator implements PreparedHtmlToPdfGenerator {
+    private final CountDownLatch release;
+
+    BlockingGenerator(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void createPdfDocument(HtmlSource html, OutputStream outputStream) throws PdfaGeneratorException {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      generator.createPdfDocument(html, outputStream);
+    }
+
+    @Override
+    public void createCombinedPdfDocument(Iterable<HtmlSource> htmls, OutputStream outputStream)
+        throws PdfaGeneratorException {
+      generator.createCombinedPdfDocument(htmls, outputStream);
+    }
+
+    @Override
+    public PdfTemplate compile(HtmlSource template) throws PdfaGeneratorException {
+      return generator.compile(template);
+    }
+
+    @Override
+    public PdfConformanceLevel getConformanceLevel() {
+      return generator.getConformanceLevel();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.isCompliant;
+
+public class DeterministicOutputTest {
+  private static final Instant DOCUMENT_DATE = Instant.parse("2020-04-01T09:30:00Z");
+
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void identicalInputsGiveIdenticalPdfs() throws PdfaGeneratorException {
+    for (PdfConformanceLevel level : PdfConformanceLevel.values()) {
+      byte[] first = generator(level, DOCUMENT_DATE).createPdfDocument(accessibleHtml);
+      byte[] second = generator(level, DOCUMENT_DATE).createPdfDocument(accessibleHtml);
+
+      assertThat(level.name(), Arrays.equals(first, second), is(true));
+    }
+  }
+
+  @Test
+  public void documentIsGivenThePinnedDate() throws IOException, PdfaGeneratorException {
+    byte[] pdf = generator(PdfConformanceLevel.PDFA_2_B, DOCUMENT_DATE).createPdfDocument(accessibleHtml);
+
+    try (PDDocument pdfDoc = PDDocument.load(pdf)) {
+      assertThat(pdfDoc.getDocumentInformation().getCreationDate().toInstant(), is(equalTo(DOCUMENT_DATE)));
+      assertThat(pdfDoc.getDocumentInformation().getModificationDate().toInstant(), is(equalTo(DOCUMENT_DATE)));
+      assertThat(pdfDoc.getDocumentCatalog().getMetadata().getCOSObject().toTextString()
+          .contains("2020-04-01T09:30:00+00:00"), is(true));
+    }
+  }
+
+  @Test
+  public void pinningTwiceLeavesOneModificationDate() throws IOException {
+    PdfRenderAssets assets = PdfRenderAssets.prepare(defaultColourProfile, defaultFontMap,
+        PdfConformanceLevel.PDFA_2_B, new FontCache(4));
+    DeterministicOutput output = DeterministicOutput.of(DOCUMENT_DATE, defaultColourProfile, defaultFontMap, assets);
+
+    try (PDDocument pdfDoc = new PDDocument()) {
+      pdfDoc.addPage(new PDPage());
+      PDMetadata metadata = new PDMetadata(pdfDoc);
+      metadata.importXMPMetadata(("<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">\n"
+          + "  <xmp:CreateDate>2019-01-01T00:00:00Z</xmp:CreateDate>\n"
+          + "</x:xmpmeta>").getBytes(StandardCharsets.UTF_8));
+      pdfDoc.getDocumentCatalog().setMetadata(metadata);
+
+      output.pin(pdfDoc);
+      output.pin(pdfDoc);
+
+      String xmp = metadata.getCOSObject().toTextString();
+      assertThat(xmp.split("<xmp:ModifyDate>", -1).length, is(equalTo(2)));
+      assertThat(xmp.split("<xmp:CreateDate>", -1).length, is(equalTo(2)));
+      assertThat(xmp.contains("<xmp:ModifyDate>2020-04-01T09:30:00+00:00</xmp:ModifyDate>"), is(true));
+    }
+  }
+
+  @Test
+  public void differentContentGivesADifferentDocumentId() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDF_UA, DOCUMENT_DATE);
+
+    assertThat(documentId(instance.createPdfDocument(accessibleHtml)).equals(
+        documentId(instance.createPdfDocument(accessibleHtml.replace("Paragraph one", "Paragraph 1")))), is(false));
+    assertThat(documentId(instance.createPdfDocument(accessibleHtml)).equals(
+        documentId(instance.createPdfDocument(accessibleHtml.replace("dwp team", "dwp teams")))), is(false));
+  }
+
+  @Test
+  public void pinnedPdfaDocumentsValidate() throws Exception {
+    for (PdfConformanceLevel level : new PdfConformanceLevel[]{
+        PdfConformanceLevel.PDFA_1_B, PdfConformanceLevel.PDFA_2_A, PdfConformanceLevel.PDFA_3_U}) {
+
+      byte[] pdf = generator(level, DOCUMENT_DATE).createPdfDocument(accessibleHtml);
+
+      assertThat(level.name(), isCompliant(pdf, level), is(true));
+    }
+  }
+
+  @Test
+  public void combinedDocumentsAreDeterministic() throws PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDFA_2_B, DOCUMENT_DATE);
+
+    byte[] first = instance.createCombinedPdfDocument(
+        Arrays.asList(HtmlSource.of(accessibleHtml), HtmlSource.of(accessibleHtml)));
+    byte[] second = instance.createCombinedPdfDocument(
+        Arrays.asList(HtmlSource.of(accessibleHtml), HtmlSource.of(accessibleHtml)));
+
+    assertThat(Arrays.equals(first, second), is(true));
+  }
+
+  private PreparedHtmlToPdfGenerator generator(PdfConformanceLevel level, Instant documentDate)
+      throws PdfaGeneratorException {
+    return HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(level)
+        .deterministic(documentDate)
+        .build();
+  }
+
+  private static String documentId(byte[] pdf) throws IOException {
+    try (PDDocument pdfDoc = PDDocument.load(pdf)) {
+      return pdfDoc.getDocument().getDocumentID().toString();
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.bytes;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class FontCacheTest {
+  private static byte[] arial;
+  private static byte[] courier;
+
+  @BeforeClass
+  public static void init() {
+    arial = bytes("fonts/arial.ttf");
+    courier = bytes("fonts/courier.ttf");
+  }
+
+  @Test
+  public void sameFontBytesAreOnlyParsedOnce() throws IOException {
+    FontCache cache = new FontCache(4);
+
+    TrueTypeFont first = cache.get("arial", arial);
+    TrueTypeFont second = cache.get("arial", arial.clone());
+
+    assertThat(second, is(sameInstance(first)));
+    assertThat(cache.size(), is(equalTo(1)));
+    assertThat(cache.missCount(), is(equalTo(1L)));
+    assertThat(cache.hitCount(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void fontBytesRewrittenInPlaceAreParsedAgain() throws IOException {
+    FontCache cache = new FontCache(4);
+    byte[] reused = arial.clone();
+
+    TrueTypeFont first = cache.get("sans", reused);
+    byte[] rewritten = withoutOs2Table(arial);
+    System.arraycopy(rewritten, 0, reused, 0, rewritten.length);
+
+    assertThat(cache.get("sans", reused), is(not(sameInstance(first))));
+    assertThat(cache.missCount(), is(equalTo(2L)));
+  }
+
+  @Test
+  public void familyNameIsPartOfTheKey() throws IOException {
+    FontCache cache = new FontCache(4);
+
+    assertThat(cache.get("arial", arial), is(not(sameInstance(cache.get("sans", arial)))));
+    assertThat(cache.size(), is(equalTo(2)));
+  }
+
+  @Test
+  public void leastRecentlyUsedFontIsEvicted() throws IOException {
+    FontCache cache = new FontCache(1);
+
+    TrueTypeFont first = cache.get("arial", arial);
+    cache.get("courier", courier);
+
+    assertThat(cache.size(), is(equalTo(1)));
+    assertThat(cache.evictionCount(), is(equalTo(1L)));
+    assertThat(cache.get("arial", arial), is(not(sameInstance(first))));
+  }
+
+  @Test
+  public void clearRemovesAllEntries() throws IOException {
+    FontCache cache = new FontCache(4);
+    cache.get("arial", arial);
+
+    cache.clear();
+
+    assertThat(cache.size(), is(equalTo(0)));
+  }
+
+  @Test
+  public void concurrentLookupsShareOneParsedFont() throws Exception {
+    FontCache cache = new FontCache(4);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<TrueTypeFont>> lookups = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        lookups.add(() -> cache.get("courier", courier));
+      }
+
+      TrueTypeFont expected = cache.get("courier", courier);
+      for (Future<TrueTypeFont> font : executor.invokeAll(lookups)) {
+        assertThat(font.get(), is(sameInstance(expected)));
+      }
+      assertThat(cache.missCount(), is(equalTo(1L)));
+
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void fontsTheDocumentDoesNotUseAreNotLoaded() throws PdfaGeneratorException {
+    Map<String, byte[]> fontMap = fontMap();
+    // parses, but cannot be loaded into a document without its OS/2 table
+    fontMap.put("unused", withoutOs2Table(arial));
+
+    byte[] pdf = HtmlToPdfFactory.create(colourProfile(), fontMap, PdfConformanceLevel.PDF_UA)
+        .createPdfDocument(html("accessible-test.html"));
+
+    assertThat(pdf.length > 0, is(true));
+  }
+
+  @Test
+  public void sizeMustBePositive() {
+    try {
+      new FontCache(0);
+      fail("should have rejected a zero sized cache");
+
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), is(equalTo("Font cache size must be at least 1")));
+    }
+  }
+
+  private static byte[] withoutOs2Table(byte[] font) {
+    byte[] broken = font.clone();
+    ByteBuffer buffer = ByteBuffer.wrap(broken);
+    int tables = buffer.getShort(4);
+    for (int i = 0; i < tables; i++) {
+      int record = 12 + i * 16;
+      if (buffer.getInt(record) == 0x4F532F32) {
+        // renames the OS/2 table so it is not found
+        buffer.put(record + 1, (byte) 'z');
+      }
+    }
+    return broken;
+  }
+}
@@ -0,0 +1,123 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FontFamilyScannerTest {
+
+  private static String scan(String html, String... fontFamilies) {
+    FontFamilyScanner scanner = new FontFamilyScanner(new HashSet<>(Arrays.asList(fontFamilies)));
+    for (char character : html.toCharArray()) {
+      scanner.accept(character);
+    }
+    scanner.end();
+    return scanner.getMissingDeclaration();
+  }
+
+  @Test
+  public void styleElementWithAvailableFontIsSatisfied() {
+    String html = "<html><head><style>body { font-family: 'arial', serif; }</style></head></html>";
+
+    assertThat(scan(html, "arial"), is(nullValue()));
+  }
+
+  @Test
+  public void anyAvailableFamilyInTheListSatisfiesTheDeclaration() {
+    String html = "<style>p { font-family: \"tahoma\", arial, sans-serif }</style>";
+
+    assertThat(scan(html, "arial"), is(nullValue()));
+  }
+
+  @Test
+  public void missingFontIsReportedWithTheDeclaration() {
+    String html = "<style>body {\n  font-family: 'tahoma', serif;\n}</style>";
+
+    assertThat(scan(html, "arial"), is(equalTo("font-family: 'tahoma', serif")));
+  }
+
+  @Test
+  public void firstMissingDeclarationIsReported() {
+    String html = "<style>h1 { font-family: 'courier' } p { font-family: 'arial' }</style>";
+
+    assertThat(scan(html, "aaarial"), is(equalTo("font-family: 'courier'")));
+  }
+
+  @Test
+  public void declarationSpanningLinesIsChecked() {
+    String html = "<style>p { font-family:\n    'tahoma',\n    serif; }</style>";
+
+    assertThat(scan(html, "arial"), is(equalTo("font-family: 'tahoma', serif")));
+  }
+
+  @Test
+  public void familyNameContainingAnAvailableFontIsNotSatisfied() {
+    String html = "<style>p { font-family: 'aaarial' }</style>";
+
+    assertThat(scan(html, "arial"), is(equalTo("font-family: 'aaarial'")));
+  }
+
+  @Test
+  public void inlineStyleAttributeIsChecked() {
+    String html = "<p class=\"x\" style=\"color: red; font-family: tahoma\">text</p>";
+
+    assertThat(scan(html, "arial"), is(equalTo("font-family: tahoma")));
+    assertThat(scan(html, "tahoma"), is(nullValue()));
+  }
+
+  @Test
+  public void encodedQuotesInStyleAttributeAreDecoded() {
+    String html = "<p style=\"font-family: &quot;Times New Roman&quot;, serif\">text</p>";
+
+    assertThat(scan(html, "Times New Roman"), is(nullValue()));
+  }
+
+  @Test
+  public void fontShorthandFamiliesAreChecked() {
+    String html = "<style>p { font: bold 12px/1.5 'tahoma', serif }</style>";
+
+    assertThat(scan(html, "arial"), is(equalTo("font: bold 12px/1.5 'tahoma', serif")));
+    assertThat(scan(html, "tahoma"), is(nullValue()));
+  }
+
+  @Test
+  public void fontShorthandWithoutFamiliesIsIgnored() {
+    assertThat(scan("<style>p { font: inherit } h1 { font: caption }</style>", "arial"),
+        is(nullValue()));
+  }
+
+  @Test
+  public void fontFamilyOutsideStylesIsIgnored() {
+    String html = "<p title=\"font-family: tahoma\">font-family: tahoma;</p>"
+        + "<!-- <style>p { font-family: tahoma }</style> -->";
+
+    assertThat(scan(html, "arial"), is(nullValue()));
+  }
+
+  @Test
+  public void cssCommentsAndStringsAreSkipped() {
+    String html = "<style>/* font-family: tahoma; */ p::before { content: 'font-family: tahoma;' }"
+        + " p { font-family: /* main */ arial }</style>";
+
+    assertThat(scan(html, "arial"), is(nullValue()));
+  }
+
+  @Test
+  public void characterDataInStyleIsRead() {
+    String html = "<style type=\"text/css\"><![CDATA[ p { font-family: tahoma } ]]></style>";
+
+    assertThat(scan(html, "arial"), is(equalTo("font-family: tahoma")));
+  }
+
+  @Test
+  public void importantIsNotPartOfTheFamily() {
+    assertThat(scan("<style>p { font-family: arial !important }</style>", "arial"),
+        is(nullValue()));
+  }
+}
@@ -0,0 +1,108 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_B;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_2_A;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_2_B;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_2_U;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_3_A;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_3_B;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_3_U;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDF_UA;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.isCompliant;
+
+public class FontSubsettingTest {
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void fontsAreSubsetByDefault() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDFA_2_B);
+    byte[] subset = instance.createPdfDocument(accessibleHtml);
+
+    byte[] whole = HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(PDFA_2_B)
+        .subsetFonts(false)
+        .build()
+        .createPdfDocument(accessibleHtml);
+
+    assertThat(allFontsSubset(subset), is(true));
+    assertThat(allFontsSubset(whole), is(false));
+    assertThat(subset.length < whole.length / 4, is(true));
+  }
+
+  @Test
+  public void subsetPdfaDocumentsValidate() throws Exception {
+    for (PdfConformanceLevel level : new PdfConformanceLevel[]{
+        PDFA_1_B, PDFA_2_A, PDFA_2_B, PDFA_2_U, PDFA_3_A, PDFA_3_B, PDFA_3_U}) {
+
+      byte[] pdf = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, level)
+          .createPdfDocument(accessibleHtml);
+
+      assertThat(level.name(), allFontsSubset(pdf), is(true));
+      assertThat(level.name(), isCompliant(pdf, level), is(true));
+    }
+  }
+
+  @Test
+  public void subsetPdfUaDocumentsKeepTheirIdentification() throws IOException, PdfaGeneratorException {
+    byte[] pdf = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDF_UA)
+        .createPdfDocument(accessibleHtml);
+
+    assertThat(allFontsSubset(pdf), is(true));
+    PDDocument pdfDoc = PDDocument.load(pdf);
+    String xmpMetadata = IOUtils.toString(pdfDoc.getDocumentCatalog().getMetadata().exportXMPMetadata());
+    assertThat(xmpMetadata, containsString("http://www.aiim.org/pdfua/ns/id/"));
+    assertThat(pdfDoc.getDocumentCatalog().getStructureTreeRoot() == null, is(false));
+    pdfDoc.close();
+  }
+
+  private static boolean allFontsSubset(byte[] pdf) throws IOException {
+    try (PDDocument pdfDoc = PDDocument.load(pdf)) {
+      boolean subset = true;
+      int fonts = 0;
+      for (PDPage page : pdfDoc.getPages()) {
+        PDResources resources = page.getResources();
+        for (COSName name : resources.getFontNames()) {
+          PDFont font = resources.getFont(name);
+          assertThat(font instanceof PDType0Font, is(true));
+          assertThat(font.isEmbedded(), is(true));
+          subset &= font.getName().matches("[A-Z]{6}\\+.*");
+          fonts++;
+        }
+      }
+      assertThat(fonts > 0, is(true));
+      return subset;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HtmlSourceTest {
+  private static final String HTML = "<html><body><p>café</p></body></html>";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readsString() throws IOException {
+    assertThat(read(HtmlSource.of(HTML)), is(equalTo(HTML)));
+  }
+
+  @Test
+  public void readsReaderWithoutClosingIt() throws IOException {
+    StringReader reader = new StringReader(HTML);
+
+    assertThat(read(HtmlSource.of(reader)), is(equalTo(HTML)));
+    assertThat(reader.ready(), is(true));
+  }
+
+  @Test
+  public void readsStreamInCharset() throws IOException {
+    HtmlSource source = HtmlSource.of(
+        new ByteArrayInputStream(HTML.getBytes(StandardCharsets.ISO_8859_1)), StandardCharsets.ISO_8859_1);
+
+    assertThat(read(source), is(equalTo(HTML)));
+  }
+
+  @Test
+  public void readsSmallFile() throws IOException {
+    Path path = temporaryFolder.newFile("small.html").toPath();
+    Files.write(path, HTML.getBytes(StandardCharsets.UTF_8));
+
+    assertThat(read(HtmlSource.of(path)), is(equalTo(HTML)));
+  }
+
+  @Test
+  public void readsMemoryMappedFile() throws IOException {
+    char[] padding = new char[(int) HtmlSource.MAPPED_FILE_THRESHOLD];
+    Arrays.fill(padding, ' ');
+    String html = HTML + new String(padding) + "é";
+
+    Path path = temporaryFolder.newFile("large.html").toPath();
+    Files.write(path, html.getBytes(StandardCharsets.UTF_8));
+
+    assertThat(read(HtmlSource.of(path, StandardCharsets.UTF_8)), is(equalTo(html)));
+  }
+
+  private String read(HtmlSource source) throws IOException {
+    try (Reader reader = source.openReader()) {
+      return IOUtils.toString(reader);
+    }
+  }
+}
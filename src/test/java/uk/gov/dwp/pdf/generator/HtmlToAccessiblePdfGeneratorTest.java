@@ -1,316 +1,498 @@
-package uk.gov.dwp.pdf.generator;
-
-import com.adobe.xmp.XMPException;
-import com.adobe.xmp.impl.VeraPDFMeta;
-import com.adobe.xmp.impl.VeraPDFXMPNode;
-import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.pdfbox.cos.COSBase;
-import org.apache.pdfbox.cos.COSDictionary;
-import org.apache.pdfbox.cos.COSObject;
-import org.apache.pdfbox.cos.COSString;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.xmpbox.XMPMetadata;
-import org.apache.xmpbox.xml.DomXmpParser;
-import org.apache.xmpbox.xml.XmpParsingException;
-import org.junit.Before;
-import org.junit.BeforeClass;
-import org.junit.Test;
-import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
-
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
-
-import static org.hamcrest.CoreMatchers.containsString;
-import static org.hamcrest.CoreMatchers.equalTo;
-import static org.hamcrest.CoreMatchers.hasItem;
-import static org.hamcrest.CoreMatchers.is;
-import static org.hamcrest.CoreMatchers.startsWith;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertThat;
-import static org.junit.Assert.fail;
-import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.NONE;
-import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
-import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_B;
-import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDF_UA;
-
-@SuppressWarnings("squid:S1192") // string literals allowed
-public class HtmlToAccessiblePdfGeneratorTest {
-  private static Map<String, byte[]> defaultFontMap;
-  private static byte[] defaultColourProfile;
-  private static String htmlFile;
-
-  private HtmlToAccessiblePdfGenerator instance;
-
-  @BeforeClass
-  public static void init() throws IOException {
-    defaultColourProfile = FileUtils.readFileToByteArray(new File("src/test/resources/colours/sRGB.icm"));
-    htmlFile = FileUtils.readFileToString(new File("src/test/resources/successfulHtml.html"));
-
-    defaultFontMap = new HashMap<>();
-    defaultFontMap.put("courier", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/courier.ttf")));
-    defaultFontMap.put("arial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arial.ttf")));
-
-  }
-
-  @Before
-  public void setup() {
-    instance = new HtmlToAccessiblePdfGenerator();
-  }
-
-  @Test
-  public void successfullyCreatePdfaBasic() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
-    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_A);
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
-    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
-
-    validateDocumentConformance(pdfDoc, PDFA_1_A);
-  }
-
-  @Test
-  public void successfullyCreatePdfContainingAnSvg() throws PdfaGeneratorException, IOException, XmpParsingException, XMPException {
-    final String htmlWithSvgFile = FileUtils.readFileToString(new File("src/test/resources/htmlWithSvg.html"));
-    final byte[] pdf = instance.createPdfDocument(htmlWithSvgFile, defaultColourProfile, defaultFontMap, PDF_UA);
-
-    final Set<COSBase> visited = new HashSet<>();
-    final List<COSString> cosStrings = PDDocument.load(pdf).getDocument().getObjects().stream()
-        .flatMap(o -> getCOSStrings(o, visited).stream())
-        .collect(Collectors.toList());
-
-    assertThat(cosStrings.stream().map(COSString::getASCII).collect(Collectors.toList()), hasItem(is("svg")));
-  }
-
-  @Test
-  public void successfullyCreateAccessiblePdfUA() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
-    String accessibleHtml = FileUtils.readFileToString(new File("src/test/resources/accessible-test.html"));
-
-    byte[] pdf = instance.createPdfDocument(accessibleHtml, defaultColourProfile, defaultFontMap, PDF_UA);
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(2)));
-    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
-
-    validateDocumentConformance(pdfDoc, PDF_UA);
-  }
-
-  @Test
-  public void failWithNullConformanceLevel() {
-    try {
-      instance.createPdfDocument("bad-conformance", defaultColourProfile, defaultFontMap, null);
-      fail("should have failed with null conformance");
-    } catch (PdfaGeneratorException e) {
-      assertThat(e.getMessage(), is(equalTo("Conformance level must not be null")));
-    }
-  }
-
-  @Test
-  public void successfullyCreatePdfaBMultiPage() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
-    String pageBreakHtml = FileUtils.readFileToString(new File("src/test/resources/pageBreaksHtml.html"));
-    byte[] pdf = instance.createPdfDocument(pageBreakHtml, defaultColourProfile, defaultFontMap, PDFA_1_A);
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(6)));
-    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
-
-    validateDocumentConformance(pdfDoc, PDFA_1_A);
-  }
-
-  @Test
-  public void failureWithUndefinedFontInHtml() throws IOException {
-    try {
-      instance.createPdfDocument(
-          FileUtils.readFileToString(new File("src/test/resources/noFontSupplied.html")),
-          defaultColourProfile,
-          defaultFontMap,
-          PDFA_1_A);
-
-      fail("should have thrown an error");
-
-    } catch (PdfaGeneratorException e) {
-      assertThat(e.getMessage(), startsWith("html element requests font-family: 'tahoma'"));
-    }
-  }
-
-  @Test
-  public void incorrectFormatWithBadImageRenderingInHtml() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
-    byte[] pdf = instance.createPdfDocument(
-        FileUtils.readFileToString(new File("src/test/resources/imageFailureHtml.html")),
-        defaultColourProfile,
-        defaultFontMap,
-        PDFA_1_A);
-
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
-    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
-
-    validateDocumentConformance(pdfDoc, PDFA_1_A);
-  }
-
-  @Test
-  public void changeConformanceLevelIsHandled() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
-    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_B);
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
-    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
-
-    validateDocumentConformance(pdfDoc, PDFA_1_B);
-  }
-
-  @Test
-  public void noConformanceLevelIsHandled() throws IOException, PdfaGeneratorException {
-    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, NONE);
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
-    assertNull(pdfDoc.getDocumentCatalog().getMetadata());
-  }
-
-  @Test
-  public void testSuccessWithOverrideFontForArial() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
-    defaultFontMap.replace("arial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arialbd.ttf")));
-
-    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_A);
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
-    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
-
-    validateDocumentConformance(pdfDoc, PDFA_1_A);
-  }
-
-  @Test
-  public void testFailureWithBadHtml() throws IOException {
-    try {
-      instance.createPdfDocument(
-          FileUtils.readFileToString(new File("src/test/resources/badHtmlFile.html")),
-          defaultColourProfile,
-          defaultFontMap,
-          PDFA_1_A);
-      fail("should have thrown an error");
-
-    } catch (PdfaGeneratorException e) {
-      assertThat(e.getMessage(), startsWith("Can't load the XML resource"));
-    }
-  }
-
-  @Test
-  public void testFailureWithBadlyNamedFontOverride() throws IOException {
-    Map<String, byte[]> fontMap = new HashMap<>();
-    fontMap.put("aaarial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arialbd.ttf")));
-
-    try {
-      instance.createPdfDocument(htmlFile, defaultColourProfile, fontMap, PDFA_1_A);
-      fail("should have thrown an error");
-
-    } catch (PdfaGeneratorException e) {
-      assertThat(e.getMessage(), startsWith("html element requests font-family: 'courier'"));
-    }
-  }
-
-  @Test
-  public void testFailureWithNullFontOverride() {
-    try {
-      instance.createPdfDocument(htmlFile, defaultColourProfile, null, NONE);
-      fail("should have thrown an error");
-
-    } catch (PdfaGeneratorException e) {
-      assertThat(e.getCause().getClass().getName(), is(equalTo(NullPointerException.class.getName())));
-    }
-  }
-
-  @Test
-  public void testSuccessWithBadlyNamedFontOverrideIsOkOnNone() throws IOException, PdfaGeneratorException {
-    Map<String, byte[]> fontMap = new HashMap<>();
-    fontMap.put("aaarial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arialbd.ttf")));
-    instance.createPdfDocument(htmlFile, defaultColourProfile, fontMap, NONE);
-  }
-
-  @Test
-  public void testSuccessWithOverrideColourProfile() throws IOException, XmpParsingException, PdfaGeneratorException, XMPException {
-    byte[] colourProfile = FileUtils.readFileToByteArray(new File("src/test/resources/colours/sRGB.icm"));
-
-    byte[] pdf = instance.createPdfDocument(htmlFile, colourProfile, defaultFontMap, PDFA_1_A);
-    PDDocument pdfDoc = PDDocument.load(pdf);
-
-    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
-    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
-
-    validateDocumentConformance(pdfDoc, PDFA_1_A);
-  }
-
-  @Test
-  public void testFailureWithBadColourProfileOverride() {
-    try {
-      instance.createPdfDocument(htmlFile, "i-am-a-colour-profile".getBytes(), defaultFontMap, PDFA_1_A);
-      fail("should have thrown an error");
-
-    } catch (PdfaGeneratorException e) {
-      assertThat(e.getMessage(), containsString("Invalid ICC Profile Data"));
-    }
-  }
-
-  private void validateDocumentConformance(PDDocument pdfDoc, PdfConformanceLevel conformance) throws IOException, XMPException, XmpParsingException {
-    if (conformance == PDF_UA) {
-      InputStream inputStream = pdfDoc.getDocumentCatalog().getMetadata().exportXMPMetadata();
-      VeraPDFMeta verMeta = VeraPDFMeta.parse(fixRdfXml(inputStream));
-
-      VeraPDFXMPNode item = verMeta.getProperty("http://www.aiim.org/pdfua/ns/id/", "part");
-      assertNotNull("expecting PDFUA conformity", item);
-
-    } else {
-      PdfRendererBuilder.PdfAConformance level = PdfRendererBuilder.PdfAConformance.valueOf(conformance.name());
-
-      XMPMetadata xmpMetadata = new DomXmpParser().parse(pdfDoc.getDocumentCatalog().getMetadata().exportXMPMetadata());
-      assertThat(String.format("should be conformance level %s", conformance), xmpMetadata.getPDFIdentificationSchema().getConformance(), is(equalTo(level.getConformanceValue())));
-      assertThat(String.format("should be part %d", level.getPart()), xmpMetadata.getPDFIdentificationSchema().getPart(), is(equalTo(level.getPart())));
-    }
-  }
-
-  private InputStream fixRdfXml(final InputStream xmpMetaDataInputStream) throws IOException {
-    /*
-      Without performing this substitution the VeraPDFMeta.parse() call fails with:
-        "com.adobe.xmp.XMPException: Nested content not allowed with rdf:resource or property attributes"
-      Simply having the openhtmltopdf-svg-support library included in the project causes this issue, without it
-      the 'lang' attribute has the 'xml:' namespace prefix and there is no error - no idea why.
-     */
-    final String xmpMetaData = IOUtils.toString(xmpMetaDataInputStream);
-    return IOUtils.toInputStream(xmpMetaData.replaceAll("<rdf:li lang", "<rdf:li xml:lang"));
-  }
-
-  private final List<COSString> getCOSStrings(final COSBase base, final Set<COSBase> visited) {
-    if (visited.contains(base)) {
-      return Collections.emptyList();
-    }
-    visited.add(base);
-
-    if (base instanceof COSDictionary) {
-      return ((COSDictionary) base).getValues().stream()
-          .flatMap(value -> getCOSStrings(value, visited).stream())
-          .collect(Collectors.toList());
-
-    } else if (base instanceof COSObject) {
-      return getCOSStrings(((COSObject) base).getObject(), visited);
-
-    } else if (base instanceof COSString) {
-      return Arrays.asList((COSString) base);
-    }
-
-    return Collections.emptyList();
-  }
-
-}
+package uk.gov.dwp.pdf.generator;
+
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.impl.VeraPDFMeta;
+import com.adobe.xmp.impl.VeraPDFXMPNode;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.xmpbox.XMPMetadata;
+import org.apache.xmpbox.xml.DomXmpParser;
+import org.apache.xmpbox.xml.XmpParsingException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import javax.imageio.ImageReader;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ServiceRegistry;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.NONE;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_B;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDF_UA;
+
+@SuppressWarnings("squid:S1192") // string literals allowed
+public class HtmlToAccessiblePdfGeneratorTest {
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String htmlFile;
+
+  private HtmlToAccessiblePdfGenerator instance;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    defaultColourProfile = FileUtils.readFileToByteArray(new File("src/test/resources/colours/sRGB.icm"));
+    htmlFile = FileUtils.readFileToString(new File("src/test/resources/successfulHtml.html"));
+
+    defaultFontMap = new HashMap<>();
+    defaultFontMap.put("courier", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/courier.ttf")));
+    defaultFontMap.put("arial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arial.ttf")));
+
+  }
+
+  @Before
+  public void setup() {
+    instance = new HtmlToAccessiblePdfGenerator();
+  }
+
+  @Test
+  public void successfullyCreatePdfaBasic() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_A);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
+
+    validateDocumentConformance(pdfDoc, PDFA_1_A);
+  }
+
+  @Test
+  public void successfullyCreatePdfContainingAnSvg() throws PdfaGeneratorException, IOException, XmpParsingException, XMPException {
+    final String htmlWithSvgFile = FileUtils.readFileToString(new File("src/test/resources/htmlWithSvg.html"));
+    final byte[] pdf = instance.createPdfDocument(htmlWithSvgFile, defaultColourProfile, defaultFontMap, PDF_UA);
+
+    final Set<COSBase> visited = new HashSet<>();
+    final List<COSString> cosStrings = PDDocument.load(pdf).getDocument().getObjects().stream()
+        .flatMap(o -> getCOSStrings(o, visited).stream())
+        .collect(Collectors.toList());
+
+    assertThat(cosStrings.stream().map(COSString::getASCII).collect(Collectors.toList()), hasItem(is("svg")));
+  }
+
+  @Test
+  public void successfullyCreateAccessiblePdfUA() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    String accessibleHtml = FileUtils.readFileToString(new File("src/test/resources/accessible-test.html"));
+
+    byte[] pdf = instance.createPdfDocument(accessibleHtml, defaultColourProfile, defaultFontMap, PDF_UA);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(2)));
+    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
+
+    validateDocumentConformance(pdfDoc, PDF_UA);
+  }
+
+  @Test
+  public void successfullyStreamPdfaToOutputStream() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    final AtomicBoolean closed = new AtomicBoolean();
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+
+    instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_A, outputStream);
+    PDDocument pdfDoc = PDDocument.load(outputStream.toByteArray());
+
+    assertThat(closed.get(), is(false));
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    validateDocumentConformance(pdfDoc, PDFA_1_A);
+  }
+
+  @Test
+  public void embeddedImagesAreEncodedOnceAndRendered() throws IOException, PdfaGeneratorException, XMPException, XmpParsingException {
+    ImageCache imageCache = new ImageCache(1024 * 1024);
+    HtmlToAccessiblePdfGenerator cachingInstance = new HtmlToAccessiblePdfGenerator(
+        FontCache.shared(), imageCache, PdfRenderListener.NONE);
+    ImageProbes probes = new ImageProbes();
+
+    IIORegistry.getDefaultInstance().registerServiceProvider(probes, ImageReaderSpi.class);
+    try {
+      List<byte[]> pdfs = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        int probed = probes.count.get();
+        pdfs.add(cachingInstance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_A));
+        // the second render copies the encoded image without reading it again
+        assertThat(probes.count.get() > probed, is(i == 0));
+      }
+
+      for (byte[] pdf : pdfs) {
+        PDDocument pdfDoc = PDDocument.load(pdf);
+        PDResources resources = pdfDoc.getPage(0).getResources();
+        List<PDXObject> images = new ArrayList<>();
+        for (COSName name : resources.getXObjectNames()) {
+          images.add(resources.getXObject(name));
+        }
+        assertThat(images.size(), is(equalTo(1)));
+        assertThat(images.get(0) instanceof PDImageXObject, is(true));
+        validateDocumentConformance(pdfDoc, PDFA_1_A);
+        pdfDoc.close();
+      }
+
+    } finally {
+      IIORegistry.getDefaultInstance().deregisterServiceProvider(probes, ImageReaderSpi.class);
+    }
+
+    assertThat(imageCache.missCount(), is(equalTo(1L)));
+    assertThat(imageCache.hitCount(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void successfullyStreamPdfToChannel() throws IOException, PdfaGeneratorException {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    try (WritableByteChannel channel = Channels.newChannel(outputStream)) {
+      instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, NONE, channel);
+      assertThat(channel.isOpen(), is(true));
+    }
+
+    assertThat(PDDocument.load(outputStream.toByteArray()).getNumberOfPages(), is(equalTo(1)));
+  }
+
+  @Test
+  public void generatorsImplementingOnlyTheStringMethodCanStream() throws IOException, PdfaGeneratorException {
+    final List<String> rendered = new ArrayList<>();
+    final HtmlToPdfGenerator stringOnly = (html, colourProfile, fontMap, conformanceLevel) -> {
+      rendered.add(html);
+      return new byte[]{1, 2, 3};
+    };
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    stringOnly.createPdfDocument(HtmlSource.of(new StringReader(htmlFile)), defaultColourProfile, defaultFontMap, NONE, outputStream);
+
+    assertThat(rendered, is(equalTo(Collections.singletonList(htmlFile))));
+    assertThat(outputStream.toByteArray(), is(equalTo(new byte[]{1, 2, 3})));
+  }
+
+  @Test
+  public void successfullyCreatePdfaFromReader() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    byte[] pdf = instance.createPdfDocument(HtmlSource.of(new StringReader(htmlFile)), defaultColourProfile, defaultFontMap, PDFA_1_A);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    validateDocumentConformance(pdfDoc, PDFA_1_A);
+  }
+
+  @Test
+  public void successfullyCreatePdfaFromInputStream() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    try (InputStream inputStream = new FileInputStream("src/test/resources/pageBreaksHtml.html")) {
+      byte[] pdf = instance.createPdfDocument(HtmlSource.of(inputStream, StandardCharsets.UTF_8), defaultColourProfile, defaultFontMap, PDFA_1_A);
+      PDDocument pdfDoc = PDDocument.load(pdf);
+
+      assertThat(pdfDoc.getNumberOfPages(), is(equalTo(6)));
+      validateDocumentConformance(pdfDoc, PDFA_1_A);
+    }
+  }
+
+  @Test
+  public void successfullyCreatePdfUaFromPath() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    byte[] pdf = instance.createPdfDocument(HtmlSource.of(Paths.get("src/test/resources/accessible-test.html")), defaultColourProfile, defaultFontMap, PDF_UA);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(2)));
+    validateDocumentConformance(pdfDoc, PDF_UA);
+  }
+
+  @Test
+  public void failureWithUndefinedFontInStreamedHtml() throws IOException {
+    try (InputStream inputStream = new FileInputStream("src/test/resources/noFontSupplied.html")) {
+      instance.createPdfDocument(HtmlSource.of(inputStream, StandardCharsets.UTF_8), defaultColourProfile, defaultFontMap, PDFA_1_A);
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("html element requests font-family: 'tahoma'"));
+    }
+  }
+
+  @Test
+  public void failWithNullConformanceLevel() {
+    try {
+      instance.createPdfDocument("bad-conformance", defaultColourProfile, defaultFontMap, null);
+      fail("should have failed with null conformance");
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), is(equalTo("Conformance level must not be null")));
+    }
+  }
+
+  @Test
+  public void successfullyCreatePdfaBMultiPage() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    String pageBreakHtml = FileUtils.readFileToString(new File("src/test/resources/pageBreaksHtml.html"));
+    byte[] pdf = instance.createPdfDocument(pageBreakHtml, defaultColourProfile, defaultFontMap, PDFA_1_A);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(6)));
+    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
+
+    validateDocumentConformance(pdfDoc, PDFA_1_A);
+  }
+
+  @Test
+  public void failureWithUndefinedFontInHtml() throws IOException {
+    try {
+      instance.createPdfDocument(
+          FileUtils.readFileToString(new File("src/test/resources/noFontSupplied.html")),
+          defaultColourProfile,
+          defaultFontMap,
+          PDFA_1_A);
+
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("html element requests font-family: 'tahoma'"));
+    }
+  }
+
+  @Test
+  public void incorrectFormatWithBadImageRenderingInHtml() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    byte[] pdf = instance.createPdfDocument(
+        FileUtils.readFileToString(new File("src/test/resources/imageFailureHtml.html")),
+        defaultColourProfile,
+        defaultFontMap,
+        PDFA_1_A);
+
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
+
+    validateDocumentConformance(pdfDoc, PDFA_1_A);
+  }
+
+  @Test
+  public void changeConformanceLevelIsHandled() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_B);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
+
+    validateDocumentConformance(pdfDoc, PDFA_1_B);
+  }
+
+  @Test
+  public void noConformanceLevelIsHandled() throws IOException, PdfaGeneratorException {
+    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, NONE);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    assertNull(pdfDoc.getDocumentCatalog().getMetadata());
+  }
+
+  @Test
+  public void testSuccessWithOverrideFontForArial() throws IOException, PdfaGeneratorException, XmpParsingException, XMPException {
+    defaultFontMap.replace("arial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arialbd.ttf")));
+
+    byte[] pdf = instance.createPdfDocument(htmlFile, defaultColourProfile, defaultFontMap, PDFA_1_A);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
+
+    validateDocumentConformance(pdfDoc, PDFA_1_A);
+  }
+
+  @Test
+  public void testFailureWithBadHtml() throws IOException {
+    try {
+      instance.createPdfDocument(
+          FileUtils.readFileToString(new File("src/test/resources/badHtmlFile.html")),
+          defaultColourProfile,
+          defaultFontMap,
+          PDFA_1_A);
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("Can't load the XML resource"));
+    }
+  }
+
+  @Test
+  public void testFailureWithBadlyNamedFontOverride() throws IOException {
+    Map<String, byte[]> fontMap = new HashMap<>();
+    fontMap.put("aaarial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arialbd.ttf")));
+
+    try {
+      instance.createPdfDocument(htmlFile, defaultColourProfile, fontMap, PDFA_1_A);
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("html element requests font-family: 'courier'"));
+    }
+  }
+
+  @Test
+  public void testFailureWithNullFontOverride() {
+    try {
+      instance.createPdfDocument(htmlFile, defaultColourProfile, null, NONE);
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getCause().getClass().getName(), is(equalTo(NullPointerException.class.getName())));
+    }
+  }
+
+  @Test
+  public void testSuccessWithBadlyNamedFontOverrideIsOkOnNone() throws IOException, PdfaGeneratorException {
+    Map<String, byte[]> fontMap = new HashMap<>();
+    fontMap.put("aaarial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arialbd.ttf")));
+    instance.createPdfDocument(htmlFile, defaultColourProfile, fontMap, NONE);
+  }
+
+  @Test
+  public void testSuccessWithOverrideColourProfile() throws IOException, XmpParsingException, PdfaGeneratorException, XMPException {
+    byte[] colourProfile = FileUtils.readFileToByteArray(new File("src/test/resources/colours/sRGB.icm"));
+
+    byte[] pdf = instance.createPdfDocument(htmlFile, colourProfile, defaultFontMap, PDFA_1_A);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    assertNotNull(pdfDoc.getDocumentCatalog().getMetadata());
+
+    validateDocumentConformance(pdfDoc, PDFA_1_A);
+  }
+
+  @Test
+  public void testFailureWithBadColourProfileOverride() {
+    try {
+      instance.createPdfDocument(htmlFile, "i-am-a-colour-profile".getBytes(), defaultFontMap, PDFA_1_A);
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), containsString("Invalid ICC Profile Data"));
+    }
+  }
+
+  private void validateDocumentConformance(PDDocument pdfDoc, PdfConformanceLevel conformance) throws IOException, XMPException, XmpParsingException {
+    if (conformance == PDF_UA) {
+      InputStream inputStream = pdfDoc.getDocumentCatalog().getMetadata().exportXMPMetadata();
+      VeraPDFMeta verMeta = VeraPDFMeta.parse(fixRdfXml(inputStream));
+
+      VeraPDFXMPNode item = verMeta.getProperty("http://www.aiim.org/pdfua/ns/id/", "part");
+      assertNotNull("expecting PDFUA conformity", item);
+
+    } else {
+      PdfRendererBuilder.PdfAConformance level = PdfRendererBuilder.PdfAConformance.valueOf(conformance.name());
+
+      XMPMetadata xmpMetadata = new DomXmpParser().parse(pdfDoc.getDocumentCatalog().getMetadata().exportXMPMetadata());
+      assertThat(String.format("should be conformance level %s", conformance), xmpMetadata.getPDFIdentificationSchema().getConformance(), is(equalTo(level.getConformanceValue())));
+      assertThat(String.format("should be part %d", level.getPart()), xmpMetadata.getPDFIdentificationSchema().getPart(), is(equalTo(level.getPart())));
+    }
+  }
+
+  private InputStream fixRdfXml(final InputStream xmpMetaDataInputStream) throws IOException {
+    /*
+      Without performing this substitution the VeraPDFMeta.parse() call fails with:
+        "com.adobe.xmp.XMPException: Nested content not allowed with rdf:resource or property attributes"
+      Simply having the openhtmltopdf-svg-support library included in the project causes this issue, without it
+      the 'lang' attribute has the 'xml:' namespace prefix and there is no error - no idea why.
+     */
+    final String xmpMetaData = IOUtils.toString(xmpMetaDataInputStream);
+    return IOUtils.toInputStream(xmpMetaData.replaceAll("<rdf:li lang", "<rdf:li xml:lang"));
+  }
+
+  private final List<COSString> getCOSStrings(final COSBase base, final Set<COSBase> visited) {
+    if (visited.contains(base)) {
+      return Collections.emptyList();
+    }
+    visited.add(base);
+
+    if (base instanceof COSDictionary) {
+      return ((COSDictionary) base).getValues().stream()
+          .flatMap(value -> getCOSStrings(value, visited).stream())
+          .collect(Collectors.toList());
+
+    } else if (base instanceof COSObject) {
+      return getCOSStrings(((COSObject) base).getObject(), visited);
+
+    } else if (base instanceof COSString) {
+      return Arrays.asList((COSString) base);
+    }
+
+    return Collections.emptyList();
+  }
+
+
+  /**
+   * Counts every image ImageIO is asked to read, reading none of them itself.
+   */
+  private static final class ImageProbes extends ImageReaderSpi {
+    private final AtomicInteger count = new AtomicInteger();
+
+    ImageProbes() {
+      super("test", "1", new String[]{"probes"}, null, null, ImageReader.class.getName(),
+          new Class<?>[]{ImageInputStream.class}, null, false, null, null, null, null,
+          false, null, null, null, null);
+    }
+
+    @Override
+    public void onRegistration(ServiceRegistry registry, Class<?> category) {
+      // asked before any other reader, so every image read is counted
+      registry.getServiceProviders(ImageReaderSpi.class, false).forEachRemaining(other -> {
+        if (other != this) {
+          registry.setOrdering(ImageReaderSpi.class, this, other);
+        }
+      });
+    }
+
+    @Override
+    public boolean canDecodeInput(Object source) {
+      count.incrementAndGet();
+      return false;
+    }
+
+    @Override
+    public ImageReader createReaderInstance(Object extension) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+      return "counts the images read";
+    }
+  }
+}
@@ -1,7 +1,19 @@
 package uk.gov.dwp.pdf.generator;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -11,4 +23,60 @@ public class HtmlToPdfFactoryTest {
   public void shouldReturnAnInstanceOfHtmlToAccessiblePdfGenerator() {
     assertThat(HtmlToPdfFactory.create() instanceof HtmlToAccessiblePdfGenerator, is(true));
   }
+
+  @Test
+  public void shouldReturnAnInstanceOfPreparedAccessiblePdfGenerator() throws IOException, PdfaGeneratorException {
+    byte[] colourProfile = FileUtils.readFileToByteArray(new File("src/test/resources/colours/sRGB.icm"));
+    PreparedHtmlToPdfGenerator generator = HtmlToPdfFactory.create(
+        colourProfile, Collections.emptyMap(), PdfConformanceLevel.NONE);
+
+    assertThat(generator instanceof PreparedAccessiblePdfGenerator, is(true));
+  }
+
+  @Test
+  public void warmUpRendersEachLevel() throws IOException, PdfaGeneratorException {
+    byte[] colourProfile = FileUtils.readFileToByteArray(new File("src/test/resources/colours/sRGB.icm"));
+    Map<String, byte[]> fontMap = new HashMap<>();
+    fontMap.put("courier", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/courier.ttf")));
+    fontMap.put("arial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arial.ttf")));
+
+    PdfWarmUpReport report = HtmlToPdfFactory.warmUp(colourProfile, fontMap, 2,
+        PdfConformanceLevel.PDFA_2_A, PdfConformanceLevel.PDF_UA);
+
+    assertThat(report.getDocumentCount(), is(equalTo(4)));
+    assertThat(report.getLevelDurations().keySet(),
+        is(equalTo(EnumSet.of(PdfConformanceLevel.PDFA_2_A, PdfConformanceLevel.PDF_UA))));
+    assertThat(report.getDuration().isZero(), is(false));
+  }
+
+  @Test
+  public void warmUpRendersThroughTheGivenGenerator() throws IOException, PdfaGeneratorException {
+    byte[] colourProfile = FileUtils.readFileToByteArray(new File("src/test/resources/colours/sRGB.icm"));
+    Map<String, byte[]> fontMap = new HashMap<>();
+    fontMap.put("arial", FileUtils.readFileToByteArray(new File("src/test/resources/fonts/arial.ttf")));
+    List<PdfRenderMetrics> rendered = new ArrayList<>();
+    PreparedHtmlToPdfGenerator generator = HtmlToPdfFactory.builder()
+        .colourProfile(colourProfile)
+        .fontMap(fontMap)
+        .conformanceLevel(PdfConformanceLevel.PDFA_2_B)
+        .preflight(true)
+        .renderListener(new PdfRenderListener() {
+          @Override
+          public void onRendered(PdfRenderMetrics metrics) {
+            rendered.add(metrics);
+          }
+        })
+        .build();
+
+    PdfWarmUpReport report = HtmlToPdfFactory.warmUp(generator, fontMap, 3);
+
+    assertThat(rendered.size(), is(equalTo(3)));
+    assertThat(report.getDocumentCount(), is(equalTo(3)));
+    assertThat(report.getLevelDurations().keySet(), is(equalTo(EnumSet.of(PdfConformanceLevel.PDFA_2_B))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void warmUpNeedsAConformanceLevel() throws PdfaGeneratorException {
+    HtmlToPdfFactory.warmUp(null, Collections.emptyMap());
+  }
 }
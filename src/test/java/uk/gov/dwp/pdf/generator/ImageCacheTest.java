@@ -0,0 +1,167 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ImageCacheTest {
+  private static final RenderBudget UNLIMITED = RenderBudget.start(PdfRenderLimits.none());
+
+  private static String dataUri(int rgb) {
+    return dataUri("png", rgb);
+  }
+
+  private static String dataUri(String format, int rgb) {
+    BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(1, 1, rgb);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, format, bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return "data:image/" + format + ";base64," + Base64.getEncoder().encodeToString(bytes.toByteArray());
+  }
+
+  @Test
+  public void sameDataUriIsOnlyEncodedOnce() {
+    ImageCache cache = new ImageCache(1024 * 1024);
+
+    EncodedImage first = cache.encode(dataUri(0xff0000), UNLIMITED);
+    EncodedImage second = cache.encode(new String(dataUri(0xff0000)), UNLIMITED);
+
+    assertThat(first.getWidth(), is(equalTo(4)));
+    assertThat(first.getHeight(), is(equalTo(3)));
+    assertThat(second, is(sameInstance(first)));
+    assertThat(cache.size(), is(equalTo(1)));
+    assertThat(cache.missCount(), is(equalTo(1L)));
+    assertThat(cache.hitCount(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void eachDocumentGetsItsOwnCopyOfTheImage() throws IOException {
+    EncodedImage image = new ImageCache(1024 * 1024).encode(dataUri(0xff0000), UNLIMITED);
+
+    try (PDDocument first = new PDDocument(); PDDocument second = new PDDocument()) {
+      PDImageXObject firstImage = image.toXObject(first);
+      PDImageXObject secondImage = image.toXObject(second);
+
+      assertThat(firstImage.getCOSObject(), is(not(sameInstance(secondImage.getCOSObject()))));
+      assertThat(firstImage.getImage().getRGB(1, 1), is(equalTo(0xffff0000)));
+      assertThat(secondImage.getImage().getRGB(1, 1), is(equalTo(0xffff0000)));
+    }
+  }
+
+  @Test
+  public void imagesOfTheSameLengthAreNotConfused() {
+    ImageCache cache = new ImageCache(1024 * 1024);
+    String red = dataUri("bmp", 0xff0000);
+    String blue = dataUri("bmp", 0x0000ff);
+
+    assertThat(blue.length(), is(equalTo(red.length())));
+    assertThat(cache.encode(blue, UNLIMITED), is(not(sameInstance(cache.encode(red, UNLIMITED)))));
+    assertThat(cache.size(), is(equalTo(2)));
+  }
+
+  @Test
+  public void cacheIsBoundedByBytes() {
+    String first = dataUri(0xff0000);
+    String second = dataUri(0x0000ff);
+    ImageCache sizing = new ImageCache(1024 * 1024);
+    long firstBytes = sizing.encode(first, UNLIMITED).getBytes();
+    long secondBytes = sizing.encode(second, UNLIMITED).getBytes();
+    ImageCache cache = new ImageCache(Math.max(firstBytes, secondBytes));
+
+    EncodedImage image = cache.encode(first, UNLIMITED);
+    cache.encode(second, UNLIMITED);
+
+    assertThat(cache.size(), is(equalTo(1)));
+    assertThat(cache.evictionCount(), is(equalTo(1L)));
+    assertThat(cache.bytes(), is(equalTo(secondBytes)));
+    assertThat(cache.encode(first, UNLIMITED), is(not(sameInstance(image))));
+  }
+
+  @Test
+  public void entriesAreKeyedOnThePayloadNotTheWholeUri() {
+    ImageCache cache = new ImageCache(1024 * 1024);
+    String uri = dataUri(0xff0000);
+    String payload = uri.substring(uri.indexOf(','));
+
+    EncodedImage png = cache.encode(uri, UNLIMITED);
+    EncodedImage labelled = cache.encode("data:image/png;name=a-long-file-name.png;base64" + payload, UNLIMITED);
+
+    assertThat(labelled, is(sameInstance(png)));
+    assertThat(cache.size(), is(equalTo(1)));
+  }
+
+  @Test
+  public void cachedImagesAreCheckedAgainstTheImageLimit() {
+    ImageCache cache = new ImageCache(1024 * 1024);
+    cache.encode(dataUri(0xff0000), UNLIMITED);
+
+    try {
+      cache.encode(dataUri(0xff0000), RenderBudget.start(PdfRenderLimits.none().withMaximumImagePixels(11)));
+      fail("should have refused the image");
+
+    } catch (RenderBudget.Exceeded e) {
+      assertThat(cache.hitCount(), is(equalTo(1L)));
+    }
+  }
+
+  @Test
+  public void imagesLargerThanTheCacheAreEncodedButNotHeld() {
+    ImageCache cache = new ImageCache(8);
+
+    assertThat(cache.encode(dataUri(0xff0000), UNLIMITED).getWidth(), is(equalTo(4)));
+    assertThat(cache.size(), is(equalTo(0)));
+  }
+
+  @Test
+  public void uriThatIsNotABase64ImageIsIgnored() {
+    ImageCache cache = new ImageCache(1024);
+
+    assertThat(cache.encode("http://localhost/image.png", UNLIMITED), is(nullValue()));
+    assertThat(cache.encode("data:image/png,plain", UNLIMITED), is(nullValue()));
+    assertThat(cache.encode("data:image/png;base64,@@@", UNLIMITED), is(nullValue()));
+    assertThat(cache.encode("data:image/png;base64,a", UNLIMITED), is(nullValue()));
+    assertThat(cache.encode("data:image/png;base64,aW1hZ2U=", UNLIMITED), is(nullValue()));
+    assertThat(cache.missCount(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void clearRemovesAllEntries() {
+    ImageCache cache = new ImageCache(1024 * 1024);
+    cache.encode(dataUri(0xff0000), UNLIMITED);
+
+    cache.clear();
+
+    assertThat(cache.size(), is(equalTo(0)));
+    assertThat(cache.bytes(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void sizeMustBePositive() {
+    try {
+      new ImageCache(0);
+      fail("should have rejected a zero sized cache");
+
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), is(equalTo("Image cache size must be at least 1 byte")));
+    }
+  }
+}
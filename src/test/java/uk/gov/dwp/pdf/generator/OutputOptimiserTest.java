@@ -0,0 +1,172 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.isCompliant;
+
+public class OutputOptimiserTest {
+  private static final int LARGE_IMAGE_PIXELS = 1200;
+
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+  private static String largeImageHtml;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+    largeImageHtml = accessibleHtml.replace("</body>",
+        "<img width=\"100px\" height=\"100px\" alt=\"large image\" src=\"data:image/png;base64,"
+            + Base64.getEncoder().encodeToString(largePng()) + "\"/></body>");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void optimisedDocumentIsSmallerAndReported() throws PdfaGeneratorException {
+    List<PdfRenderMetrics> rendered = new ArrayList<>();
+    byte[] plain = generator(PdfConformanceLevel.PDF_UA, null, null).createPdfDocument(accessibleHtml);
+    byte[] optimised = generator(PdfConformanceLevel.PDF_UA, PdfOptimisation.lossless(), rendered)
+        .createPdfDocument(accessibleHtml);
+
+    assertThat(optimised.length < plain.length, is(true));
+    assertThat(rendered.size(), is(equalTo(1)));
+    assertThat(rendered.get(0).getBytesSaved() > 0, is(true));
+    assertThat(rendered.get(0).getDuration(PdfRenderPhase.OPTIMISE).isZero(), is(false));
+    assertThat(rendered.get(0).toString().contains("bytes saved"), is(true));
+  }
+
+  @Test
+  public void unoptimisedDocumentReportsNoSaving() throws PdfaGeneratorException {
+    List<PdfRenderMetrics> rendered = new ArrayList<>();
+    generator(PdfConformanceLevel.PDF_UA, null, rendered).createPdfDocument(accessibleHtml);
+
+    assertThat(rendered.get(0).getBytesSaved(), is(equalTo(-1L)));
+    assertThat(rendered.get(0).getDuration(PdfRenderPhase.OPTIMISE).isZero(), is(true));
+  }
+
+  @Test
+  public void largeImagesAreDownsampledToTheMaximumResolution() throws Exception {
+    byte[] lossless = generator(PdfConformanceLevel.PDFA_2_B, PdfOptimisation.lossless(), null)
+        .createPdfDocument(largeImageHtml);
+    byte[] downsampled = generator(PdfConformanceLevel.PDFA_2_B, PdfOptimisation.downsamplingTo(150), null)
+        .createPdfDocument(largeImageHtml);
+
+    assertThat(largestImageWidth(lossless), is(equalTo(LARGE_IMAGE_PIXELS)));
+    // drawn 75 points wide, so about 156 pixels at 150dpi
+    assertThat(largestImageWidth(downsampled) < LARGE_IMAGE_PIXELS / 4, is(true));
+    assertThat(downsampled.length < lossless.length, is(true));
+    assertThat(isCompliant(downsampled, PdfConformanceLevel.PDFA_2_B), is(true));
+  }
+
+  @Test
+  public void optimisedPdfaDocumentsValidate() throws Exception {
+    for (PdfConformanceLevel level : new PdfConformanceLevel[]{PdfConformanceLevel.PDFA_1_B,
+        PdfConformanceLevel.PDFA_2_A, PdfConformanceLevel.PDFA_2_B, PdfConformanceLevel.PDFA_3_U}) {
+
+      byte[] pdf = generator(level, PdfOptimisation.downsamplingTo(150), null).createPdfDocument(largeImageHtml);
+
+      assertThat(level.name(), isCompliant(pdf, level), is(true));
+    }
+  }
+
+  @Test
+  public void optimisedAccessibleDocumentStaysTagged() throws Exception {
+    byte[] pdf = generator(PdfConformanceLevel.PDF_UA, PdfOptimisation.downsamplingTo(150), null)
+        .createPdfDocument(largeImageHtml);
+
+    try (PDDocument pdfDoc = PDDocument.load(pdf)) {
+      assertThat(pdfDoc.getDocumentCatalog().getStructureTreeRoot(), is(notNullValue()));
+      assertThat(pdfDoc.getDocumentCatalog().getMarkInfo().isMarked(), is(true));
+    }
+  }
+
+  @Test
+  public void optimisedCombinedDocumentIsReported() throws PdfaGeneratorException {
+    List<PdfRenderMetrics> rendered = new ArrayList<>();
+    generator(PdfConformanceLevel.PDFA_2_B, PdfOptimisation.lossless(), rendered).createCombinedPdfDocument(
+        Arrays.asList(HtmlSource.of(accessibleHtml), HtmlSource.of(accessibleHtml)));
+
+    assertThat(rendered.get(rendered.size() - 1).getBytesSaved() > 0, is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maximumResolutionMustBePositive() {
+    PdfOptimisation.downsamplingTo(0);
+  }
+
+  private PreparedHtmlToPdfGenerator generator(PdfConformanceLevel level, PdfOptimisation optimisation,
+                                               List<PdfRenderMetrics> rendered) throws PdfaGeneratorException {
+    HtmlToPdfGeneratorBuilder builder = HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(level)
+        .optimise(optimisation);
+    if (rendered != null) {
+      builder.renderListener(new PdfRenderListener() {
+        @Override
+        public void onRendered(PdfRenderMetrics metrics) {
+          rendered.add(metrics);
+        }
+      });
+    }
+    return builder.build();
+  }
+
+  private static int largestImageWidth(byte[] pdf) throws IOException {
+    int largest = 0;
+    try (PDDocument pdfDoc = PDDocument.load(pdf)) {
+      for (PDPage page : pdfDoc.getPages()) {
+        PDResources resources = page.getResources();
+        for (COSName name : resources.getXObjectNames()) {
+          PDXObject xObject = resources.getXObject(name);
+          if (xObject instanceof PDImageXObject) {
+            largest = Math.max(largest, ((PDImageXObject) xObject).getWidth());
+          }
+        }
+      }
+    }
+    return largest;
+  }
+
+  private static byte[] largePng() throws IOException {
+    // noisy, so the png does not compress away and the resampled image is clearly smaller
+    BufferedImage image = new BufferedImage(LARGE_IMAGE_PIXELS, LARGE_IMAGE_PIXELS, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(42);
+    for (int y = 0; y < LARGE_IMAGE_PIXELS; y++) {
+      for (int x = 0; x < LARGE_IMAGE_PIXELS; x++) {
+        image.setRGB(x, y, (x * 255 / LARGE_IMAGE_PIXELS) << 16 | random.nextInt(64) << 8 | y * 255 / LARGE_IMAGE_PIXELS);
+      }
+    }
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", png);
+    return png.toByteArray();
+  }
+}
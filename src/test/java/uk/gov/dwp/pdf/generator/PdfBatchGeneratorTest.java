@@ -0,0 +1,186 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfBatchGeneratorTest {
+  private static PreparedHtmlToPdfGenerator generator;
+  private static String htmlFile;
+  private static String badHtmlFile;
+
+  @BeforeClass
+  public static void init() throws PdfaGeneratorException {
+    htmlFile = html("successfulHtml.html");
+    badHtmlFile = html("badHtmlFile.html");
+
+    generator = HtmlToPdfFactory.create(colourProfile(), fontMap(), PDFA_1_A);
+  }
+
+  @Test
+  public void badDocumentDoesNotFailTheBatch() throws Exception {
+    List<PdfRenderJob> jobs = new ArrayList<>();
+    jobs.add(PdfRenderJob.of("good-1", htmlFile));
+    jobs.add(PdfRenderJob.of("bad", badHtmlFile));
+    jobs.add(PdfRenderJob.of("good-2", HtmlSource.of(htmlFile)));
+
+    Map<String, PdfRenderResult> results = new ConcurrentHashMap<>();
+    PdfBatchSummary summary;
+    try (PdfBatchGenerator batch = new PdfBatchGenerator(generator, 2, 2)) {
+      summary = batch.generate(jobs, result -> results.put(result.getId(), result));
+    }
+
+    assertThat(summary.getJobCount(), is(equalTo(3L)));
+    assertThat(summary.getSucceeded(), is(equalTo(2L)));
+    assertThat(summary.getFailed(), is(equalTo(1L)));
+    assertThat(summary.getDocumentsPerSecond() > 0, is(true));
+
+    assertThat(results.get("bad").isSuccess(), is(false));
+    assertThat(results.get("bad").getFailure().getMessage(), startsWith("Can't load the XML resource"));
+    for (String id : new String[]{"good-1", "good-2"}) {
+      PDDocument pdfDoc = PDDocument.load(results.get(id).getPdf());
+      assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+      pdfDoc.close();
+    }
+  }
+
+  @Test
+  public void rendersInFlightAreCapped() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maximum = new AtomicInteger();
+    PreparedHtmlToPdfGenerator counting = new PreparedHtmlToPdfGenerator() {
+      @Override
+      public void createPdfDocument(HtmlSource html, OutputStream outputStream) throws PdfaGeneratorException {
+        maximum.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(5);
+          generator.createPdfDocument(html, outputStream);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          running.decrementAndGet();
+        }
+      }
+
+      @Override
+      public void createCombinedPdfDocument(Iterable<HtmlSource> htmls, OutputStream outputStream)
+          throws PdfaGeneratorException {
+        generator.createCombinedPdfDocument(htmls, outputStream);
+      }
+
+      @Override
+      public PdfTemplate compile(HtmlSource template) throws PdfaGeneratorException {
+        return generator.compile(template);
+      }
+
+      @Override
+      public PdfConformanceLevel getConformanceLevel() {
+        return generator.getConformanceLevel();
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      PdfBatchSummary summary = new PdfBatchGenerator(counting, executor, 3).generate(
+          IntStream.range(0, 12).mapToObj(i -> PdfRenderJob.of("job-" + i, htmlFile)),
+          result -> assertThat(result.isSuccess(), is(true)));
+
+      assertThat(summary.getSucceeded(), is(equalTo(12L)));
+      assertThat(maximum.get() <= 3, is(true));
+
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void renderDyingWithAnErrorIsDeliveredAsAFailure() throws Exception {
+    HtmlSource nested = HtmlSource.of(htmlFile);
+    PreparedHtmlToPdfGenerator overflowing = new PreparedHtmlToPdfGenerator() {
+      @Override
+      public void createPdfDocument(HtmlSource html, OutputStream outputStream) throws PdfaGeneratorException {
+        if (html == nested) {
+          throw new StackOverflowError("nested too deeply");
+        }
+        generator.createPdfDocument(html, outputStream);
+      }
+
+      @Override
+      public void createCombinedPdfDocument(Iterable<HtmlSource> htmls, OutputStream outputStream) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public PdfTemplate compile(HtmlSource template) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public PdfConformanceLevel getConformanceLevel() {
+        return generator.getConformanceLevel();
+      }
+    };
+
+    List<PdfRenderJob> jobs = new ArrayList<>();
+    jobs.add(PdfRenderJob.of("good-1", htmlFile));
+    jobs.add(PdfRenderJob.of("overflow", nested));
+    jobs.add(PdfRenderJob.of("good-2", htmlFile));
+
+    Map<String, PdfRenderResult> results = new ConcurrentHashMap<>();
+    PdfBatchSummary summary;
+    try (PdfBatchGenerator batch = new PdfBatchGenerator(overflowing, 2, 2)) {
+      summary = batch.generate(jobs, result -> results.put(result.getId(), result));
+    }
+
+    assertThat(summary.getSucceeded(), is(equalTo(2L)));
+    assertThat(summary.getFailed(), is(equalTo(1L)));
+    assertThat(results.size(), is(equalTo(3)));
+    assertThat(results.get("overflow").getFailure().getCause(), is(instanceOf(StackOverflowError.class)));
+  }
+
+  @Test
+  public void failingConsumerDoesNotStopTheBatch() throws Exception {
+    try (PdfBatchGenerator batch = new PdfBatchGenerator(generator, 1, 1)) {
+      PdfBatchSummary summary = batch.generate(
+          IntStream.range(0, 2).mapToObj(i -> PdfRenderJob.of("job-" + i, htmlFile)),
+          result -> {
+            throw new IllegalStateException("consumer failure");
+          });
+
+      assertThat(summary.getSucceeded(), is(equalTo(2L)));
+    }
+  }
+
+  @Test
+  public void maximumInFlightMustBePositive() {
+    try {
+      new PdfBatchGenerator(generator, 1, 0);
+      fail("should have rejected a zero in flight limit");
+
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), is(equalTo("Maximum in flight must be at least 1")));
+    }
+  }
+}
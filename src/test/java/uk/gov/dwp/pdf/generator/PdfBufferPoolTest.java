@@ -0,0 +1,180 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfBufferPoolTest {
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void closedBuffersAreReused() {
+    PdfBufferPool pool = new PdfBufferPool(2, 64 * 1024 * 1024, false);
+
+    PooledBuffer first = pool.acquire();
+    first.write(new byte[]{1, 2, 3}, 0, 3);
+    assertThat(Arrays.equals(first.toByteArray(), new byte[]{1, 2, 3}), is(true));
+    assertThat(pool.outstanding(), is(equalTo(1)));
+    first.close();
+
+    assertThat(pool.size(), is(equalTo(1)));
+    assertThat(pool.outstanding(), is(equalTo(0)));
+
+    PooledBuffer second = pool.acquire();
+    assertThat(second.size(), is(equalTo(0)));
+    assertThat(pool.reuseCount(), is(equalTo(1L)));
+    assertThat(pool.acquisitionCount(), is(equalTo(2L)));
+    second.close();
+  }
+
+  @Test
+  public void idleBuffersAreBounded() {
+    PdfBufferPool pool = new PdfBufferPool(1, 64 * 1024 * 1024, false);
+
+    PooledBuffer first = pool.acquire();
+    PooledBuffer second = pool.acquire();
+    first.close();
+    second.close();
+
+    assertThat(pool.size(), is(equalTo(1)));
+    pool.clear();
+    assertThat(pool.size(), is(equalTo(0)));
+  }
+
+  @Test
+  public void idleBuffersAreBoundedByTheirBytes() {
+    PdfBufferPool sizing = new PdfBufferPool(1, 64 * 1024 * 1024, false);
+    sizing.acquire().close();
+    long capacity = sizing.bytes();
+    PdfBufferPool pool = new PdfBufferPool(4, capacity + capacity / 2, false);
+
+    PooledBuffer first = pool.acquire();
+    PooledBuffer second = pool.acquire();
+    first.close();
+    second.close();
+
+    assertThat(pool.size(), is(equalTo(1)));
+    assertThat(pool.bytes(), is(equalTo(capacity)));
+    pool.acquire().close();
+    assertThat(pool.bytes(), is(equalTo(capacity)));
+    pool.clear();
+    assertThat(pool.bytes(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void estimateFollowsRecentSizes() {
+    PdfBufferPool pool = new PdfBufferPool(2, 64 * 1024 * 1024, false);
+    long initial = pool.estimatedSize();
+
+    for (int i = 0; i < 40; i++) {
+      PooledBuffer buffer = pool.acquire();
+      buffer.write(new byte[1024 * 1024], 0, 1024 * 1024);
+      buffer.close();
+    }
+
+    assertThat(pool.estimatedSize() > initial, is(true));
+    assertThat(pool.estimatedSize() <= 1024 * 1024, is(true));
+    assertThat(pool.estimatedSize() > 900 * 1024, is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void closedBufferCannotBeWritten() {
+    PooledBuffer buffer = new PdfBufferPool(2, 64 * 1024 * 1024, false).acquire();
+    buffer.close();
+    buffer.close();
+
+    buffer.write(1);
+  }
+
+  @Test
+  public void unclosedBuffersAreReportedAsLeaks() throws InterruptedException {
+    PdfBufferPool pool = new PdfBufferPool(2, 64 * 1024 * 1024, true);
+    leak(pool);
+
+    for (int attempt = 0; pool.leakCount() == 0 && attempt < 100; attempt++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+
+    assertThat(pool.leakCount(), is(equalTo(1L)));
+    assertThat(pool.outstanding(), is(equalTo(0)));
+  }
+
+  @Test
+  public void leaksAreReportedWhenBuffersAreClosed() throws InterruptedException {
+    PdfBufferPool pool = new PdfBufferPool(2, 64 * 1024 * 1024, false);
+    Deque<PooledBuffer> held = new ArrayDeque<>();
+    for (int i = 0; i < 100; i++) {
+      held.push(pool.acquire());
+    }
+    leak(pool);
+
+    // only closing buffers, never taking one, until the leak is found
+    while (pool.outstanding() > held.size() && !held.isEmpty()) {
+      System.gc();
+      Thread.sleep(10);
+      held.pop().close();
+    }
+
+    assertThat(pool.outstanding(), is(equalTo(held.size())));
+    assertThat(pool.leakCount(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void rendersReuseTheSharedPool() throws PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PdfConformanceLevel.PDF_UA);
+    PdfBufferPool pool = PdfBufferPool.shared();
+
+    byte[] first = instance.createPdfDocument(accessibleHtml);
+    long reuses = pool.reuseCount();
+    byte[] second = instance.createPdfDocument(accessibleHtml);
+
+    assertThat(second.length, is(equalTo(first.length)));
+    assertThat(pool.reuseCount() > reuses, is(true));
+    assertThat(pool.outstanding(), is(equalTo(0)));
+  }
+
+  @Test
+  public void buffersAndSamplesOfThemAreWrittenUnbuffered() {
+    try (PdfConformanceVerifier verifier = PdfConformanceVerifier.sampling(1.0);
+         PooledBuffer buffer = PdfBufferPool.shared().acquire()) {
+      OutputStream sampled = verifier.sample(PdfConformanceLevel.PDFA_2_B).tee(buffer);
+      OutputStream unpooled = verifier.sample(PdfConformanceLevel.PDFA_2_B).tee(new ByteArrayOutputStream());
+
+      assertThat(HtmlToAccessiblePdfGenerator.buffered(buffer), is(sameInstance(buffer)));
+      assertThat(HtmlToAccessiblePdfGenerator.buffered(sampled), is(sameInstance(sampled)));
+      assertThat(HtmlToAccessiblePdfGenerator.buffered(unpooled), is(instanceOf(BufferedOutputStream.class)));
+    }
+  }
+
+  private static void leak(PdfBufferPool pool) {
+    pool.acquire().write(1);
+  }
+}
@@ -0,0 +1,157 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfConformanceVerifierTest {
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void sampledDocumentsAreVerifiedOffTheRenderThread() throws InterruptedException, PdfaGeneratorException {
+    try (PdfConformanceVerifier verifier = PdfConformanceVerifier.sampling(1.0)) {
+      byte[] verified = generator(PdfConformanceLevel.PDFA_2_A, verifier).createPdfDocument(accessibleHtml);
+      byte[] unverified = generator(PdfConformanceLevel.PDFA_2_A, null).createPdfDocument(accessibleHtml);
+      generator(PdfConformanceLevel.PDFA_2_B, verifier)
+          .createCombinedPdfDocument(Arrays.asList(HtmlSource.of(accessibleHtml), HtmlSource.of(accessibleHtml)));
+
+      assertThat(verifier.awaitIdle(1, TimeUnit.MINUTES), is(true));
+      assertThat(verified.length, is(equalTo(unverified.length)));
+      assertThat(verifier.sampledCount(), is(equalTo(2L)));
+      assertThat(verifier.passedCount(), is(equalTo(2L)));
+      assertThat(verifier.failedCount(), is(equalTo(0L)));
+      assertThat(verifier.errorCount(), is(equalTo(0L)));
+      assertThat(verifier.failedRules().isEmpty(), is(true));
+    }
+  }
+
+  @Test
+  public void nonConformantDocumentIsCountedByRule() throws IOException, InterruptedException, PdfaGeneratorException {
+    byte[] unconstrained = generator(PdfConformanceLevel.NONE, null).createPdfDocument(accessibleHtml);
+
+    try (PdfConformanceVerifier verifier = PdfConformanceVerifier.sampling(1.0)) {
+      verify(verifier, PdfConformanceLevel.PDFA_1_B, unconstrained);
+
+      assertThat(verifier.awaitIdle(1, TimeUnit.MINUTES), is(true));
+      assertThat(verifier.failedCount(), is(equalTo(1L)));
+      assertThat(verifier.passedCount(), is(equalTo(0L)));
+      assertThat(verifier.failedRules().isEmpty(), is(false));
+      assertThat(verifier.failedRules().values().iterator().next(), is(equalTo(1L)));
+    }
+  }
+
+  @Test
+  public void unverifiableLevelsAreNotSampled() throws InterruptedException, PdfaGeneratorException {
+    try (PdfConformanceVerifier verifier = PdfConformanceVerifier.sampling(1.0)) {
+      generator(PdfConformanceLevel.PDF_UA, verifier).createPdfDocument(accessibleHtml);
+      generator(PdfConformanceLevel.NONE, verifier).createPdfDocument(accessibleHtml);
+
+      assertThat(verifier.awaitIdle(1, TimeUnit.MINUTES), is(true));
+      assertThat(verifier.sampledCount(), is(equalTo(0L)));
+      assertThat(verifier.sample(PdfConformanceLevel.PDF_UA), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void samplesBeyondTheQueueAreDropped() throws IOException, InterruptedException, PdfaGeneratorException {
+    byte[] pdf = generator(PdfConformanceLevel.PDFA_2_B, null).createPdfDocument(accessibleHtml);
+
+    try (PdfConformanceVerifier verifier = PdfConformanceVerifier.sampling(1.0, 1)) {
+      for (int i = 0; i < 10; i++) {
+        verify(verifier, PdfConformanceLevel.PDFA_2_B, pdf);
+      }
+
+      assertThat(verifier.awaitIdle(1, TimeUnit.MINUTES), is(true));
+      assertThat(verifier.droppedCount() > 0, is(true));
+      assertThat(verifier.sampledCount() + verifier.droppedCount(), is(equalTo(10L)));
+      assertThat(verifier.passedCount(), is(equalTo(verifier.sampledCount())));
+    }
+  }
+
+  @Test
+  public void waitingForQueuedDocumentsCanTimeOut() throws IOException, InterruptedException, PdfaGeneratorException {
+    byte[] pdf = generator(PdfConformanceLevel.PDFA_2_B, null).createPdfDocument(accessibleHtml);
+
+    try (PdfConformanceVerifier verifier = PdfConformanceVerifier.sampling(1.0)) {
+      verify(verifier, PdfConformanceLevel.PDFA_2_B, pdf);
+      verify(verifier, PdfConformanceLevel.PDFA_2_B, pdf);
+
+      assertThat(verifier.awaitIdle(1, TimeUnit.MILLISECONDS), is(false));
+      assertThat(verifier.awaitIdle(1, TimeUnit.MINUTES), is(true));
+      assertThat(verifier.passedCount(), is(equalTo(2L)));
+    }
+  }
+
+  @Test
+  public void closedVerifierSamplesNothing() {
+    PdfConformanceVerifier verifier = PdfConformanceVerifier.sampling(1.0);
+    verifier.close();
+
+    assertThat(verifier.sample(PdfConformanceLevel.PDFA_1_A), is(nullValue()));
+  }
+
+  @Test
+  public void sampleRateAndQueueSizeAreValidated() {
+    for (Runnable sampling : Arrays.<Runnable>asList(
+        () -> PdfConformanceVerifier.sampling(0),
+        () -> PdfConformanceVerifier.sampling(1.5),
+        () -> PdfConformanceVerifier.sampling(Double.NaN),
+        () -> PdfConformanceVerifier.sampling(0.5, 0))) {
+      try {
+        sampling.run();
+        fail("should have refused the sampling");
+      } catch (IllegalArgumentException e) {
+        assertThat(e.getMessage(), containsString("must be"));
+      }
+    }
+  }
+
+  private static void verify(PdfConformanceVerifier verifier, PdfConformanceLevel level, byte[] pdf)
+      throws IOException {
+    PdfConformanceVerifier.Sample sample = verifier.sample(level);
+    if (sample == null) {
+      return;
+    }
+    try (OutputStream outputStream = sample.tee(new ByteArrayOutputStream())) {
+      outputStream.write(pdf);
+    }
+    sample.submit();
+  }
+
+  private PreparedHtmlToPdfGenerator generator(PdfConformanceLevel level, PdfConformanceVerifier verifier)
+      throws PdfaGeneratorException {
+    return HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(level)
+        .verifier(verifier)
+        .build();
+  }
+}
@@ -0,0 +1,135 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfMemoryBudgetTest {
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void documentSpillsToTempDirectoryAndIsCleanedUp() throws IOException, PdfaGeneratorException {
+    Path tempDirectory = temporaryFolder.newFolder("spill").toPath();
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDF_UA, PdfMemoryBudget.of(0, tempDirectory));
+
+    SpillObservingStream outputStream = new SpillObservingStream(tempDirectory.toFile());
+    instance.createPdfDocument(accessibleHtml, outputStream);
+
+    assertThat(outputStream.spilledFiles > 0, is(true));
+    assertThat(tempDirectory.toFile().list().length, is(equalTo(0)));
+    assertThat(pageCount(outputStream.toByteArray()), is(equalTo(pageCount(
+        HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PdfConformanceLevel.PDF_UA)
+            .createPdfDocument(accessibleHtml)))));
+  }
+
+  @Test
+  public void tempFilesAreCleanedUpWhenRenderFails() throws IOException, PdfaGeneratorException {
+    Path tempDirectory = temporaryFolder.newFolder("spill").toPath();
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDFA_2_B, PdfMemoryBudget.of(0, tempDirectory));
+
+    try {
+      instance.createPdfDocument(accessibleHtml, new SpillObservingStream(tempDirectory.toFile()) {
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+          throw new IllegalStateException("disk full");
+        }
+      });
+      throw new AssertionError("render should have failed");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), is(equalTo("disk full")));
+    }
+    assertThat(tempDirectory.toFile().list().length, is(equalTo(0)));
+  }
+
+  @Test
+  public void combinedDocumentSpillsToTempDirectory() throws IOException, PdfaGeneratorException {
+    Path tempDirectory = temporaryFolder.newFolder("spill").toPath();
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDFA_2_B, PdfMemoryBudget.of(64 * 1024, tempDirectory));
+
+    SpillObservingStream outputStream = new SpillObservingStream(tempDirectory.toFile());
+    instance.createCombinedPdfDocument(Arrays.asList(
+        HtmlSource.of(accessibleHtml), HtmlSource.of(accessibleHtml), HtmlSource.of(accessibleHtml)), outputStream);
+
+    assertThat(outputStream.spilledFiles > 0, is(true));
+    assertThat(tempDirectory.toFile().list().length, is(equalTo(0)));
+    assertThat(pageCount(outputStream.toByteArray()) > 0, is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeBudgetIsRejected() {
+    PdfMemoryBudget.of(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void missingTempDirectoryIsRejected() throws IOException {
+    PdfMemoryBudget.of(1024, temporaryFolder.getRoot().toPath().resolve("missing"));
+  }
+
+  private PreparedHtmlToPdfGenerator generator(PdfConformanceLevel level, PdfMemoryBudget budget)
+      throws PdfaGeneratorException {
+    return HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(level)
+        .memoryBudget(budget)
+        .build();
+  }
+
+  private static int pageCount(byte[] pdf) throws IOException {
+    try (PDDocument document = PDDocument.load(pdf)) {
+      return document.getNumberOfPages();
+    }
+  }
+
+  /**
+   * Records the files in the temporary directory while the pdf is being written,
+   * when the document is still open.
+   */
+  private static class SpillObservingStream extends ByteArrayOutputStream {
+    private final File tempDirectory;
+    private int spilledFiles = -1;
+
+    SpillObservingStream(File tempDirectory) {
+      this.tempDirectory = tempDirectory;
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+      if (spilledFiles < 0) {
+        spilledFiles = tempDirectory.list().length;
+      }
+      super.write(bytes, offset, length);
+    }
+  }
+}
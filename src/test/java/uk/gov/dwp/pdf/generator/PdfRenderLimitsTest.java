@@ -0,0 +1,213 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfRenderLimitException;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfRenderLimitsTest {
+  private static final String BUNDLE_HTML = "<html><head><link rel=\"stylesheet\" href=\"css/letter.css\"/></head>"
+      + "<body><h1>Heading</h1><p>Text</p><img src=\"images/logo.png\" alt=\"logo\"/></body></html>";
+
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+  private static String pageBreaksHtml;
+  private static String longHtml;
+  private static byte[] logo;
+
+  private final List<PdfaGeneratorException> failures = new ArrayList<>();
+  private final List<PdfRenderMetrics> failedRenders = new ArrayList<>();
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+    pageBreaksHtml = html("pageBreaksHtml.html");
+
+    StringBuilder paragraphs = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      paragraphs.append("<p>Paragraph ").append(i).append(" of a document far too long to render in time.</p>");
+    }
+    longHtml = accessibleHtml.replace("</body>", paragraphs + "</body>");
+
+    defaultFontMap = fontMap();
+
+    Matcher image = Pattern.compile("base64,([^\"]+)\"")
+        .matcher(html("successfulHtml.html"));
+    image.find();
+    logo = Base64.getMimeDecoder().decode(image.group(1));
+  }
+
+  @Test
+  public void renderWithinLimitsIsUnaffected() throws PdfaGeneratorException {
+    PdfRenderLimits limits = PdfRenderLimits.none()
+        .withDeadline(Duration.ofMinutes(1))
+        .withMaximumPages(100)
+        .withMaximumInputLength(accessibleHtml.length())
+        .withMaximumImagePixels(1_000_000);
+
+    byte[] limited = generator(PdfConformanceLevel.PDF_UA, limits).createPdfDocument(accessibleHtml);
+    byte[] unlimited = generator(PdfConformanceLevel.PDF_UA, null).createPdfDocument(accessibleHtml);
+
+    assertThat(limited.length, is(equalTo(unlimited.length)));
+    assertThat(failures.isEmpty(), is(true));
+  }
+
+  @Test
+  public void longInputIsStoppedAsItIsRead() throws PdfaGeneratorException {
+    PdfRenderLimitException breach = breach(generator(PdfConformanceLevel.PDF_UA,
+        PdfRenderLimits.none().withMaximumInputLength(1000)), accessibleHtml);
+
+    assertThat(breach.getLimit(), is(equalTo(PdfRenderLimitException.Limit.INPUT_LENGTH)));
+    assertThat(breach.getMaximum(), is(equalTo(1000L)));
+    assertThat(breach.getMessage(), containsString("1000 characters"));
+    assertThat(failures.get(0), is(sameInstance(breach)));
+  }
+
+  @Test
+  public void documentWithTooManyPagesIsStoppedBeforePainting() throws PdfaGeneratorException {
+    PdfRenderLimitException breach = breach(generator(PdfConformanceLevel.PDFA_1_A,
+        PdfRenderLimits.none().withMaximumPages(1)), pageBreaksHtml);
+
+    assertThat(breach.getLimit(), is(equalTo(PdfRenderLimitException.Limit.PAGES)));
+    assertThat(breach.getMaximum(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void longDocumentIsStoppedAsItIsLaidOut() throws PdfaGeneratorException {
+    PdfRenderLimitException breach = breach(generator(PdfConformanceLevel.PDF_UA,
+        PdfRenderLimits.none().withMaximumPages(2)), longHtml);
+
+    assertThat(breach.getLimit(), is(equalTo(PdfRenderLimitException.Limit.PAGES)));
+    assertThat(breach.getMessage(), containsString("document of 3 pages"));
+    // the layout phase is only recorded once the whole document is laid out
+    assertThat(failedRenders.get(0).getDuration(PdfRenderPhase.LAYOUT), is(equalTo(Duration.ZERO)));
+  }
+
+  @Test
+  public void combinedDocumentPagesAreLimitedTogether() throws IOException, PdfaGeneratorException {
+    int pages;
+    try (PDDocument pdfDoc = PDDocument.load(generator(PdfConformanceLevel.PDFA_2_B, null).createPdfDocument(pageBreaksHtml))) {
+      pages = pdfDoc.getNumberOfPages();
+    }
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDFA_2_B,
+        PdfRenderLimits.none().withMaximumPages(pages));
+
+    instance.createCombinedPdfDocument(Arrays.asList(HtmlSource.of(pageBreaksHtml)));
+    try {
+      instance.createCombinedPdfDocument(Arrays.asList(HtmlSource.of(pageBreaksHtml), HtmlSource.of(pageBreaksHtml)));
+      fail("should have breached the page limit");
+    } catch (PdfRenderLimitException e) {
+      assertThat(e.getLimit(), is(equalTo(PdfRenderLimitException.Limit.PAGES)));
+    }
+  }
+
+  @Test
+  public void largeEmbeddedImageIsStoppedBeforeDecoding() throws PdfaGeneratorException {
+    PdfRenderLimitException breach = breach(generator(PdfConformanceLevel.PDF_UA,
+        PdfRenderLimits.none().withMaximumImagePixels(10_000)), accessibleHtml);
+
+    assertThat(breach.getLimit(), is(equalTo(PdfRenderLimitException.Limit.IMAGE_PIXELS)));
+    assertThat(breach.getMessage(), containsString("image of 50625 pixels"));
+  }
+
+  @Test
+  public void largeBundledImageIsStopped() throws IOException, PdfaGeneratorException {
+    PdfResourceBundle bundle = PdfResourceBundle.builder("letters")
+        .add("css/letter.css", Paths.get("src/test/resources/bundle/letter.css"))
+        .add("images/logo.png", logo)
+        .build();
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(PdfConformanceLevel.PDFA_1_A)
+        .resourceBundle(bundle)
+        .limits(PdfRenderLimits.none().withMaximumImagePixels(100))
+        .build();
+
+    assertThat(breach(instance, BUNDLE_HTML).getLimit(), is(equalTo(PdfRenderLimitException.Limit.IMAGE_PIXELS)));
+  }
+
+  @Test
+  public void slowRenderIsStoppedAtItsDeadline() throws PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDF_UA,
+        PdfRenderLimits.none().withDeadline(Duration.ofSeconds(1)));
+
+    long started = System.nanoTime();
+    PdfRenderLimitException breach = breach(instance, longHtml);
+
+    assertThat(breach.getLimit(), is(equalTo(PdfRenderLimitException.Limit.DEADLINE)));
+    assertThat(breach.getMaximum(), is(equalTo(1000L)));
+    assertThat(Duration.ofNanos(System.nanoTime() - started).compareTo(Duration.ofSeconds(10)) < 0, is(true));
+
+    // the generator is unaffected by the render it stopped
+    assertThat(instance.createPdfDocument("<html><body><p>Short</p></body></html>").length > 0, is(true));
+  }
+
+  @Test
+  public void limitsMustBePositive() {
+    for (Runnable limit : Arrays.<Runnable>asList(
+        () -> PdfRenderLimits.none().withDeadline(Duration.ZERO),
+        () -> PdfRenderLimits.none().withMaximumPages(0),
+        () -> PdfRenderLimits.none().withMaximumInputLength(-1),
+        () -> PdfRenderLimits.none().withMaximumImagePixels(0))) {
+      try {
+        limit.run();
+        fail("should have refused the limit");
+      } catch (IllegalArgumentException e) {
+        assertThat(e.getMessage(), containsString("must be"));
+      }
+    }
+  }
+
+  private PreparedHtmlToPdfGenerator generator(PdfConformanceLevel level, PdfRenderLimits limits)
+      throws PdfaGeneratorException {
+    return HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(level)
+        .limits(limits)
+        .renderListener(new PdfRenderListener() {
+          @Override
+          public void onFailed(PdfRenderMetrics metrics, PdfaGeneratorException failure) {
+            failures.add(failure);
+            failedRenders.add(metrics);
+          }
+        })
+        .build();
+  }
+
+  private static PdfRenderLimitException breach(PreparedHtmlToPdfGenerator instance, String html)
+      throws PdfaGeneratorException {
+    try {
+      instance.createPdfDocument(html);
+    } catch (PdfRenderLimitException e) {
+      return e;
+    }
+    fail("should have breached a limit");
+    return null;
+  }
+}
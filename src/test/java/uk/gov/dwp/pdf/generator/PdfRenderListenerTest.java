@@ -0,0 +1,144 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDF_UA;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfRenderListenerTest {
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String pageBreaksHtml;
+
+  private final List<PdfRenderMetrics> rendered = new ArrayList<>();
+  private final List<PdfRenderMetrics> failed = new ArrayList<>();
+  private final List<PdfaGeneratorException> failures = new ArrayList<>();
+
+  private final PdfRenderListener listener = new PdfRenderListener() {
+    @Override
+    public void onRendered(PdfRenderMetrics metrics) {
+      rendered.add(metrics);
+    }
+
+    @Override
+    public void onFailed(PdfRenderMetrics metrics, PdfaGeneratorException failure) {
+      failed.add(metrics);
+      failures.add(failure);
+    }
+  };
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    pageBreaksHtml = html("pageBreaksHtml.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void preparedRenderReportsEveryPhaseAndSize() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(PDFA_1_A)
+        .renderListener(listener)
+        .build();
+
+    byte[] pdf = instance.createPdfDocument(pageBreaksHtml);
+    PDDocument pdfDoc = PDDocument.load(pdf);
+
+    assertThat(rendered.size(), is(equalTo(1)));
+    PdfRenderMetrics metrics = rendered.get(0);
+    assertThat(metrics.getConformanceLevel(), is(equalTo(PDFA_1_A)));
+    assertThat(metrics.getInputLength(), is(equalTo((long) pageBreaksHtml.length())));
+    assertThat(metrics.getOutputSize(), is(equalTo((long) pdf.length)));
+    assertThat(metrics.getPageCount(), is(equalTo(pdfDoc.getNumberOfPages())));
+    assertThat(metrics.getPageCount() > 1, is(true));
+    pdfDoc.close();
+
+    assertThat(metrics.getDuration(PdfRenderPhase.PREPARE_ASSETS), is(equalTo(Duration.ZERO)));
+    Duration total = Duration.ZERO;
+    for (PdfRenderPhase phase : PdfRenderPhase.values()) {
+      if (phase != PdfRenderPhase.PREPARE_ASSETS && phase != PdfRenderPhase.OPTIMISE) {
+        assertThat(phase.name(), metrics.getDuration(phase).isZero(), is(false));
+      }
+      total = total.plus(metrics.getDuration(phase));
+    }
+    assertThat(metrics.getTotalDuration(), is(equalTo(total)));
+    assertThat(failed.isEmpty(), is(true));
+  }
+
+  @Test
+  public void unpreparedRenderReportsAssetPreparation() throws PdfaGeneratorException {
+    HtmlToPdfFactory.create(listener).createPdfDocument(pageBreaksHtml, defaultColourProfile, defaultFontMap, PDF_UA);
+
+    assertThat(rendered.size(), is(equalTo(1)));
+    assertThat(rendered.get(0).getConformanceLevel(), is(equalTo(PDF_UA)));
+    assertThat(rendered.get(0).getDuration(PdfRenderPhase.PREPARE_ASSETS).isZero(), is(false));
+  }
+
+  @Test
+  public void failedRenderReportsPhasesCompleted() throws PdfaGeneratorException {
+    Map<String, byte[]> courierOnly = new HashMap<>();
+    courierOnly.put("courier", defaultFontMap.get("courier"));
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(courierOnly)
+        .conformanceLevel(PDFA_1_A)
+        .renderListener(listener)
+        .build();
+
+    try {
+      instance.createPdfDocument(pageBreaksHtml);
+      fail("should have failed with an undefined font");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("html element requests font-family: 'arial'"));
+    }
+
+    assertThat(rendered.isEmpty(), is(true));
+    assertThat(failures.size(), is(equalTo(1)));
+    assertThat(failures.get(0).getMessage(), startsWith("html element requests font-family: 'arial'"));
+    assertThat(failed.get(0).getInputLength(), is(equalTo(-1L)));
+    assertThat(failed.get(0).getOutputSize(), is(equalTo(-1L)));
+    assertThat(failed.get(0).getPageCount(), is(equalTo(-1)));
+    assertThat(failed.get(0).getTotalDuration(), is(equalTo(Duration.ZERO)));
+  }
+
+  @Test
+  public void failingListenerDoesNotFailTheRender() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(PDFA_1_A)
+        .renderListener(new PdfRenderListener() {
+          @Override
+          public void onRendered(PdfRenderMetrics metrics) {
+            throw new IllegalStateException("metrics unavailable");
+          }
+        })
+        .build();
+
+    PDDocument pdfDoc = PDDocument.load(instance.createPdfDocument(pageBreaksHtml));
+    assertThat(pdfDoc.getNumberOfPages() > 1, is(true));
+    pdfDoc.close();
+  }
+}
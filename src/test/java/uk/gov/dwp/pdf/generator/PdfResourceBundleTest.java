@@ -0,0 +1,137 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfResourceBundleTest {
+  private static final String HTML = "<html><head><link rel=\"stylesheet\" href=\"css/letter.css\"/></head>"
+      + "<body><h1>Heading</h1><p>Text</p><img src=\"images/logo.png\" alt=\"logo\"/></body></html>";
+
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static byte[] logo;
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    defaultFontMap = fontMap();
+
+    Matcher image = Pattern.compile("base64,([^\"]+)\"")
+        .matcher(html("successfulHtml.html"));
+    image.find();
+    logo = Base64.getMimeDecoder().decode(image.group(1));
+  }
+
+  @Test
+  public void relativeReferencesAreServedFromTheBundle() throws IOException, PdfaGeneratorException {
+    PdfResourceBundle bundle = PdfResourceBundle.builder("letters")
+        .add("css/letter.css", Paths.get("src/test/resources/bundle/letter.css"))
+        .add("images/logo.png", logo)
+        .build();
+
+    PreparedHtmlToPdfGenerator generator = HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(PDFA_1_A)
+        .resourceBundle(bundle)
+        .build();
+
+    PDDocument pdfDoc = PDDocument.load(generator.createPdfDocument(HTML));
+    PDResources resources = pdfDoc.getPage(0).getResources();
+
+    Set<String> fonts = new HashSet<>();
+    for (COSName name : resources.getFontNames()) {
+      PDFont font = resources.getFont(name);
+      fonts.add(font.getName().substring(font.getName().indexOf('+') + 1).toLowerCase());
+    }
+    assertThat(fonts.stream().anyMatch(font -> font.contains("courier")), is(true));
+
+    int images = 0;
+    for (COSName ignored : resources.getXObjectNames()) {
+      images++;
+    }
+    assertThat(images, is(equalTo(1)));
+    pdfDoc.close();
+  }
+
+  @Test
+  public void resourcesCanBeLoadedFromTheClasspath() throws IOException {
+    PdfResourceBundle bundle = PdfResourceBundle.builder("letters")
+        .addClasspathResource("/css/./letter.css", "bundle/letter.css")
+        .build();
+
+    assertThat(bundle.getBaseUri(), is(equalTo("pdf-bundle://letters/")));
+    assertThat(bundle.getPaths(), is(equalTo(new HashSet<>(Arrays.asList("css/letter.css")))));
+    assertThat(new String(bundle.getResources().get("css/letter.css"), StandardCharsets.UTF_8), containsString("'arial'"));
+  }
+
+  @Test
+  public void failureWithMissingClasspathResource() throws IOException {
+    try {
+      PdfResourceBundle.builder("letters").addClasspathResource("css/letter.css", "bundle/missing.css");
+      fail("should have failed with a missing resource");
+
+    } catch (FileNotFoundException e) {
+      assertThat(e.getMessage(), is(equalTo("classpath resource 'bundle/missing.css' not found")));
+    }
+  }
+
+  @Test
+  public void failureWithPathOutsideTheBundle() {
+    try {
+      PdfResourceBundle.builder("letters").add("../letter.css", new byte[0]);
+      fail("should have rejected the path");
+
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), is(equalTo("Resource path '../letter.css' must be relative to the bundle")));
+    }
+  }
+
+  @Test
+  public void failFastWithUndefinedFontInBundledStylesheet() {
+    PdfResourceBundle bundle = PdfResourceBundle.builder("letters")
+        .add("css/letter.css", "p { font-family: 'tahoma', serif; }".getBytes(StandardCharsets.UTF_8))
+        .build();
+
+    try {
+      HtmlToPdfFactory.builder()
+          .colourProfile(defaultColourProfile)
+          .fontMap(defaultFontMap)
+          .conformanceLevel(PDFA_1_A)
+          .resourceBundle(bundle)
+          .build();
+      fail("should have failed with an undefined font");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), is(equalTo("stylesheet css/letter.css requests font-family: 'tahoma', serif. "
+          + "It is not passed in the font map, cannot encode.")));
+    }
+  }
+}
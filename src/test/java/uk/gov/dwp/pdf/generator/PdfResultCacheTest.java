@@ -0,0 +1,203 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.dwp.pdf.exception.PdfRenderLimitException;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfResultCacheTest {
+  private static final Instant DOCUMENT_DATE = Instant.parse("2020-04-01T09:30:00Z");
+
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String accessibleHtml;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    accessibleHtml = html("accessible-test.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void repeatedDocumentIsServedFromTheCache() throws PdfaGeneratorException {
+    PdfResultCache cache = new PdfResultCache(16 * 1024 * 1024);
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDF_UA, cache);
+
+    byte[] rendered = instance.createPdfDocument(accessibleHtml);
+    byte[] cached = instance.createPdfDocument(HtmlSource.of(accessibleHtml));
+
+    assertThat(Arrays.equals(rendered, cached), is(true));
+    assertThat(cache.missCount(), is(equalTo(1L)));
+    assertThat(cache.hitCount(), is(equalTo(1L)));
+    assertThat(cache.size(), is(equalTo(1)));
+    assertThat(cache.bytes(), is(equalTo((long) rendered.length)));
+  }
+
+  @Test
+  public void htmlIsReadOnceToBothRenderAndKeyIt() throws PdfaGeneratorException {
+    PdfResultCache cache = new PdfResultCache(16 * 1024 * 1024);
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDF_UA, cache);
+    AtomicLong read = new AtomicLong();
+
+    byte[] rendered = instance.createPdfDocument(HtmlSource.of(new StringReader(accessibleHtml) {
+      @Override
+      public int read(char[] buffer, int offset, int length) throws IOException {
+        int count = super.read(buffer, offset, length);
+        read.addAndGet(Math.max(count, 0));
+        return count;
+      }
+    }));
+    byte[] cached = instance.createPdfDocument(HtmlSource.of(new StringReader(accessibleHtml)));
+
+    assertThat(read.get(), is(equalTo((long) accessibleHtml.length())));
+    assertThat(Arrays.equals(rendered, cached), is(true));
+    assertThat(cache.hitCount(), is(equalTo(1L)));
+  }
+
+  @Test
+  public void cacheHitsAreReportedToTheRenderListener() throws PdfaGeneratorException {
+    List<PdfRenderMetrics> rendered = new ArrayList<>();
+    PreparedHtmlToPdfGenerator instance = builder(PdfConformanceLevel.PDF_UA, new PdfResultCache(16 * 1024 * 1024))
+        .renderListener(new PdfRenderListener() {
+          @Override
+          public void onRendered(PdfRenderMetrics metrics) {
+            rendered.add(metrics);
+          }
+        })
+        .build();
+
+    instance.createPdfDocument(accessibleHtml);
+    byte[] cached = instance.createPdfDocument(accessibleHtml);
+
+    assertThat(rendered.size(), is(equalTo(2)));
+    assertThat(rendered.get(1).getInputLength(), is(equalTo((long) accessibleHtml.length())));
+    assertThat(rendered.get(1).getOutputSize(), is(equalTo((long) cached.length)));
+    assertThat(rendered.get(1).getPageCount(), is(equalTo(-1)));
+  }
+
+  @Test
+  public void cachedHtmlIsReadWithinTheInputLengthLimit() throws PdfaGeneratorException {
+    PdfResultCache cache = new PdfResultCache(16 * 1024 * 1024);
+    PreparedHtmlToPdfGenerator instance = builder(PdfConformanceLevel.PDF_UA, cache)
+        .limits(PdfRenderLimits.none().withMaximumInputLength(100))
+        .build();
+
+    try {
+      instance.createPdfDocument(accessibleHtml);
+      fail("should have refused the html");
+
+    } catch (PdfRenderLimitException e) {
+      assertThat(e.getLimit(), is(equalTo(PdfRenderLimitException.Limit.INPUT_LENGTH)));
+    }
+    assertThat(cache.missCount(), is(equalTo(0L)));
+  }
+
+  @Test
+  public void differentInputsAreCachedSeparately() throws PdfaGeneratorException {
+    PdfResultCache cache = new PdfResultCache(16 * 1024 * 1024);
+
+    generator(PdfConformanceLevel.PDF_UA, cache).createPdfDocument(accessibleHtml);
+    generator(PdfConformanceLevel.PDFA_2_B, cache).createPdfDocument(accessibleHtml);
+    generator(PdfConformanceLevel.PDF_UA, cache).createPdfDocument(accessibleHtml.replace("Paragraph one", "Paragraph 1"));
+
+    assertThat(cache.missCount(), is(equalTo(3L)));
+    assertThat(cache.size(), is(equalTo(3)));
+  }
+
+  @Test
+  public void leastRecentlyUsedPdfsAreEvicted() throws PdfaGeneratorException {
+    byte[] pdf = generator(PdfConformanceLevel.NONE, new PdfResultCache(16 * 1024 * 1024)).createPdfDocument(accessibleHtml);
+    PdfResultCache cache = new PdfResultCache(pdf.length * 2L);
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.NONE, cache);
+
+    instance.createPdfDocument(accessibleHtml);
+    instance.createPdfDocument(accessibleHtml.replace("Paragraph one", "Paragraph 1"));
+    instance.createPdfDocument(accessibleHtml.replace("Paragraph one", "Paragraph I"));
+
+    assertThat(cache.evictionCount() > 0, is(true));
+    assertThat(cache.bytes() <= pdf.length * 2L, is(true));
+  }
+
+  @Test
+  public void diskTierSurvivesANewCache() throws IOException, PdfaGeneratorException {
+    Path directory = temporaryFolder.newFolder("results").toPath();
+    byte[] rendered = generator(PdfConformanceLevel.PDFA_2_B, new PdfResultCache(1024 * 1024, directory, 16 * 1024 * 1024))
+        .createPdfDocument(accessibleHtml);
+
+    PdfResultCache cache = new PdfResultCache(1024 * 1024, directory, 16 * 1024 * 1024);
+    byte[] cached = generator(PdfConformanceLevel.PDFA_2_B, cache).createPdfDocument(accessibleHtml);
+
+    assertThat(Arrays.equals(rendered, cached), is(true));
+    assertThat(cache.diskHitCount(), is(equalTo(1L)));
+    assertThat(cache.missCount(), is(equalTo(0L)));
+    assertThat(directory.toFile().list().length, is(equalTo(1)));
+  }
+
+  @Test
+  public void diskTierIsBounded() throws IOException, PdfaGeneratorException {
+    Path directory = temporaryFolder.newFolder("results").toPath();
+    byte[] pdf = generator(PdfConformanceLevel.NONE, new PdfResultCache(16 * 1024 * 1024)).createPdfDocument(accessibleHtml);
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.NONE,
+        new PdfResultCache(1024 * 1024, directory, pdf.length * 2L));
+
+    instance.createPdfDocument(accessibleHtml);
+    instance.createPdfDocument(accessibleHtml.replace("Paragraph one", "Paragraph 1"));
+    instance.createPdfDocument(accessibleHtml.replace("Paragraph one", "Paragraph I"));
+
+    long used = 0;
+    for (File file : directory.toFile().listFiles()) {
+      used += file.length();
+    }
+    assertThat(used <= pdf.length * 2L, is(true));
+  }
+
+  @Test(expected = PdfaGeneratorException.class)
+  public void cacheNeedsDeterministicOutput() throws PdfaGeneratorException {
+    HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(PdfConformanceLevel.PDF_UA)
+        .resultCache(new PdfResultCache(1024))
+        .build();
+  }
+
+  private PreparedHtmlToPdfGenerator generator(PdfConformanceLevel level, PdfResultCache cache)
+      throws PdfaGeneratorException {
+    return builder(level, cache).build();
+  }
+
+  private HtmlToPdfGeneratorBuilder builder(PdfConformanceLevel level, PdfResultCache cache) {
+    return HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(level)
+        .deterministic(DOCUMENT_DATE)
+        .resultCache(cache);
+  }
+}
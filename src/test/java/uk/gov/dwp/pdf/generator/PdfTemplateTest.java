@@ -0,0 +1,137 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PdfTemplateTest {
+  private static PreparedHtmlToPdfGenerator generator;
+  private static String templateFile;
+
+  @BeforeClass
+  public static void init() throws PdfaGeneratorException {
+    templateFile = html("templateHtml.html");
+
+    generator = HtmlToPdfFactory.create(colourProfile(), fontMap(), PDFA_1_A);
+  }
+
+  private static Map<String, String> values(String name, String reference) {
+    Map<String, String> values = new HashMap<>();
+    values.put("name", name);
+    values.put("reference", reference);
+    return values;
+  }
+
+  private static String textOf(byte[] pdf) throws IOException {
+    try (PDDocument pdfDoc = PDDocument.load(pdf)) {
+      return new PDFTextStripper().getText(pdfDoc);
+    }
+  }
+
+  @Test
+  public void placeholdersAreFoundInDocumentOrder() throws PdfaGeneratorException {
+    PdfTemplate template = generator.compile(templateFile);
+
+    assertThat(new ArrayList<>(template.getPlaceholders()), is(equalTo(Arrays.asList("name", "reference"))));
+  }
+
+  @Test
+  public void eachRenderBindsItsOwnValues() throws Exception {
+    PdfTemplate template = generator.compile(templateFile);
+
+    String first = textOf(template.render(values("Ada Lovelace", "AB123")));
+    String second = textOf(template.render(values("Alan Turing", "CD456")));
+
+    assertThat(first, containsString("Dear Ada Lovelace"));
+    assertThat(first, containsString("Your reference is AB123."));
+    assertThat(second, containsString("Dear Alan Turing"));
+    assertThat(second, containsString("Your reference is CD456."));
+  }
+
+  @Test
+  public void markupInValuesIsEscaped() throws Exception {
+    PdfTemplate template = generator.compile(templateFile);
+
+    assertThat(textOf(template.render(values("<b>Ada</b> & co", "$1"))), containsString("Dear <b>Ada</b> & co"));
+  }
+
+  @Test
+  public void failureWithMissingValue() throws PdfaGeneratorException {
+    PdfTemplate template = generator.compile(templateFile);
+
+    try {
+      template.render(values("Ada Lovelace", null));
+      fail("should have failed with a missing value");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), is(equalTo("no value supplied for template placeholder 'reference'")));
+    }
+  }
+
+  @Test
+  public void fontsAreCheckedWhenCompiled() throws IOException {
+    try {
+      generator.compile(html("noFontSupplied.html"));
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("html element requests font-family: 'tahoma'"));
+    }
+  }
+
+  @Test
+  public void failureWithPlaceholderInStyle() {
+    try {
+      generator.compile("<html><body><p style=\"color: ${colour}\">text</p></body></html>");
+      fail("should have rejected a placeholder in a style");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("template placeholder in style 'color: ${colour}' is not allowed"));
+    }
+  }
+
+  @Test
+  public void concurrentRendersShareOneTemplate() throws Exception {
+    PdfTemplate template = generator.compile(templateFile);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Callable<String>> renders = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        String reference = "REF" + i;
+        renders.add(() -> textOf(template.render(values("Ada", reference))));
+      }
+
+      int i = 0;
+      for (Future<String> text : executor.invokeAll(renders)) {
+        assertThat(text.get(), containsString("Your reference is REF" + i++ + "."));
+      }
+
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.commons.io.FileUtils;
+import org.verapdf.pdfa.Foundries;
+import org.verapdf.pdfa.PDFAParser;
+import org.verapdf.pdfa.VeraGreenfieldFoundryProvider;
+import org.verapdf.pdfa.flavours.PDFAFlavour;
+import org.verapdf.pdfa.results.ValidationResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The colour profile, fonts and html documents the generator tests render with, read once,
+ * and the veraPDF check of what they render.
+ */
+final class PdfTestFixtures {
+  private static final String RESOURCES = "src/test/resources/";
+
+  private static final byte[] COLOUR_PROFILE = bytes("colours/sRGB.icm");
+  private static final byte[] COURIER = bytes("fonts/courier.ttf");
+  private static final byte[] ARIAL = bytes("fonts/arial.ttf");
+
+  private PdfTestFixtures() {
+  }
+
+  static byte[] colourProfile() {
+    return COLOUR_PROFILE.clone();
+  }
+
+  /**
+   * Returns a new font map of the courier and arial fonts the test documents use.
+   */
+  static Map<String, byte[]> fontMap() {
+    Map<String, byte[]> fontMap = new HashMap<>();
+    fontMap.put("courier", COURIER.clone());
+    fontMap.put("arial", ARIAL.clone());
+    return fontMap;
+  }
+
+  static String html(String name) {
+    try {
+      return FileUtils.readFileToString(new File(RESOURCES + name));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static byte[] bytes(String name) {
+    try {
+      return FileUtils.readFileToByteArray(new File(RESOURCES + name));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns whether veraPDF finds the pdf conforms to the PDF/A conformance level.
+   */
+  static boolean isCompliant(byte[] pdf, PdfConformanceLevel level) throws Exception {
+    return VeraPdf.isCompliant(pdf, level);
+  }
+
+  // veraPDF is only set up by the tests that validate
+  private static final class VeraPdf {
+    static {
+      VeraGreenfieldFoundryProvider.initialise();
+    }
+
+    static boolean isCompliant(byte[] pdf, PdfConformanceLevel level) throws Exception {
+      String name = level.name();
+      PDFAFlavour flavour = PDFAFlavour.fromString(name.charAt(5) + name.substring(7).toLowerCase());
+      try (PDFAParser parser = Foundries.defaultInstance().createParser(new ByteArrayInputStream(pdf), flavour)) {
+        ValidationResult result = Foundries.defaultInstance().createValidator(flavour, false).validate(parser);
+        return result.isCompliant();
+      }
+    }
+  }
+}
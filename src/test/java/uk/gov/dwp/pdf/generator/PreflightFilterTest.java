@@ -0,0 +1,153 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfValidationException;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PreflightFilterTest {
+  private static final String IMAGE = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mP8z8BQDwAEhQGAhKmMIQAAAABJRU5ErkJggg==";
+
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void wellFormedDocumentsPass() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = generator(PdfConformanceLevel.PDF_UA, null);
+
+    assertThat(instance.createPdfDocument(
+        html("accessible-test.html")).length > 0, is(true));
+    assertThat(instance.createPdfDocument(
+        html("successfulHtml.html")).length > 0, is(true));
+  }
+
+  @Test
+  public void badHtmlIsRejectedWithItsPosition() throws IOException, PdfaGeneratorException {
+    try {
+      generator(PdfConformanceLevel.PDFA_1_A, null).createPdfDocument(
+          html("badHtmlFile.html"));
+      fail("should have thrown an error");
+
+    } catch (PdfValidationException e) {
+      assertThat(e.getLineNumber() >= 12, is(true));
+      assertThat(e.getColumnNumber() > 0, is(true));
+      assertThat(e.getMessage(), startsWith("line " + e.getLineNumber() + ", column "));
+    }
+  }
+
+  @Test
+  public void unclosedTagIsRejectedWithItsPosition() throws PdfaGeneratorException {
+    try {
+      generator(PdfConformanceLevel.NONE, null).createPdfDocument(
+          "<html>\n<body>\n<p>one\n<p>two</p>\n</body>\n</html>");
+      fail("should have thrown an error");
+
+    } catch (PdfValidationException e) {
+      assertThat(e.getLineNumber(), is(equalTo(5)));
+      assertThat(e.getMessage(), containsString("\"p\""));
+    }
+  }
+
+  @Test
+  public void relativeImageIsRejected() throws PdfaGeneratorException {
+    try {
+      generator(PdfConformanceLevel.NONE, null).createPdfDocument(
+          "<html>\n<body>\n<img src=\"images/logo.png\"/>\n</body>\n</html>");
+      fail("should have thrown an error");
+
+    } catch (PdfValidationException e) {
+      assertThat(e.getLineNumber(), is(equalTo(3)));
+      assertThat(e.getMessage(), containsString("'images/logo.png' has a relative url"));
+    }
+  }
+
+  @Test
+  public void relativeStylesheetUrlIsRejectedAtItsStyleElement() throws PdfaGeneratorException {
+    try {
+      generator(PdfConformanceLevel.NONE, null).createPdfDocument(
+          "<html>\n<head>\n<style>\nbody { background: url('paper.png'); }\n</style>\n</head>\n<body></body>\n</html>");
+      fail("should have thrown an error");
+
+    } catch (PdfValidationException e) {
+      assertThat(e.getLineNumber(), is(equalTo(3)));
+      assertThat(e.getMessage(), containsString("'paper.png' has a relative url"));
+    }
+  }
+
+  @Test
+  public void relativeUrlsAreAllowedWithAResourceBundle() throws PdfaGeneratorException {
+    PdfResourceBundle bundle = PdfResourceBundle.builder("letters")
+        .add("css/letter.css", "body { font-family: 'arial'; } img { image-rendering: pixelated; }"
+            .getBytes(StandardCharsets.UTF_8))
+        .build();
+
+    byte[] pdf = generator(PdfConformanceLevel.PDFA_2_B, bundle).createPdfDocument(
+        "<html><head><link rel=\"stylesheet\" href=\"css/letter.css\"/></head>"
+            + "<body><p>hello</p><img src=\"" + IMAGE + "\" alt=\"dot\"/></body></html>");
+
+    assertThat(pdf.length > 0, is(true));
+  }
+
+  @Test
+  public void imageMustBePixelatedAboveConformanceLevelNone() throws PdfaGeneratorException {
+    String html = "<html><head><style>body { font-family: 'arial'; }</style></head>\n"
+        + "<body>\n<p>hello</p>\n<img src=\"" + IMAGE + "\" alt=\"dot\"/>\n</body></html>";
+
+    assertThat(generator(PdfConformanceLevel.NONE, null).createPdfDocument(html).length > 0, is(true));
+    assertThat(generator(PdfConformanceLevel.PDFA_2_B, null).createPdfDocument(
+        html.replace("alt=\"dot\"", "alt=\"dot\" style=\"image-rendering: pixelated\"")).length > 0, is(true));
+    try {
+      generator(PdfConformanceLevel.PDFA_2_B, null).createPdfDocument(html);
+      fail("should have thrown an error");
+
+    } catch (PdfValidationException e) {
+      assertThat(e.getLineNumber(), is(equalTo(4)));
+      assertThat(e.getMessage(), containsString("image-rendering: pixelated"));
+    }
+  }
+
+  @Test
+  public void preflightIsOffByDefault() throws IOException {
+    try {
+      HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PdfConformanceLevel.PDFA_1_A)
+          .createPdfDocument(html("badHtmlFile.html"));
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e instanceof PdfValidationException, is(false));
+      assertThat(e.getMessage(), startsWith("Can't load the XML resource"));
+    }
+  }
+
+  private PreparedHtmlToPdfGenerator generator(PdfConformanceLevel level, PdfResourceBundle bundle)
+      throws PdfaGeneratorException {
+    return HtmlToPdfFactory.builder()
+        .colourProfile(defaultColourProfile)
+        .fontMap(defaultFontMap)
+        .conformanceLevel(level)
+        .resourceBundle(bundle)
+        .preflight(true)
+        .build();
+  }
+}
@@ -0,0 +1,207 @@
+package uk.gov.dwp.pdf.generator;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.xmpbox.XMPMetadata;
+import org.apache.xmpbox.xml.DomXmpParser;
+import org.apache.xmpbox.xml.XmpParsingException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.gov.dwp.pdf.exception.PdfaGeneratorException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_1_A;
+import static uk.gov.dwp.pdf.generator.PdfConformanceLevel.PDFA_2_B;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.colourProfile;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.fontMap;
+import static uk.gov.dwp.pdf.generator.PdfTestFixtures.html;
+
+public class PreparedAccessiblePdfGeneratorTest {
+  private static Map<String, byte[]> defaultFontMap;
+  private static byte[] defaultColourProfile;
+  private static String htmlFile;
+
+  @BeforeClass
+  public static void init() {
+    defaultColourProfile = colourProfile();
+    htmlFile = html("successfulHtml.html");
+
+    defaultFontMap = fontMap();
+  }
+
+  @Test
+  public void successfullyCreatePdfaWithBoundAssets() throws IOException, PdfaGeneratorException, XmpParsingException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDFA_1_A);
+
+    for (int i = 0; i < 2; i++) {
+      PDDocument pdfDoc = PDDocument.load(instance.createPdfDocument(htmlFile));
+
+      assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+      XMPMetadata xmpMetadata = new DomXmpParser().parse(pdfDoc.getDocumentCatalog().getMetadata().exportXMPMetadata());
+      assertThat(xmpMetadata.getPDFIdentificationSchema().getConformance(), is(equalTo("A")));
+      assertThat(xmpMetadata.getPDFIdentificationSchema().getPart(), is(equalTo(1)));
+      pdfDoc.close();
+    }
+    assertThat(instance.getConformanceLevel(), is(equalTo(PDFA_1_A)));
+  }
+
+  @Test
+  public void successfullyStreamPdfToOutputStream() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDFA_1_A);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    instance.createPdfDocument(htmlFile, outputStream);
+
+    PDDocument pdfDoc = PDDocument.load(outputStream.toByteArray());
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    pdfDoc.close();
+  }
+
+  @Test
+  public void changesToTheFontMapAfterBuildAreIgnored() throws IOException, PdfaGeneratorException {
+    Map<String, byte[]> fontMap = new HashMap<>(defaultFontMap);
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, fontMap, PDFA_1_A);
+
+    fontMap.remove("courier");
+
+    PDDocument pdfDoc = PDDocument.load(instance.createPdfDocument(htmlFile));
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+    pdfDoc.close();
+  }
+
+  @Test
+  public void failureWithUndefinedFontInHtml() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDFA_1_A);
+
+    try {
+      instance.createPdfDocument(html("noFontSupplied.html"));
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("html element requests font-family: 'tahoma'"));
+    }
+  }
+
+  @Test
+  public void failFastWithBadColourProfile() {
+    try {
+      HtmlToPdfFactory.create("i-am-a-colour-profile".getBytes(), defaultFontMap, PDFA_1_A);
+      fail("should have thrown an error");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), containsString("Invalid ICC Profile Data"));
+    }
+  }
+
+  @Test
+  public void failFastWithNullConformanceLevel() {
+    try {
+      HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, null);
+      fail("should have failed with null conformance");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), is(equalTo("Conformance level must not be null")));
+    }
+  }
+
+  @Test
+  public void concurrentRendersShareOneGenerator() throws Exception {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDFA_1_A);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Callable<byte[]>> renders = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        renders.add(() -> instance.createPdfDocument(htmlFile));
+      }
+
+      for (Future<byte[]> pdf : executor.invokeAll(renders)) {
+        PDDocument pdfDoc = PDDocument.load(pdf.get());
+        assertThat(pdfDoc.getNumberOfPages(), is(equalTo(1)));
+        pdfDoc.close();
+      }
+
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void combinedDocumentsEmbedSharedResourcesOnce() throws IOException, PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDFA_2_B);
+    byte[] single = instance.createPdfDocument(htmlFile);
+
+    byte[] combined = instance.createCombinedPdfDocument(
+        Arrays.asList(HtmlSource.of(htmlFile), HtmlSource.of(htmlFile), HtmlSource.of(htmlFile)));
+
+    assertThat(combined.length < single.length * 3 / 2, is(true));
+    PDDocument pdfDoc = PDDocument.load(combined);
+    assertThat(pdfDoc.getNumberOfPages(), is(equalTo(3)));
+    assertThat(pdfDoc.getDocumentCatalog().getOutputIntents().size(), is(equalTo(1)));
+
+    Set<COSBase> fonts = new HashSet<>();
+    Set<COSBase> images = new HashSet<>();
+    for (PDPage page : pdfDoc.getPages()) {
+      PDResources resources = page.getResources();
+      for (COSName name : resources.getFontNames()) {
+        fonts.add(resources.getFont(name).getCOSObject());
+      }
+      for (COSName name : resources.getXObjectNames()) {
+        images.add(resources.getXObject(name).getCOSObject());
+      }
+    }
+    assertThat(fonts.size(), is(equalTo(2)));
+    assertThat(images.size(), is(equalTo(1)));
+    pdfDoc.close();
+  }
+
+  @Test
+  public void combinedDocumentsAreFontChecked() throws PdfaGeneratorException {
+    Map<String, byte[]> courierOnly = new HashMap<>();
+    courierOnly.put("courier", defaultFontMap.get("courier"));
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, courierOnly, PDFA_2_B);
+
+    try {
+      instance.createCombinedPdfDocument(Arrays.asList(HtmlSource.of(htmlFile)));
+      fail("should have failed with an undefined font");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), startsWith("html element requests font-family: 'arial'"));
+    }
+  }
+
+  @Test
+  public void taggedDocumentsCannotBeCombined() throws PdfaGeneratorException {
+    PreparedHtmlToPdfGenerator instance = HtmlToPdfFactory.create(defaultColourProfile, defaultFontMap, PDFA_1_A);
+
+    try {
+      instance.createCombinedPdfDocument(Arrays.asList(HtmlSource.of(htmlFile), HtmlSource.of(htmlFile)));
+      fail("should have refused to combine tagged documents");
+
+    } catch (PdfaGeneratorException e) {
+      assertThat(e.getMessage(), is(equalTo("conformance level PDFA_1_A gives each document its own "
+          + "structure tree, tagged documents cannot be combined")));
+    }
+  }
+}